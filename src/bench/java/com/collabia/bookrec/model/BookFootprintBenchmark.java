@@ -0,0 +1,98 @@
+package com.collabia.bookrec.model;
+
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the retained heap per book of {@link Book} as the DAO loads it, of {@link Book} with
+ * the names interned as the {@code BookCatalog} holds it, and of {@link BookView}.
+ * <p>
+ * Built with the {@code bench} Maven profile, {@code mvn -Pbench test-compile}; run it on the test
+ * classpath with a fixed heap, for example
+ * {@code java -Xms2g -Xmx2g -cp ... com.collabia.bookrec.model.BookFootprintBenchmark [books] [authors] [genres]}.
+ * Every string is a fresh instance, as after deserialization; the books are generated from a
+ * fixed seed, so runs are comparable. The figures are the used heap after a full collection,
+ * so keep the JVM otherwise idle.
+ */
+public class BookFootprintBenchmark {
+
+    private static final int DESCRIPTION_LENGTH = 600;
+    private static final int GENRES_PER_BOOK = 3;
+    private static final String[] WORDS = {
+            "the", "a", "story", "of", "young", "old", "city", "war", "love", "journey", "secret",
+            "family", "across", "world", "dark", "light", "and", "in", "her", "his", "their", "first"
+    };
+
+    public static void main(String[] args) {
+        int bookCount = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int authorCount = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int genreCount = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        long before = usedHeap();
+        List<Book> loaded = load(bookCount, authorCount, genreCount);
+        report("Book as loaded", usedHeap() - before, bookCount);
+        Reference.reachabilityFence(loaded);
+        loaded = null;
+
+        before = usedHeap();
+        List<Book> interned = load(bookCount, authorCount, genreCount);
+        for (Book book : interned) {
+            book.setAuthor(BookView.internName(book.getAuthor()));
+            BookView.internNames(book.getGenres());
+        }
+        report("Book with interned names", usedHeap() - before, bookCount);
+        Reference.reachabilityFence(interned);
+        interned = null;
+
+        before = usedHeap();
+        List<BookView> views = new ArrayList<>(bookCount);
+        for (Book book : load(bookCount, authorCount, genreCount)) {
+            views.add(BookView.of(book));
+        }
+        report("BookView", usedHeap() - before, bookCount);
+        Reference.reachabilityFence(views);
+    }
+
+    private static List<Book> load(int bookCount, int authorCount, int genreCount) {
+        Random random = new Random(42);
+        List<Book> books = new ArrayList<>(bookCount);
+        for (int i = 0; i < bookCount; i++) {
+            List<String> genres = new ArrayList<>(GENRES_PER_BOOK);
+            for (int g = 0; g < GENRES_PER_BOOK; g++) {
+                genres.add(new StringBuilder("Genre ").append(random.nextInt(genreCount)).toString());
+            }
+            Book book = new Book(String.format("%024x", i), "Title " + i,
+                    new StringBuilder("Author ").append(random.nextInt(authorCount)).toString(),
+                    genres, random.nextInt(11) / 2.0);
+            book.setAverageRating(random.nextInt(41) / 10.0 + 1);
+            book.setDescription(description(random));
+            book.setCoverImageUrl("https://covers.example.org/" + i + ".jpg");
+            book.setUpdatedAt(new Date(1_700_000_000_000L + i));
+            books.add(book);
+        }
+        return books;
+    }
+
+    private static String description(Random random) {
+        StringBuilder text = new StringBuilder(DESCRIPTION_LENGTH + 16);
+        while (text.length() < DESCRIPTION_LENGTH) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return text.substring(0, DESCRIPTION_LENGTH);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void report(String name, long bytes, int bookCount) {
+        System.out.printf("%-26s %,8d bytes per book%n", name, bytes / bookCount);
+    }
+}
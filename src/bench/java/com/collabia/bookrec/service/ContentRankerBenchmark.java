@@ -0,0 +1,90 @@
+package com.collabia.bookrec.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.collabia.bookrec.model.Book;
+import com.collabia.bookrec.model.User;
+
+/**
+ * Measures how many books per second one core ranks with the scalar {@link ContentRanker}
+ * and with {@link ContentRanker#create()}, which is the {@link VectorContentRanker} when the
+ * JVM runs with {@code --add-modules jdk.incubator.vector}.
+ * <p>
+ * Built with the {@code bench} Maven profile, {@code mvn -Pbench test-compile}; run it on the test
+ * classpath, for example
+ * {@code java --add-modules jdk.incubator.vector -cp ... com.collabia.bookrec.service.ContentRankerBenchmark [books] [genres]}.
+ * Feature fetch is done once up front, so only the ranking is timed.
+ */
+public class ContentRankerBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int PASSES = 20;
+    private static final int LIMIT = 10;
+
+    public static void main(String[] args) {
+        int bookCount = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int genreCount = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+
+        Random random = new Random(42);
+        List<Book> books = new ArrayList<>(bookCount);
+        for (int i = 0; i < bookCount; i++) {
+            List<String> genres = new ArrayList<>();
+            for (int g = random.nextInt(4); g > 0; g--) {
+                genres.add("Genre " + random.nextInt(genreCount));
+            }
+            books.add(new Book(String.format("%024x", i), "Title " + i, "Author " + random.nextInt(bookCount / 5 + 1),
+                    genres, random.nextInt(11) / 2.0));
+        }
+        CatalogSnapshot snapshot = CatalogSnapshot.of(books);
+
+        User user = new User();
+        user.setFavoriteGenres(new ArrayList<>(Arrays.asList("Genre 1", "Genre 2", "Genre 3")));
+        List<String> readBooks = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            readBooks.add(books.get(random.nextInt(bookCount)).getId());
+        }
+        user.setReadBooks(readBooks);
+
+        RecommendationContext context = RecommendationPipeline.createFullScan()
+                .generate(user, LIMIT, snapshot, RecommendationPipeline.noDeadline());
+        List<CandidateFeatures> batches = new ArrayList<>();
+        int candidates = context.getCandidateCount();
+        for (int start = 0; start < candidates; start += 256) {
+            CandidateFeatures features = new CandidateFeatures(256);
+            features.fetch(context, start, Math.min(start + 256, candidates));
+            batches.add(features);
+        }
+        int scored = 0;
+        for (CandidateFeatures features : batches) {
+            scored += features.size();
+        }
+
+        CandidateRanker scalar = new ContentRanker();
+        CandidateRanker best = ContentRanker.create();
+        System.out.printf("%,d books, %d genres, %s%n", bookCount, genreCount, best.getClass().getSimpleName());
+        for (int round = 0; round < ROUNDS; round++) {
+            report("scalar", scalar, batches, scored);
+            if (best.getClass() != ContentRanker.class) {
+                report("vector", best, batches, scored);
+            }
+        }
+    }
+
+    private static void report(String name, CandidateRanker ranker, List<CandidateFeatures> batches, int scored) {
+        long start = System.nanoTime();
+        int topBooks = 0;
+        for (int pass = 0; pass < PASSES; pass++) {
+            TopKSelector topK = new TopKSelector(LIMIT);
+            for (CandidateFeatures features : batches) {
+                ranker.rank(features, topK);
+            }
+            topBooks += topK.toSortedOrdinals()[0];
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-6s %,15.0f books/s per core (top book %d)%n", name, (double) scored * PASSES / seconds,
+                topBooks / PASSES);
+    }
+}
@@ -1,9 +1,11 @@
 package com.collabia.bookrec.controller;
 
 import com.collabia.bookrec.dao.RatingDAO;
+import com.collabia.bookrec.dao.UserDAO;
 import com.collabia.bookrec.model.Book;
 import com.collabia.bookrec.model.Rating;
 import com.collabia.bookrec.model.User;
+import com.collabia.bookrec.service.UserBookSets;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
@@ -44,12 +46,17 @@ public class BookDetailsController {
     @FXML
     private Button closeButton;
     
+    @FXML
+    private Button markReadButton;
+    
     private Book book;
     private User currentUser;
     private RatingDAO ratingDAO;
+    private UserDAO userDAO;
     
     public BookDetailsController() {
         this.ratingDAO = new RatingDAO();
+        this.userDAO = new UserDAO();
     }
     
     @FXML
@@ -62,10 +69,18 @@ public class BookDetailsController {
     public void setBook(Book book) {
         this.book = book;
         displayBookDetails();
+        updateMarkReadButton();
     }
     
     public void setUser(User user) {
         this.currentUser = user;
+        updateMarkReadButton();
+    }
+    
+    private void updateMarkReadButton() {
+        if (currentUser != null && book != null) {
+            markReadButton.setDisable(UserBookSets.of(currentUser).isRead(book.getId()));
+        }
     }
     
     private void displayBookDetails() {
@@ -177,6 +192,53 @@ public class BookDetailsController {
         }
     }
     
+    @FXML
+    private void handleMarkRead() {
+        if (currentUser == null) {
+            showError("You must be logged in to mark books as read.");
+            return;
+        }
+        
+        // The in-memory user and its cached sets first, so recommendations skip the book at once
+        UserBookSets.markRead(currentUser, book.getId());
+        if (userDAO.markRead(currentUser, book.getId())) {
+            markReadButton.setDisable(true);
+            showSuccess("Book marked as read.");
+        } else {
+            showError("Failed to save. Please try again.");
+        }
+    }
+    
+    @FXML
+    private void handleLike() {
+        if (currentUser == null) {
+            showError("You must be logged in to like books.");
+            return;
+        }
+        
+        UserBookSets.markLiked(currentUser, book.getId());
+        if (userDAO.markLiked(currentUser, book.getId())) {
+            showSuccess("Book added to your liked books.");
+        } else {
+            showError("Failed to save. Please try again.");
+        }
+    }
+    
+    @FXML
+    private void handleNotInterested() {
+        if (currentUser == null) {
+            showError("You must be logged in to hide books.");
+            return;
+        }
+        
+        UserBookSets.markHidden(currentUser, book.getId());
+        if (userDAO.markHidden(currentUser, book.getId())) {
+            showSuccess("This book will no longer be recommended to you.");
+        } else {
+            showError("Failed to save. Please try again.");
+        }
+    }
+    
     @FXML
     private void handleClose() {
         Stage stage = (Stage) closeButton.getScene().getWindow();
@@ -2,6 +2,7 @@ package com.collabia.bookrec.controller;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import com.collabia.bookrec.dao.BookDAO;
 import com.collabia.bookrec.dao.UserDAO;
@@ -9,6 +10,7 @@ import com.collabia.bookrec.model.Book;
 import com.collabia.bookrec.model.User;
 import com.collabia.bookrec.service.AuthService;
 import com.collabia.bookrec.service.RecommendationEngine;
+import com.collabia.bookrec.service.RecommendationResult;
 import com.collabia.bookrec.utils.BookCardFactory;
 
 import javafx.application.Platform;
@@ -31,6 +33,8 @@ import javafx.stage.Stage;
 
 public class DashboardController {
 
+    private static final long RECOMMENDATION_BUDGET_MILLIS = 300;
+
     @FXML
     private TextField searchField;
 
@@ -115,26 +119,45 @@ public class DashboardController {
         sectionTitleLabel.setText("Recommended for You");
         showLoading(true);
         
-        // Run recommendation in background to avoid UI freeze
-        new Thread(() -> {
-            try {
-                // Get 12 recommended books for the user
-                List<Book> recommendedBooks = recommendationEngine.recommendForUser(currentUser, 12);
-                
-                // Update UI on JavaFX thread
-                Platform.runLater(() -> {
-                    currentBooks = recommendedBooks;
-                    displayBooks(recommendedBooks);
-                    showLoading(false);
-                });
-            } catch (Exception e) {
-                Platform.runLater(() -> {
+        // The engine's planner serves fresh precomputed recommendations and computes them live otherwise
+        new Thread(this::loadLiveRecommendations).start();
+    }
+    
+    private void loadLiveRecommendations() {
+        // Compute within a budget so the first results show up quickly however large the catalog is;
+        // a partial result is shown right away and replaced once the computation finishes in the background
+        RecommendationResult result;
+        try {
+            result = recommendationEngine.recommendForUser(currentUser, 12, RECOMMENDATION_BUDGET_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            Platform.runLater(() -> {
+                showError("Failed to load recommendations");
+                showLoading(false);
+            });
+            e.printStackTrace();
+            return;
+        }
+
+        List<Book> recommendedBooks = result.getBooks();
+        if (!result.isPartial() || !recommendedBooks.isEmpty()) {
+            Platform.runLater(() -> {
+                currentBooks = recommendedBooks;
+                displayBooks(recommendedBooks);
+                showLoading(result.isPartial());
+            });
+        }
+        if (result.isPartial()) {
+            result.getCompletion().whenComplete((completeBooks, throwable) -> Platform.runLater(() -> {
+                if (throwable != null) {
                     showError("Failed to load recommendations");
-                    showLoading(false);
-                });
-                e.printStackTrace();
-            }
-        }).start();
+                    throwable.printStackTrace();
+                } else {
+                    currentBooks = completeBooks;
+                    displayBooks(completeBooks);
+                }
+                showLoading(false);
+            }));
+        }
     }
     
     private void performSearch(String query) {
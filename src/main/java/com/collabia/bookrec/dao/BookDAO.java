@@ -1,8 +1,15 @@
 package com.collabia.bookrec.dao;
 
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 import org.bson.Document;
@@ -11,21 +18,132 @@ import org.bson.types.ObjectId;
 
 import com.collabia.bookrec.db.MongoDBConnection;
 import com.collabia.bookrec.model.Book;
+import com.collabia.bookrec.utils.SingleFlight;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Field;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.Updates;
 
 public class BookDAO {
+    private static final List<Consumer<Book>> insertListeners = new CopyOnWriteArrayList<>();
+    private static final SingleFlight<String, List<Book>> findAllFlights = new SingleFlight<>();
+    private static final SingleFlight<String, List<Book>> searchFlights = new SingleFlight<>();
+    private static final String SCORE_FIELD = "_score";
+    private static boolean indexesEnsured;
+
     private final MongoCollection<Document> booksCollection;
 
     public BookDAO() {
         MongoDatabase database = MongoDBConnection.getDatabase();
         this.booksCollection = database.getCollection("books");
+        ensureIndexes(booksCollection);
+    }
+
+    /**
+     * Creates a DAO on the given collection without ensuring its indexes, for subclasses that
+     * serve books from elsewhere, such as test doubles.
+     */
+    protected BookDAO(MongoCollection<Document> booksCollection) {
+        this.booksCollection = booksCollection;
     }
 
+    /**
+     * Creates the index on {@code updatedAt} behind {@link #findChangedSince(Instant)}, once per JVM.
+     */
+    private static synchronized void ensureIndexes(MongoCollection<Document> booksCollection) {
+        if (indexesEnsured) {
+            return;
+        }
+        try {
+            booksCollection.createIndex(Indexes.ascending("updatedAt"));
+            indexesEnsured = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Registers a listener that is notified after any DAO instance inserts a book.
+     * The book passed to the listener already carries its generated id.
+     */
+    public static void addInsertListener(Consumer<Book> listener) {
+        insertListeners.add(listener);
+    }
+
+    public static void removeInsertListener(Consumer<Book> listener) {
+        insertListeners.remove(listener);
+    }
+
+    /**
+     * Inserts a book, stamped with the server's {@code updatedAt}. A book without an id gets a new one.
+     */
     public void insert(Book book) {
-        booksCollection.insertOne(book.toDocument());
+        if (book.getId() == null) {
+            book.setId(new ObjectId().toHexString());
+        }
+        Document stamped = booksCollection.findOneAndUpdate(Filters.eq("_id", new ObjectId(book.getId())),
+                stampedWrite(book), new FindOneAndUpdateOptions().upsert(true)
+                        .returnDocument(ReturnDocument.AFTER).projection(Projections.include("updatedAt")));
+        book.setUpdatedAt(stamped.getDate("updatedAt"));
+        for (Consumer<Book> listener : insertListeners) {
+            listener.accept(book);
+        }
+    }
+
+    /**
+     * Replaces the fields of a stored book and stamps it with the server's {@code updatedAt},
+     * so delta refreshes pick it up.
+     *
+     * @return true if a book with the book's id existed
+     */
+    public boolean update(Book book) {
+        if (book.getId() == null || !ObjectId.isValid(book.getId())) {
+            return false;
+        }
+        Document stamped = booksCollection.findOneAndUpdate(Filters.eq("_id", new ObjectId(book.getId())),
+                stampedWrite(book), new FindOneAndUpdateOptions()
+                        .returnDocument(ReturnDocument.AFTER).projection(Projections.include("updatedAt")));
+        if (stamped == null) {
+            return false;
+        }
+        book.setUpdatedAt(stamped.getDate("updatedAt"));
+        return true;
+    }
+
+    /**
+     * Sets every field of the book and lets the server stamp {@code updatedAt} with its own clock,
+     * so the stamps of all writers come from one clock and never run ahead of a refresh's query.
+     */
+    private static Bson stampedWrite(Book book) {
+        Document fields = book.toDocument();
+        fields.remove("_id");
+        fields.remove("updatedAt");
+        return Updates.combine(new Document("$set", fields), Updates.currentDate("updatedAt"));
+    }
+
+    /**
+     * Returns the books inserted or updated at or after the given instant, oldest change first.
+     * Served by the {@code updatedAt} index; books written before {@code updatedAt} was maintained
+     * are never returned. The stamps are taken by the server when the write is applied, so a write
+     * can become visible after a later-stamped one; callers query with some overlap.
+     */
+    public List<Book> findChangedSince(Instant since) {
+        List<Book> books = new ArrayList<>();
+        Bson filter = Filters.gte("updatedAt", Date.from(since));
+        try (MongoCursor<Document> cursor = booksCollection.find(filter).sort(Sorts.ascending("updatedAt")).iterator()) {
+            while (cursor.hasNext()) {
+                books.add(Book.fromDocument(cursor.next()));
+            }
+        }
+        return books;
     }
 
     public Optional<Book> findById(String id) {
@@ -36,20 +154,80 @@ public class BookDAO {
         return Optional.ofNullable(Book.fromDocument(doc));
     }
 
+    /**
+     * Returns all books in {@code _id} order, which is also the order they were inserted in.
+     * Concurrent calls share one query.
+     */
     public List<Book> findAll() {
-        List<Book> books = new ArrayList<>();
-        try (MongoCursor<Document> cursor = booksCollection.find().iterator()) {
+        return new ArrayList<>(findAllFlights.execute("books", () -> {
+            List<Book> books = new ArrayList<>();
+            try (MongoCursor<Document> cursor = booksCollection.find().sort(Sorts.ascending("_id")).iterator()) {
+                while (cursor.hasNext()) {
+                    books.add(Book.fromDocument(cursor.next()));
+                }
+            }
+            return books;
+        }));
+    }
+
+    /**
+     * Fetches the books with the given ids in one query, in the order of {@code ids}.
+     * Invalid or unknown ids are skipped.
+     */
+    public List<Book> findByIds(List<String> ids) {
+        List<ObjectId> objectIds = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            if (ObjectId.isValid(id)) {
+                objectIds.add(new ObjectId(id));
+            }
+        }
+        Map<String, Book> booksById = new HashMap<>();
+        try (MongoCursor<Document> cursor = booksCollection.find(Filters.in("_id", objectIds)).iterator()) {
             while (cursor.hasNext()) {
-                books.add(Book.fromDocument(cursor.next()));
+                Book book = Book.fromDocument(cursor.next());
+                booksById.put(book.getId(), book);
+            }
+        }
+        List<Book> books = new ArrayList<>(booksById.size());
+        for (String id : ids) {
+            Book book = booksById.get(id);
+            if (book != null) {
+                books.add(book);
             }
         }
         return books;
     }
 
-    public List<Book> findByGenres(List<String> genres) {
+    /**
+     * Scores the whole collection inside MongoDB and returns only the best {@code limit} books.
+     * <p>
+     * Mirrors the in-memory content score: one point per favorite genre the book has, one if a
+     * book the user read has the same author, and {@code rating / 5 * 0.3}. Read and hidden
+     * books are filtered out first. Ties are broken by {@code _id}, the catalog's load order. The
+     * authors of the read books come from one extra query on the {@code _id} index; hidden books
+     * do not make their authors preferred.
+     *
+     * @param readBookIds    ids of the books the user has read, as hex strings
+     * @param hiddenBookIds  ids of the books the user has hidden, as hex strings
+     * @param favoriteGenres the user's favorite genres
+     * @param limit          the number of books to return
+     * @return the best scoring books neither read nor hidden, best first
+     */
+    public List<Book> findTopScored(List<String> readBookIds, List<String> hiddenBookIds, List<String> favoriteGenres,
+                                    int limit) {
         List<Book> books = new ArrayList<>();
-        Bson filter = Filters.in("genres", genres);
-        try (MongoCursor<Document> cursor = booksCollection.find(filter).iterator()) {
+        if (limit <= 0) {
+            return books;
+        }
+        List<ObjectId> readIds = toObjectIds(readBookIds);
+        List<String> authors = new ArrayList<>();
+        if (!readIds.isEmpty()) {
+            booksCollection.distinct("author", Filters.in("_id", readIds), String.class).into(authors);
+        }
+        List<String> genres = favoriteGenres != null ? favoriteGenres : new ArrayList<>();
+
+        try (MongoCursor<Document> cursor = booksCollection
+                .aggregate(topScoredPipeline(readBookIds, hiddenBookIds, genres, authors, limit)).iterator()) {
             while (cursor.hasNext()) {
                 books.add(Book.fromDocument(cursor.next()));
             }
@@ -57,10 +235,53 @@ public class BookDAO {
         return books;
     }
 
-    public List<Book> searchByTitleOrAuthor(String query) {
+    private static List<ObjectId> toObjectIds(List<String> ids) {
+        List<ObjectId> objectIds = new ArrayList<>();
+        if (ids != null) {
+            for (String id : ids) {
+                if (id != null && ObjectId.isValid(id)) {
+                    objectIds.add(new ObjectId(id));
+                }
+            }
+        }
+        return objectIds;
+    }
+
+    /**
+     * Builds the aggregation behind {@link #findTopScored}: drop the read and hidden books, score,
+     * sort and keep the best {@code limit}.
+     */
+    static List<Bson> topScoredPipeline(List<String> readBookIds, List<String> hiddenBookIds,
+                                        List<String> favoriteGenres, List<String> authors, int limit) {
+        List<ObjectId> excludedIds = toObjectIds(readBookIds);
+        excludedIds.addAll(toObjectIds(hiddenBookIds));
+
+        // Same operand order as the in-memory formula, so equal inputs give bit-identical scores;
+        // user values are $literal so a name starting with '$' is not read as a field path
+        Document genreOverlap = new Document("$size", new Document("$setIntersection",
+                Arrays.asList(new Document("$ifNull", Arrays.asList("$genres", new ArrayList<>())),
+                        new Document("$literal", favoriteGenres))));
+        Document authorMatch = new Document("$cond", Arrays.asList(
+                new Document("$in", Arrays.asList("$author", new Document("$literal", authors))), 1, 0));
+        Document ratingBonus = new Document("$multiply", Arrays.asList(
+                new Document("$divide", Arrays.asList(new Document("$ifNull", Arrays.asList("$rating", 0.0)), 5.0)), 0.3));
+        Document score = new Document("$add", Arrays.asList(
+                new Document("$add", Arrays.asList(genreOverlap, authorMatch)), ratingBonus));
+
+        List<Bson> pipeline = new ArrayList<>();
+        if (!excludedIds.isEmpty()) {
+            pipeline.add(Aggregates.match(Filters.nin("_id", excludedIds)));
+        }
+        pipeline.add(Aggregates.addFields(new Field<>(SCORE_FIELD, score)));
+        pipeline.add(Aggregates.sort(Sorts.orderBy(Sorts.descending(SCORE_FIELD), Sorts.ascending("_id"))));
+        pipeline.add(Aggregates.limit(limit));
+        pipeline.add(Aggregates.project(Projections.exclude(SCORE_FIELD)));
+        return pipeline;
+    }
+
+    public List<Book> findByGenres(List<String> genres) {
         List<Book> books = new ArrayList<>();
-        Pattern regex = Pattern.compile(query, Pattern.CASE_INSENSITIVE);
-        Bson filter = Filters.or(Filters.regex("title", regex), Filters.regex("author", regex));
+        Bson filter = Filters.in("genres", genres);
         try (MongoCursor<Document> cursor = booksCollection.find(filter).iterator()) {
             while (cursor.hasNext()) {
                 books.add(Book.fromDocument(cursor.next()));
@@ -69,6 +290,37 @@ public class BookDAO {
         return books;
     }
 
+    /**
+     * Finds books whose title or author matches the query. Concurrent calls with the same query share one query.
+     */
+    public List<Book> searchByTitleOrAuthor(String query) {
+        return new ArrayList<>(searchFlights.execute(query, () -> {
+            List<Book> books = new ArrayList<>();
+            Pattern regex = Pattern.compile(query, Pattern.CASE_INSENSITIVE);
+            Bson filter = Filters.or(Filters.regex("title", regex), Filters.regex("author", regex));
+            try (MongoCursor<Document> cursor = booksCollection.find(filter).iterator()) {
+                while (cursor.hasNext()) {
+                    books.add(Book.fromDocument(cursor.next()));
+                }
+            }
+            return books;
+        }));
+    }
+
+    /**
+     * Returns the coalescing counters of {@link #findAll()}.
+     */
+    public static SingleFlight<String, List<Book>> getFindAllFlights() {
+        return findAllFlights;
+    }
+
+    /**
+     * Returns the coalescing counters of {@link #searchByTitleOrAuthor(String)}.
+     */
+    public static SingleFlight<String, List<Book>> getSearchFlights() {
+        return searchFlights;
+    }
+
     public Book getBookById(String bookId) {
         if (bookId == null || bookId.isEmpty()) {
             return null;
@@ -0,0 +1,69 @@
+package com.collabia.bookrec.dao;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.bson.Document;
+
+import com.collabia.bookrec.db.MongoDBConnection;
+import com.collabia.bookrec.model.BookNeighbors;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+
+/**
+ * Data Access Object for the precomputed book neighbor lists in MongoDB.
+ * Documents are keyed by book id.
+ */
+public class BookNeighborDAO {
+    private static final int BATCH_SIZE = 1_000;
+
+    private final MongoCollection<Document> neighborsCollection;
+
+    public BookNeighborDAO() {
+        MongoDatabase database = MongoDBConnection.getDatabase();
+        this.neighborsCollection = database.getCollection("bookNeighbors");
+    }
+
+    /**
+     * Upserts the given neighbor lists in unordered bulk writes of at most {@value #BATCH_SIZE} documents.
+     */
+    public void saveAll(List<BookNeighbors> neighborLists) {
+        ReplaceOptions upsert = new ReplaceOptions().upsert(true);
+        for (int from = 0; from < neighborLists.size(); from += BATCH_SIZE) {
+            List<BookNeighbors> batch = neighborLists.subList(from, Math.min(from + BATCH_SIZE, neighborLists.size()));
+            List<WriteModel<Document>> writes = new ArrayList<>(batch.size());
+            for (BookNeighbors neighbors : batch) {
+                Document doc = neighbors.toDocument();
+                writes.add(new ReplaceOneModel<>(Filters.eq("_id", doc.getObjectId("_id")), doc, upsert));
+            }
+            neighborsCollection.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+        }
+    }
+
+    /**
+     * Streams every stored neighbor list through the consumer.
+     */
+    public void forEach(Consumer<BookNeighbors> consumer) {
+        try (MongoCursor<Document> cursor = neighborsCollection.find().batchSize(BATCH_SIZE).iterator()) {
+            while (cursor.hasNext()) {
+                consumer.accept(BookNeighbors.fromDocument(cursor.next()));
+            }
+        }
+    }
+
+    /**
+     * Removes the lists written before the given time, such as those of books that had
+     * neighbors in an earlier run but none in the latest one.
+     */
+    public void deleteComputedBefore(Date computedAt) {
+        neighborsCollection.deleteMany(Filters.lt("computedAt", computedAt));
+    }
+}
@@ -3,6 +3,8 @@ package com.collabia.bookrec.dao;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 import org.bson.Document;
 import org.bson.conversions.Bson;
@@ -16,8 +18,11 @@ import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.Accumulators;
 import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
 
 public class RatingDAO {
+    private static final List<Consumer<Rating>> ratingListeners = new CopyOnWriteArrayList<>();
+
     private final MongoDatabase database;
     private final MongoCollection<Document> ratingsCollection;
 
@@ -26,8 +31,22 @@ public class RatingDAO {
         this.ratingsCollection = database.getCollection("ratings");
     }
 
+    /**
+     * Registers a listener that is notified after any DAO instance stores a rating.
+     */
+    public static void addRatingListener(Consumer<Rating> listener) {
+        ratingListeners.add(listener);
+    }
+
+    public static void removeRatingListener(Consumer<Rating> listener) {
+        ratingListeners.remove(listener);
+    }
+
     public void addRating(Rating rating) {
         ratingsCollection.insertOne(rating.toDocument());
+        for (Consumer<Rating> listener : ratingListeners) {
+            listener.accept(rating);
+        }
     }
 
     public List<Rating> findByUserId(String userId) {
@@ -74,6 +93,19 @@ public class RatingDAO {
         return ratings;
     }
 
+    /**
+     * Streams every rating through the consumer, so jobs over all ratings do not need to
+     * hold the collection as documents in memory. Review texts are not fetched.
+     */
+    public void forEachRating(int batchSize, Consumer<Rating> consumer) {
+        Bson projection = Projections.include("userId", "bookId", "rating");
+        try (MongoCursor<Document> cursor = ratingsCollection.find().projection(projection).batchSize(batchSize).iterator()) {
+            while (cursor.hasNext()) {
+                consumer.accept(Rating.fromDocument(cursor.next()));
+            }
+        }
+    }
+
     private List<Rating> findRatingsByFilter(Bson filter) {
         List<Rating> ratings = new ArrayList<>();
         try (MongoCursor<Document> cursor = ratingsCollection.find(filter).iterator()) {
@@ -0,0 +1,62 @@
+package com.collabia.bookrec.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import com.collabia.bookrec.db.MongoDBConnection;
+import com.collabia.bookrec.model.PrecomputedRecommendation;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+
+/**
+ * Data Access Object for precomputed recommendations in MongoDB.
+ * Documents are keyed by user id, so reads go through the {@code _id} index.
+ */
+public class RecommendationDAO {
+    private final MongoCollection<Document> recommendationsCollection;
+
+    public RecommendationDAO() {
+        MongoDatabase database = MongoDBConnection.getDatabase();
+        this.recommendationsCollection = database.getCollection("recommendations");
+    }
+
+    /**
+     * Upserts the given recommendations in a single unordered bulk write.
+     */
+    public void saveAll(List<PrecomputedRecommendation> recommendations) {
+        if (recommendations.isEmpty()) {
+            return;
+        }
+        List<WriteModel<Document>> writes = new ArrayList<>(recommendations.size());
+        ReplaceOptions upsert = new ReplaceOptions().upsert(true);
+        for (PrecomputedRecommendation recommendation : recommendations) {
+            Document doc = recommendation.toDocument();
+            writes.add(new ReplaceOneModel<>(Filters.eq("_id", doc.getObjectId("_id")), doc, upsert));
+        }
+        recommendationsCollection.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+    }
+
+    public Optional<PrecomputedRecommendation> findByUserId(String userId) {
+        if (userId == null || !ObjectId.isValid(userId)) {
+            return Optional.empty();
+        }
+        Document doc = recommendationsCollection.find(Filters.eq("_id", new ObjectId(userId))).first();
+        return Optional.ofNullable(PrecomputedRecommendation.fromDocument(doc));
+    }
+
+    public void deleteByUserId(String userId) {
+        if (userId == null || !ObjectId.isValid(userId)) {
+            return;
+        }
+        recommendationsCollection.deleteOne(Filters.eq("_id", new ObjectId(userId)));
+    }
+}
@@ -1,6 +1,10 @@
 package com.collabia.bookrec.dao;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 import org.bson.Document;
 import org.bson.types.ObjectId;
@@ -8,14 +12,18 @@ import org.bson.types.ObjectId;
 import com.collabia.bookrec.db.MongoDBConnection;
 import com.collabia.bookrec.model.User;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Updates;
 
 /**
  * Data Access Object for User objects in MongoDB.
  */
 public class UserDAO {
+    private static final List<Consumer<String>> updateListeners = new CopyOnWriteArrayList<>();
+
     private final MongoCollection<Document> usersCollection;
 
     public UserDAO() {
@@ -23,6 +31,17 @@ public class UserDAO {
         this.usersCollection = database.getCollection("users");
     }
 
+    /**
+     * Registers a listener that is notified with the user id (hex string) after any DAO instance updates a user.
+     */
+    public static void addUpdateListener(Consumer<String> listener) {
+        updateListeners.add(listener);
+    }
+
+    public static void removeUpdateListener(Consumer<String> listener) {
+        updateListeners.remove(listener);
+    }
+
     public void createUser(User user) {
         usersCollection.insertOne(user.toDocument());
     }
@@ -40,12 +59,33 @@ public class UserDAO {
         return Optional.ofNullable(User.fromDocument(doc));
     }
 
+    /**
+     * Streams all users through the consumer in batches of at most {@code batchSize},
+     * so jobs over every user do not need to hold the whole collection in memory.
+     */
+    public void forEachBatch(int batchSize, Consumer<List<User>> consumer) {
+        List<User> batch = new ArrayList<>(batchSize);
+        try (MongoCursor<Document> cursor = usersCollection.find().batchSize(batchSize).iterator()) {
+            while (cursor.hasNext()) {
+                batch.add(User.fromDocument(cursor.next()));
+                if (batch.size() >= batchSize) {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            consumer.accept(batch);
+        }
+    }
+
     public void update(User user) {
         if (user.getId() == null) {
             throw new IllegalArgumentException("User must have a valid ID to be updated.");
         }
         Document filter = new Document("_id", user.getId());
         usersCollection.replaceOne(filter, user.toDocument(), new ReplaceOptions().upsert(true));
+        notifyUpdated(user);
     }
 
     public boolean updateUser(User user) {
@@ -61,12 +101,14 @@ public class UserDAO {
                 .append("email", user.getEmail())
                 .append("favoriteGenres", user.getFavoriteGenres())
                 .append("readBooks", user.getReadBooks())
-                .append("likedBooks", user.getLikedBooks());
+                .append("likedBooks", user.getLikedBooks())
+                .append("hiddenBooks", user.getHiddenBooks());
             
             Document filter = new Document("_id", user.getId());
             Document update = new Document("$set", updateDoc);
             
             collection.updateOne(filter, update);
+            notifyUpdated(user);
             return true;
             
         } catch (Exception e) {
@@ -74,4 +116,45 @@ public class UserDAO {
             return false;
         }
     }
+
+    /**
+     * Adds a book to the user's read books in the database, leaving the rest of the document as is.
+     * Pair with {@code UserBookSets.markRead}, which updates the in-memory user.
+     */
+    public boolean markRead(User user, String bookId) {
+        return addToSet(user, "readBooks", bookId);
+    }
+
+    public boolean markLiked(User user, String bookId) {
+        return addToSet(user, "likedBooks", bookId);
+    }
+
+    /**
+     * Adds a book to the books the user does not want recommended.
+     */
+    public boolean markHidden(User user, String bookId) {
+        return addToSet(user, "hiddenBooks", bookId);
+    }
+
+    private boolean addToSet(User user, String field, String bookId) {
+        if (user == null || user.getId() == null || bookId == null) {
+            return false;
+        }
+
+        try {
+            usersCollection.updateOne(Filters.eq("_id", user.getId()), Updates.addToSet(field, bookId));
+            notifyUpdated(user);
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private void notifyUpdated(User user) {
+        String userId = user.getId().toHexString();
+        for (Consumer<String> listener : updateListeners) {
+            listener.accept(userId);
+        }
+    }
 }
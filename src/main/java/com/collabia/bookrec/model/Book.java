@@ -1,5 +1,6 @@
 package com.collabia.bookrec.model;
 
+import java.util.Date;
 import java.util.List;
 
 import org.bson.Document;
@@ -17,6 +18,7 @@ public class Book {
     private String genre;
     private double rating;
     private String imageUrl;
+    private Date updatedAt;
 
     public Book() {
     }
@@ -127,6 +129,14 @@ public class Book {
         this.imageUrl = imageUrl;
     }
 
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Date updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
     // MongoDB Document Conversion
     public Document toDocument() {
         Document doc = new Document("title", title)
@@ -136,6 +146,9 @@ public class Book {
                 .append("coverPath", coverPath)
                 .append("coverImageUrl", coverImageUrl)
                 .append("averageRating", averageRating);
+        if (updatedAt != null) {
+            doc.append("updatedAt", updatedAt);
+        }
         if (id != null) {
             doc.append("_id", new ObjectId(id));
         }
@@ -152,6 +165,7 @@ public class Book {
         book.setCoverPath(doc.getString("coverPath"));
         book.setCoverImageUrl(doc.getString("coverImageUrl"));
         book.setAverageRating(doc.getDouble("averageRating"));
+        book.setUpdatedAt(doc.getDate("updatedAt"));
         return book;
     }
 }
@@ -0,0 +1,93 @@
+package com.collabia.bookrec.model;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * The books most similar to one book by how users rated them, computed offline and stored in
+ * the "bookNeighbors" collection. The document id is the book's id; neighbors are ordered by
+ * descending similarity.
+ */
+public class BookNeighbors {
+    private String bookId;
+    private List<String> neighborIds;
+    private List<Double> similarities;
+    private Date computedAt;
+
+    public BookNeighbors() {
+        this.neighborIds = new ArrayList<>();
+        this.similarities = new ArrayList<>();
+    }
+
+    public BookNeighbors(String bookId, List<String> neighborIds, List<Double> similarities, Date computedAt) {
+        this.bookId = bookId;
+        this.neighborIds = neighborIds;
+        this.similarities = similarities;
+        this.computedAt = computedAt;
+    }
+
+    // Getters and Setters
+    public String getBookId() {
+        return bookId;
+    }
+
+    public void setBookId(String bookId) {
+        this.bookId = bookId;
+    }
+
+    public List<String> getNeighborIds() {
+        return neighborIds;
+    }
+
+    public void setNeighborIds(List<String> neighborIds) {
+        this.neighborIds = neighborIds;
+    }
+
+    public List<Double> getSimilarities() {
+        return similarities;
+    }
+
+    public void setSimilarities(List<Double> similarities) {
+        this.similarities = similarities;
+    }
+
+    public Date getComputedAt() {
+        return computedAt;
+    }
+
+    public void setComputedAt(Date computedAt) {
+        this.computedAt = computedAt;
+    }
+
+    // MongoDB Document Conversion
+    public Document toDocument() {
+        List<ObjectId> neighborObjectIds = new ArrayList<>(neighborIds.size());
+        for (String neighborId : neighborIds) {
+            neighborObjectIds.add(new ObjectId(neighborId));
+        }
+        return new Document("_id", new ObjectId(bookId))
+                .append("neighborIds", neighborObjectIds)
+                .append("similarities", similarities)
+                .append("computedAt", computedAt);
+    }
+
+    public static BookNeighbors fromDocument(Document doc) {
+        if (doc == null) {
+            return null;
+        }
+        BookNeighbors neighbors = new BookNeighbors();
+        neighbors.setBookId(doc.getObjectId("_id").toHexString());
+        List<String> neighborIds = new ArrayList<>();
+        for (ObjectId neighborId : doc.getList("neighborIds", ObjectId.class, new ArrayList<>())) {
+            neighborIds.add(neighborId.toHexString());
+        }
+        neighbors.setNeighborIds(neighborIds);
+        neighbors.setSimilarities(new ArrayList<>(doc.getList("similarities", Double.class, new ArrayList<>())));
+        neighbors.setComputedAt(doc.getDate("computedAt"));
+        return neighbors;
+    }
+}
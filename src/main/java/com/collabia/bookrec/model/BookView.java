@@ -0,0 +1,136 @@
+package com.collabia.bookrec.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.ListIterator;
+
+import com.collabia.bookrec.utils.Interner;
+
+/**
+ * Compact, immutable snapshot of a {@link Book} for large in-memory caches.
+ * <p>
+ * {@link Book} keeps several fields side by side that mean the same thing: {@code genre}
+ * next to {@code genres} and {@code imageUrl} next to {@code coverImageUrl}. A view folds
+ * them into one field each. {@code rating} and {@code averageRating} are both kept because
+ * scoring reads the former and cold-start ranking the latter.
+ * <p>
+ * Authors, genres and whole genre lists are interned in a dictionary shared by the JVM. A
+ * million books then hold a few thousand author and genre strings instead of one copy each.
+ * The description is rarely read and is usually the largest field. It is kept as
+ * {@link CompressedText} and decoded on demand by {@link #descriptionText()}.
+ * <p>
+ * {@code BookFootprintBenchmark} measures the retained heap per book of {@link Book} as
+ * loaded, of {@link Book} with interned names as the catalog holds it, and of
+ * {@code BookView}. Most of the saving of a view comes from the description, so it depends
+ * on how well that compresses.
+ *
+ * @param updatedAt epoch milliseconds of the last write, or {@link #NO_TIMESTAMP}
+ */
+public record BookView(String id, String title, String author, List<String> genres, double rating,
+        double averageRating, String coverPath, String coverImageUrl, long updatedAt, CompressedText description) {
+
+    /**
+     * Value of {@link #updatedAt()} for a book that has never been written with a timestamp.
+     */
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private static final Interner<String> NAMES = new Interner<>();
+    private static final Interner<List<String>> GENRE_LISTS = new Interner<>();
+
+    /**
+     * Canonicalizes the components; {@code genres} becomes an interned immutable list.
+     */
+    public BookView {
+        author = NAMES.intern(author);
+        genres = internGenres(genres);
+    }
+
+    /**
+     * Creates a view of the book. The legacy {@code genre} and {@code imageUrl} fields are only
+     * used when {@code genres} and {@code coverImageUrl} are not set.
+     */
+    public static BookView of(Book book) {
+        List<String> genres = book.getGenres();
+        if (genres == null && book.getGenre() != null) {
+            genres = Collections.singletonList(book.getGenre());
+        }
+        String coverImageUrl = book.getCoverImageUrl() != null ? book.getCoverImageUrl() : book.getImageUrl();
+        long updatedAt = book.getUpdatedAt() != null ? book.getUpdatedAt().getTime() : NO_TIMESTAMP;
+        return new BookView(book.getId(), book.getTitle(), book.getAuthor(), genres, book.getRating(),
+                book.getAverageRating(), book.getCoverPath(), coverImageUrl, updatedAt,
+                CompressedText.of(book.getDescription()));
+    }
+
+    /**
+     * Returns a new mutable {@link Book} with this view's values. The genre list is the shared
+     * immutable instance; callers that edit genres should set a copy.
+     */
+    public Book toBook() {
+        Book book = new Book();
+        book.setId(id);
+        book.setTitle(title);
+        book.setAuthor(author);
+        book.setGenres(genres);
+        book.setRating(rating);
+        book.setAverageRating(averageRating);
+        book.setCoverPath(coverPath);
+        book.setCoverImageUrl(coverImageUrl);
+        book.setDescription(descriptionText());
+        if (updatedAt != NO_TIMESTAMP) {
+            book.setUpdatedAt(new Date(updatedAt));
+        }
+        return book;
+    }
+
+    /**
+     * Returns the decoded description, or {@code null} if the book has none.
+     */
+    public String descriptionText() {
+        return description == null ? null : description.toString();
+    }
+
+    /**
+     * Returns the canonical instance of an author or genre name.
+     */
+    public static String internName(String name) {
+        return NAMES.intern(name);
+    }
+
+    /**
+     * Returns the canonical immutable list of the given genres, with each genre interned, or
+     * {@code null} for {@code null}. {@code null} entries are kept.
+     */
+    public static List<String> internGenres(List<String> genres) {
+        if (genres == null) {
+            return null;
+        }
+        List<String> interned = new ArrayList<>(genres.size());
+        for (String genre : genres) {
+            interned.add(NAMES.intern(genre));
+        }
+        return GENRE_LISTS.intern(Collections.unmodifiableList(interned));
+    }
+
+    /**
+     * Replaces each name in the list by its canonical instance, in place. The list keeps its
+     * identity, order and {@code null} entries; a list that cannot be modified is left as it is.
+     */
+    public static void internNames(List<String> names) {
+        if (names == null) {
+            return;
+        }
+        try {
+            for (ListIterator<String> it = names.listIterator(); it.hasNext(); ) {
+                String name = it.next();
+                String interned = NAMES.intern(name);
+                if (interned != name) {
+                    it.set(interned);
+                }
+            }
+        } catch (UnsupportedOperationException e) {
+            // An immutable list belongs to someone else; its names stay as they are
+        }
+    }
+}
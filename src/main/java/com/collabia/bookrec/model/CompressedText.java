@@ -0,0 +1,100 @@
+package com.collabia.bookrec.model;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Immutable text stored as UTF-8 bytes, deflated when that makes it smaller.
+ * Meant for long, rarely read fields such as book descriptions; {@link #toString()} decodes on every call.
+ */
+public final class CompressedText {
+
+    private static final int MIN_COMPRESSED_LENGTH = 128;
+
+    private final byte[] data;
+    private final boolean deflated;
+
+    private CompressedText(byte[] data, boolean deflated) {
+        this.data = data;
+        this.deflated = deflated;
+    }
+
+    /**
+     * Encodes the text, or returns {@code null} for {@code null}.
+     */
+    public static CompressedText of(String text) {
+        if (text == null) {
+            return null;
+        }
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length < MIN_COMPRESSED_LENGTH) {
+            return new CompressedText(utf8, false);
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(utf8);
+            deflater.finish();
+            byte[] buffer = new byte[utf8.length];
+            int length = deflater.deflate(buffer);
+            if (!deflater.finished() || length >= utf8.length) {
+                return new CompressedText(utf8, false);
+            }
+            return new CompressedText(Arrays.copyOf(buffer, length), true);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Returns the number of bytes the text occupies.
+     */
+    public int storedLength() {
+        return data.length;
+    }
+
+    @Override
+    public String toString() {
+        if (!deflated) {
+            return new String(data, StandardCharsets.UTF_8);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                out.write(buffer, 0, length);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed text", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CompressedText)) {
+            return false;
+        }
+        CompressedText other = (CompressedText) o;
+        return deflated == other.deflated && Arrays.equals(data, other.data);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(data);
+    }
+}
@@ -0,0 +1,103 @@
+package com.collabia.bookrec.model;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * A user's recommendations computed offline, stored in the "recommendations" collection.
+ * The document id is the user's id, so a user's list is a single primary-key lookup.
+ */
+public class PrecomputedRecommendation {
+    private String userId;
+    private List<String> bookIds;
+    private int version;
+    private long profileFingerprint;
+    private Date computedAt;
+
+    public PrecomputedRecommendation() {
+        this.bookIds = new ArrayList<>();
+    }
+
+    public PrecomputedRecommendation(String userId, List<String> bookIds, int version, long profileFingerprint, Date computedAt) {
+        this.userId = userId;
+        this.bookIds = bookIds;
+        this.version = version;
+        this.profileFingerprint = profileFingerprint;
+        this.computedAt = computedAt;
+    }
+
+    // Getters and Setters
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public List<String> getBookIds() {
+        return bookIds;
+    }
+
+    public void setBookIds(List<String> bookIds) {
+        this.bookIds = bookIds;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public long getProfileFingerprint() {
+        return profileFingerprint;
+    }
+
+    public void setProfileFingerprint(long profileFingerprint) {
+        this.profileFingerprint = profileFingerprint;
+    }
+
+    public Date getComputedAt() {
+        return computedAt;
+    }
+
+    public void setComputedAt(Date computedAt) {
+        this.computedAt = computedAt;
+    }
+
+    // MongoDB Document Conversion
+    public Document toDocument() {
+        List<ObjectId> bookObjectIds = new ArrayList<>(bookIds.size());
+        for (String bookId : bookIds) {
+            bookObjectIds.add(new ObjectId(bookId));
+        }
+        return new Document("_id", new ObjectId(userId))
+                .append("bookIds", bookObjectIds)
+                .append("version", version)
+                .append("profileFingerprint", profileFingerprint)
+                .append("computedAt", computedAt);
+    }
+
+    public static PrecomputedRecommendation fromDocument(Document doc) {
+        if (doc == null) {
+            return null;
+        }
+        PrecomputedRecommendation recommendation = new PrecomputedRecommendation();
+        recommendation.setUserId(doc.getObjectId("_id").toHexString());
+        List<String> bookIds = new ArrayList<>();
+        for (ObjectId bookId : doc.getList("bookIds", ObjectId.class, new ArrayList<>())) {
+            bookIds.add(bookId.toHexString());
+        }
+        recommendation.setBookIds(bookIds);
+        recommendation.setVersion(doc.getInteger("version", 0));
+        recommendation.setProfileFingerprint(doc.getLong("profileFingerprint"));
+        recommendation.setComputedAt(doc.getDate("computedAt"));
+        return recommendation;
+    }
+}
@@ -15,12 +15,14 @@ public class User {
     private List<String> favoriteGenres;
     private List<String> readBooks;
     private List<String> likedBooks;
+    private List<String> hiddenBooks; // Books not to recommend again
     private Date createdAt;
 
     public User() {
         this.favoriteGenres = new ArrayList<>();
         this.readBooks = new ArrayList<>();
         this.likedBooks = new ArrayList<>();
+        this.hiddenBooks = new ArrayList<>();
         this.createdAt = new Date();
     }
 
@@ -38,6 +40,7 @@ public class User {
         this.favoriteGenres = favoriteGenres;
         this.readBooks = readBooks;
         this.likedBooks = likedBooks;
+        this.hiddenBooks = new ArrayList<>();
         this.createdAt = new Date();
     }
 
@@ -98,6 +101,14 @@ public class User {
         this.likedBooks = likedBooks;
     }
 
+    public List<String> getHiddenBooks() {
+        return hiddenBooks;
+    }
+
+    public void setHiddenBooks(List<String> hiddenBooks) {
+        this.hiddenBooks = hiddenBooks;
+    }
+
     public Date getCreatedAt() {
         return createdAt;
     }
@@ -114,6 +125,7 @@ public class User {
                 .append("favoriteGenres", favoriteGenres)
                 .append("readBooks", readBooks)
                 .append("likedBooks", likedBooks)
+                .append("hiddenBooks", hiddenBooks)
                 .append("createdAt", createdAt);
         if (id != null) {
             doc.append("_id", id);
@@ -133,6 +145,7 @@ public class User {
         user.setFavoriteGenres(doc.getList("favoriteGenres", String.class, new ArrayList<>()));
         user.setReadBooks(doc.getList("readBooks", String.class, new ArrayList<>()));
         user.setLikedBooks(doc.getList("likedBooks", String.class, new ArrayList<>()));
+        user.setHiddenBooks(doc.getList("hiddenBooks", String.class, new ArrayList<>()));
         user.setCreatedAt(doc.getDate("createdAt"));
         return user;
     }
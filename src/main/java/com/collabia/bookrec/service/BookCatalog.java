@@ -0,0 +1,388 @@
+package com.collabia.bookrec.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.collabia.bookrec.dao.BookDAO;
+import com.collabia.bookrec.model.Book;
+import com.collabia.bookrec.model.BookView;
+
+/**
+ * In-memory copy of the book catalog used by the {@link RecommendationEngine}.
+ * <p>
+ * Every book gets a dense ordinal (its position in {@link #getBooks()}) and is
+ * indexed by id, genre and author, so recommendation can score only the books
+ * that share something with the user instead of the whole catalog. The catalog
+ * is loaded once from {@link BookDAO#findAll()} and kept current through the
+ * {@link BookDAO} insert listener and delta refreshes: {@link #refreshChanges(BookDAO)}
+ * fetches only the books written since shortly before the newest {@code updatedAt} already seen.
+ * <p>
+ * The state lives in an immutable, versioned {@link CatalogSnapshot} behind one
+ * volatile reference. Readers never lock: every change builds a new snapshot and
+ * swaps it in atomically, so a reader sees either the old or the new catalog,
+ * never a half-built index, and an old snapshot is reclaimed once its last
+ * reader is done. Author and genre strings of books entering the catalog are
+ * replaced by equal shared instances of {@link BookView#internName(String)}. Writers are serialized. The accessors below each read the
+ * current snapshot; callers that combine several lookups should take
+ * {@link #getSnapshot()} once and use it throughout.
+ */
+public class BookCatalog {
+
+    private static final Logger LOGGER = Logger.getLogger(BookCatalog.class.getName());
+
+    /**
+     * How far before the newest {@code updatedAt} seen a refresh queries again.
+     */
+    static final Duration REFRESH_OVERLAP = Duration.ofSeconds(30);
+
+    private static BookCatalog instance;
+
+    private final Object writeLock = new Object();
+    private volatile CatalogSnapshot snapshot = CatalogSnapshot.of(Collections.emptyList(), 0);
+    private volatile boolean loaded;
+    private volatile Instant watermark;
+    private boolean subscribed;
+    private ScheduledExecutorService refresher;
+
+    public BookCatalog() {
+    }
+
+    /**
+     * Creates an already loaded catalog holding the given books.
+     *
+     * @param books the catalog books, in ordinal order
+     */
+    public BookCatalog(List<Book> books) {
+        addAll(books);
+        this.loaded = true;
+    }
+
+    /**
+     * Returns the catalog shared by all engines in this JVM.
+     */
+    public static synchronized BookCatalog getInstance() {
+        if (instance == null) {
+            instance = new BookCatalog();
+        }
+        return instance;
+    }
+
+    /**
+     * Loads the catalog from the database on first use and subscribes to book inserts.
+     * Does nothing if the catalog is already loaded or no DAO is available. The query runs
+     * without holding any lock, so readers are not blocked while it is in flight.
+     *
+     * @param bookDAO the DAO to load books from, may be {@code null}
+     */
+    public void ensureLoaded(BookDAO bookDAO) {
+        if (loaded || bookDAO == null) {
+            return;
+        }
+        synchronized (writeLock) {
+            // Subscribe first so no insert is missed; books already loaded are skipped by id
+            if (!subscribed) {
+                BookDAO.addInsertListener(this::add);
+                subscribed = true;
+            }
+        }
+
+        // Query outside the lock; concurrent loads share one query through the DAO
+        List<Book> books = bookDAO.findAll();
+        synchronized (writeLock) {
+            if (!loaded) {
+                addAll(books);
+                advanceWatermark(books);
+                loaded = true;
+            }
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Reloads the whole catalog from the database and swaps the new snapshot in.
+     * Readers keep using the current snapshot until the swap. Books inserted while the
+     * query runs are carried over.
+     *
+     * @param bookDAO the DAO to load books from
+     */
+    public void reload(BookDAO bookDAO) {
+        int sizeBefore = snapshot.size();
+        List<Book> books = bookDAO.findAll();
+        synchronized (writeLock) {
+            CatalogSnapshot current = snapshot;
+            List<Book> next = new ArrayList<>(books);
+            Set<String> ids = new HashSet<>();
+            for (Book book : books) {
+                canonicalize(book);
+                ids.add(book.getId());
+            }
+            for (int ordinal = Math.min(sizeBefore, current.size()); ordinal < current.size(); ordinal++) {
+                Book inserted = current.getBook(ordinal);
+                if (inserted.getId() == null || !ids.contains(inserted.getId())) {
+                    next.add(inserted);
+                }
+            }
+            publish(next, current);
+            advanceWatermark(books);
+            loaded = true;
+        }
+    }
+
+    /**
+     * Brings books inserted or updated since the last load or refresh into the catalog.
+     * <p>
+     * Only the changed documents are queried, through the {@code updatedAt} index, and
+     * deserialized. The stamps come from the server's clock, and the query reaches
+     * {@link #REFRESH_OVERLAP} before the newest stamp seen, so a write that became visible
+     * after a later-stamped one is still picked up; changes already applied are skipped.
+     * New books are appended and updated ones replace their old version at the same ordinal,
+     * in a snapshot derived from the current one, so a refresh costs the changes, not the
+     * catalog. A refresh without changes publishes nothing. Deleted books are only dropped by
+     * {@link #reload(BookDAO)}.
+     *
+     * @param bookDAO the DAO to query
+     * @return the number of books added or replaced
+     */
+    public int refreshChanges(BookDAO bookDAO) {
+        if (!loaded) {
+            ensureLoaded(bookDAO);
+            return 0;
+        }
+        Instant since = watermark == null ? Instant.EPOCH : watermark.minus(REFRESH_OVERLAP);
+        List<Book> changed = bookDAO.findChangedSince(since);
+        if (changed.isEmpty()) {
+            return 0;
+        }
+        synchronized (writeLock) {
+            CatalogSnapshot current = snapshot;
+            Map<Integer, Book> replaced = new LinkedHashMap<>();
+            Map<String, Integer> appendedPositions = new HashMap<>();
+            List<Book> appended = new ArrayList<>();
+            for (Book book : changed) {
+                int ordinal = current.ordinalOf(book.getId());
+                Book existing = ordinal >= 0 ? replaced.getOrDefault(ordinal, current.getBook(ordinal)) : null;
+                // Changes inside the overlap come back on every refresh; skip those already applied
+                if (existing != null && existing.getUpdatedAt() != null
+                        && !book.getUpdatedAt().after(existing.getUpdatedAt())) {
+                    continue;
+                }
+                canonicalize(book);
+                Integer pending = appendedPositions.get(book.getId());
+                if (ordinal >= 0) {
+                    replaced.put(ordinal, book);
+                } else if (pending != null) {
+                    appended.set(pending, book);
+                } else {
+                    appendedPositions.put(book.getId(), appended.size());
+                    appended.add(book);
+                }
+            }
+            if (!replaced.isEmpty() || !appended.isEmpty()) {
+                int[] ordinals = new int[replaced.size()];
+                int i = 0;
+                for (int ordinal : replaced.keySet()) {
+                    ordinals[i++] = ordinal;
+                }
+                snapshot = current.withChanges(ordinals, new ArrayList<>(replaced.values()), appended,
+                        current.getVersion() + 1);
+            }
+            advanceWatermark(changed);
+            return replaced.size() + appended.size();
+        }
+    }
+
+    private void advanceWatermark(List<Book> books) {
+        Instant newest = watermark;
+        for (Book book : books) {
+            if (book.getUpdatedAt() != null && (newest == null || book.getUpdatedAt().toInstant().isAfter(newest))) {
+                newest = book.getUpdatedAt().toInstant();
+            }
+        }
+        watermark = newest;
+    }
+
+    /**
+     * Returns the newest server {@code updatedAt} the catalog has seen, or {@code null} if none.
+     */
+    public Instant getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Refreshes the catalog periodically with {@link #refreshChanges(BookDAO)} on a daemon thread.
+     */
+    public void scheduleRefresh(BookDAO bookDAO, long period, TimeUnit unit) {
+        synchronized (writeLock) {
+            if (refresher != null) {
+                return;
+            }
+            refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "catalog-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(() -> {
+                try {
+                    refreshChanges(bookDAO);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to refresh the book catalog", e);
+                }
+            }, period, period, unit);
+        }
+    }
+
+    public void stopRefreshing() {
+        synchronized (writeLock) {
+            if (refresher != null) {
+                refresher.shutdownNow();
+                refresher = null;
+            }
+        }
+    }
+
+    /**
+     * Appends a book to the catalog and indexes it.
+     * A book whose id is already in the catalog is not added again.
+     * The new snapshot shares the current one's storage, so an insert costs the book, not the catalog.
+     *
+     * @param book the book to add
+     * @return the ordinal assigned to the book
+     */
+    public int add(Book book) {
+        synchronized (writeLock) {
+            CatalogSnapshot current = snapshot;
+            int existing = current.ordinalOf(book.getId());
+            if (existing >= 0) {
+                return existing;
+            }
+            snapshot = current.withAppended(List.of(canonicalize(book)), current.getVersion() + 1);
+            return current.size();
+        }
+    }
+
+    /**
+     * Appends books to the catalog in one new snapshot, skipping ids already present.
+     */
+    public void addAll(List<Book> newBooks) {
+        synchronized (writeLock) {
+            CatalogSnapshot current = snapshot;
+            List<Book> appended = new ArrayList<>();
+            Set<String> ids = new HashSet<>();
+            for (Book book : newBooks) {
+                if (book.getId() != null && (current.ordinalOf(book.getId()) >= 0 || !ids.add(book.getId()))) {
+                    continue;
+                }
+                appended.add(canonicalize(book));
+            }
+            if (!appended.isEmpty()) {
+                snapshot = current.withAppended(appended, current.getVersion() + 1);
+            }
+        }
+    }
+
+    /**
+     * Points the book's author and genres at the shared interned instances, so a catalog of
+     * many books keeps one copy of each name. Only equal strings are swapped: the genre list
+     * stays the caller's own list, modifiable and with its {@code null} entries.
+     */
+    private static Book canonicalize(Book book) {
+        book.setAuthor(BookView.internName(book.getAuthor()));
+        BookView.internNames(book.getGenres());
+        return book;
+    }
+
+    private void publish(List<Book> books, CatalogSnapshot current) {
+        snapshot = CatalogSnapshot.of(books, current.getVersion() + 1);
+    }
+
+    public List<Book> getBooks() {
+        return snapshot.getBooks();
+    }
+
+    public Book get(int ordinal) {
+        return snapshot.getBook(ordinal);
+    }
+
+    /**
+     * Returns the ordinal of the book with the given id, or -1 if it is not in the catalog.
+     */
+    public int ordinalOf(String bookId) {
+        return snapshot.ordinalOf(bookId);
+    }
+
+    /**
+     * Returns the book with the given id, or {@code null} if it is not in the catalog.
+     */
+    public Book findById(String bookId) {
+        return snapshot.findById(bookId);
+    }
+
+    /**
+     * Returns all books written by the author, in catalog order.
+     */
+    public List<Book> getBooksByAuthor(String author) {
+        CatalogSnapshot current = snapshot;
+        List<Book> result = new ArrayList<>(current.getAuthorIndex().size(author));
+        current.getAuthorIndex().forEach(author, ordinal -> result.add(current.getBook(ordinal)));
+        return result;
+    }
+
+    /**
+     * Returns the version of the current snapshot, which changes whenever the catalog does,
+     * for callers caching derived results.
+     */
+    public long getVersion() {
+        return snapshot.getVersion();
+    }
+
+    /**
+     * Returns when the current snapshot was built.
+     */
+    public Instant getBuildTime() {
+        return snapshot.getBuildTime();
+    }
+
+    public int size() {
+        return snapshot.size();
+    }
+
+    public PostingIndex getGenreIndex() {
+        return snapshot.getGenreIndex();
+    }
+
+    public PostingIndex getAuthorIndex() {
+        return snapshot.getAuthorIndex();
+    }
+
+    /**
+     * Returns the current immutable snapshot of the catalog.
+     */
+    public CatalogSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns all ordinals ordered by rating, highest first, ties in catalog order.
+     *
+     * @see CatalogSnapshot#getPopularityOrder()
+     */
+    public int[] getPopularityOrder() {
+        return snapshot.getPopularityOrder();
+    }
+}
@@ -0,0 +1,113 @@
+package com.collabia.bookrec.service;
+
+/**
+ * A batch of candidates with the features the ranker scores, fetched column by column
+ * from the {@link CatalogSnapshot}. Batches are reused, so rankers must not keep them.
+ */
+public final class CandidateFeatures {
+
+    private int size;
+    private final int[] ordinals;
+    private int maskWords = 1;
+    private long[] sharedGenres;
+    private final boolean[] authorMatches;
+    private final double[] ratings;
+
+    CandidateFeatures(int capacity) {
+        this.ordinals = new int[capacity];
+        this.sharedGenres = new long[capacity];
+        this.authorMatches = new boolean[capacity];
+        this.ratings = new double[capacity];
+    }
+
+    /**
+     * Fetches the features of the unread candidates in {@code [from, to)} of the request.
+     */
+    void fetch(RecommendationContext context, int from, int to) {
+        CatalogSnapshot snapshot = context.getSnapshot();
+        ScoringScratch scratch = context.scratch;
+        int capacity = ordinals.length;
+        maskWords = snapshot.getMaskWords();
+        if (sharedGenres.length < maskWords * capacity) {
+            sharedGenres = new long[maskWords * capacity];
+        }
+        size = 0;
+        for (int i = from; i < to; i++) {
+            int ordinal = scratch.candidates[i];
+
+            // Skip books already read by the user
+            if (scratch.isRead(ordinal)) {
+                continue;
+            }
+            ordinals[size] = ordinal;
+            // The shared genre bits; rankers count them
+            for (int w = 0; w < maskWords; w++) {
+                sharedGenres[w * capacity + size] = snapshot.getGenreMaskWord(ordinal, w) & scratch.genreMask[w];
+            }
+            authorMatches[size] = scratch.isPreferredAuthor(snapshot.getAuthorId(ordinal));
+            ratings[size] = snapshot.getRating(ordinal);
+            size++;
+        }
+    }
+
+    int capacity() {
+        return ordinals.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the catalog ordinal of the i-th candidate.
+     */
+    public int getOrdinal(int i) {
+        return ordinals[i];
+    }
+
+    /**
+     * Returns the number of the user's favorite genres the i-th candidate has.
+     */
+    public int getGenreOverlap(int i) {
+        int count = 0;
+        for (int w = 0; w < maskWords; w++) {
+            count += Long.bitCount(sharedGenres[w * ordinals.length + i]);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of words in each candidate's shared genre mask.
+     */
+    public int getMaskWords() {
+        return maskWords;
+    }
+
+    /**
+     * Returns the genres the candidates share with the user's favorites, stored word by word:
+     * word {@code w} of candidate {@code i} is at {@code w * capacity() + i}. Consecutive
+     * candidates are adjacent, so rankers can load them as vectors.
+     */
+    long[] getSharedGenres() {
+        return sharedGenres;
+    }
+
+    boolean[] getAuthorMatches() {
+        return authorMatches;
+    }
+
+    double[] getRatings() {
+        return ratings;
+    }
+
+    /**
+     * Returns whether the i-th candidate is by an author the user has read.
+     */
+    public boolean isAuthorMatch(int i) {
+        return authorMatches[i];
+    }
+
+    public double getRating(int i) {
+        return ratings[i];
+    }
+}
@@ -0,0 +1,21 @@
+package com.collabia.bookrec.service;
+
+/**
+ * A retrieval stage of the {@link RecommendationPipeline}: adds candidate books to a request.
+ * <p>
+ * Generators read indexes or precomputed lists rather than scanning the catalog, and stop
+ * as soon as {@link RecommendationContext#addCandidate(int)} returns false. Their order in
+ * the pipeline is the order candidates are ranked in when time runs short.
+ */
+public interface CandidateGenerator {
+
+    /**
+     * Returns the stage name used in metrics.
+     */
+    String getName();
+
+    /**
+     * Adds this generator's candidates for the request.
+     */
+    void generate(RecommendationContext context);
+}
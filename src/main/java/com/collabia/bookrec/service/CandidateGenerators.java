@@ -0,0 +1,156 @@
+package com.collabia.bookrec.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.collabia.bookrec.model.Book;
+
+/**
+ * The built-in {@link CandidateGenerator}s.
+ */
+public final class CandidateGenerators {
+
+    private CandidateGenerators() {
+    }
+
+    /**
+     * Books sharing a genre with the user's favorite genres, from the catalog's genre index.
+     */
+    public static CandidateGenerator genreIndex() {
+        return new CandidateGenerator() {
+            @Override
+            public String getName() {
+                return "genre-index";
+            }
+
+            @Override
+            public void generate(RecommendationContext context) {
+                if (context.getUser().getFavoriteGenres() == null) {
+                    return;
+                }
+                PostingIndex genreIndex = context.getSnapshot().getGenreIndex();
+                for (String genre : context.getUser().getFavoriteGenres()) {
+                    if (!genreIndex.forEachWhile(genre, context::addCandidate)) {
+                        return;
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Books by the authors of the books the user has read, from the catalog's author index.
+     */
+    public static CandidateGenerator authorIndex() {
+        return new CandidateGenerator() {
+            @Override
+            public String getName() {
+                return "author-index";
+            }
+
+            @Override
+            public void generate(RecommendationContext context) {
+                PostingIndex authorIndex = context.getSnapshot().getAuthorIndex();
+                for (int i = 0; i < context.getPreferredAuthorCount(); i++) {
+                    String author = context.getSnapshot().getAuthorName(context.getPreferredAuthor(i));
+                    if (!authorIndex.forEachWhile(author, context::addCandidate)) {
+                        return;
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Books similar to the ones the user liked: by the same authors first, then sharing a genre.
+     */
+    public static CandidateGenerator similarToLiked() {
+        return new CandidateGenerator() {
+            @Override
+            public String getName() {
+                return "similar-to-liked";
+            }
+
+            @Override
+            public void generate(RecommendationContext context) {
+                CatalogSnapshot snapshot = context.getSnapshot();
+                List<Book> likedBooks = new ArrayList<>();
+                context.getBookSets().forEachLiked(bookIntId -> {
+                    int ordinal = snapshot.ordinalOfIntId(bookIntId);
+                    if (ordinal >= 0) {
+                        likedBooks.add(context.getBook(ordinal));
+                    }
+                });
+                Set<String> genres = new HashSet<>();
+                for (Book liked : likedBooks) {
+                    if (!snapshot.getAuthorIndex().forEachWhile(liked.getAuthor(), context::addCandidate)) {
+                        return;
+                    }
+                    if (liked.getGenres() != null) {
+                        genres.addAll(liked.getGenres());
+                    }
+                }
+                for (String genre : genres) {
+                    if (!snapshot.getGenreIndex().forEachWhile(genre, context::addCandidate)) {
+                        return;
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * The most popular unread books that no earlier stage produced, as many as the request's limit.
+     * Under the {@link ContentRanker} every book left out scores below these, so together with
+     * the index generators the candidates always contain the best books of the whole catalog.
+     */
+    public static CandidateGenerator popularity() {
+        return new CandidateGenerator() {
+            @Override
+            public String getName() {
+                return "popularity";
+            }
+
+            @Override
+            public void generate(RecommendationContext context) {
+                int added = 0;
+                for (int ordinal : context.getSnapshot().getPopularityOrder()) {
+                    if (added >= context.getLimit()) {
+                        return;
+                    }
+                    if (context.isRead(ordinal) || context.isCandidate(ordinal)) {
+                        continue;
+                    }
+                    if (!context.addCandidate(ordinal)) {
+                        return;
+                    }
+                    added++;
+                }
+            }
+        };
+    }
+
+    /**
+     * Every unread book of the catalog, in catalog order. Used by the full-scan pipeline.
+     */
+    public static CandidateGenerator allBooks() {
+        return new CandidateGenerator() {
+            @Override
+            public String getName() {
+                return "all-books";
+            }
+
+            @Override
+            public void generate(RecommendationContext context) {
+                int size = context.getSnapshot().size();
+                for (int ordinal = 0; ordinal < size; ordinal++) {
+                    if (!context.isRead(ordinal) && !context.addCandidate(ordinal)) {
+                        return;
+                    }
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,18 @@
+package com.collabia.bookrec.service;
+
+/**
+ * The ranking stage of the {@link RecommendationPipeline}: scores batches of candidates.
+ * Rankers may be called concurrently for disjoint batches, each with its own selector.
+ */
+public interface CandidateRanker {
+
+    /**
+     * Returns the stage name used in metrics.
+     */
+    String getName();
+
+    /**
+     * Scores every candidate of the batch and offers it to the selector.
+     */
+    void rank(CandidateFeatures features, TopKSelector topK);
+}
@@ -0,0 +1,845 @@
+package com.collabia.bookrec.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.collabia.bookrec.model.Book;
+import com.collabia.bookrec.service.PostingIndex.PostingList;
+import com.collabia.bookrec.utils.IdRegistry;
+
+/**
+ * Immutable, versioned, columnar (struct-of-arrays) view of a list of books.
+ * <p>
+ * A snapshot holds everything a reader needs at one point in time: the books, the
+ * id-to-ordinal map, the genre and author indexes and the scoring columns. What it
+ * shows never changes after it is built, so readers use it without locks and a whole
+ * request sees one consistent catalog.
+ * <p>
+ * Book ordinals are indexes into the columns. Ratings are {@code double}s and
+ * authors are dictionary-encoded into {@code int} ids. Genres are packed as
+ * bitmasks from a {@link GenreDictionary} of {@link #getMaskWords()} words per
+ * book, so genre overlap is a popcount. Scoring reads primitive arrays and
+ * allocates nothing.
+ * <p>
+ * The columns are stored in chunks of {@value #CHUNK_SIZE} books. The {@link BookCatalog}
+ * derives each new snapshot from the current one with {@link #withAppended(List, long)} and
+ * {@link #withChanges(int[], List, List, long)}: appended books are written past the end of the
+ * current snapshot's chunks, posting lists and dictionaries, where the current snapshot never
+ * reads, a replaced book gets copies of its chunk and of the posting lists it enters or leaves,
+ * and everything else is shared. A change therefore costs the changed books, not the catalog.
+ * <p>
+ * Book ids are resolved through the shared {@link IdRegistry#forBooks()}: the snapshot maps
+ * a book's registry int id to its ordinal in an open-addressing table of primitive slots sized
+ * by its own books, so looking up a hex id costs a hex parse and a probe or two instead of a
+ * {@code String} hash and a boxed map entry, and a small snapshot stays small however many ids
+ * the registry holds.
+ */
+public final class CatalogSnapshot {
+
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    // Beyond this many replaced books, the popularity order is sorted again rather than merged
+    private static final int MAX_REPLACED_FOR_MERGE = 1024;
+
+    private final Chunk[] chunks;
+    private final int size;
+    private final AuthorDictionary authors;
+    private final String[] authorNames;
+    private final int authorCount;
+    private final PostingList[][] authorPostings;
+    private final GenreDictionary genres;
+    private final int maskWords;
+    private final PostingList[] genrePostings;
+    private final OrdinalMap ordinals;
+    private final PostingIndex genreIndex;
+    private final PostingIndex authorIndex;
+    private final long version;
+    private final Instant buildTime;
+
+    // The popularity order of an ancestor, covering its first popularityBaseSize ordinals, if known,
+    // and the ordinals below that size replaced since, in ascending order
+    private volatile int[] popularityOrder;
+    private final int[] popularityBase;
+    private final int popularityBaseSize;
+    private final int[] popularityReplaced;
+
+    // Set once a snapshot has been derived from this one; the storage past its end is then taken
+    private boolean extended;
+
+    private CatalogSnapshot(Draft draft, long version, int[] popularityBase, int popularityBaseSize,
+                            int[] popularityReplaced) {
+        this.chunks = draft.chunks;
+        this.size = draft.size;
+        this.authors = draft.authors;
+        this.authorNames = draft.authors.names;
+        this.authorCount = draft.authors.size;
+        this.authorPostings = draft.authorPostings;
+        this.genres = draft.genres;
+        this.maskWords = draft.maskWords;
+        this.genrePostings = draft.genrePostings;
+        this.ordinals = draft.ordinals;
+        this.version = version;
+        this.buildTime = Instant.now();
+        this.popularityBase = popularityBase;
+        this.popularityBaseSize = popularityBaseSize;
+        this.popularityReplaced = popularityReplaced;
+
+        GenreDictionary genreBits = genres;
+        PostingList[] genreLists = genrePostings;
+        this.genreIndex = new PostingIndex(genre -> {
+            int bit = genreBits.bitOf(genre);
+            return bit < 0 ? null : genreLists[bit];
+        }, size);
+        AuthorDictionary authorIds = authors;
+        int authorBound = authorCount;
+        PostingList[][] authorLists = authorPostings;
+        this.authorIndex = new PostingIndex(author -> {
+            int id = authorIds.find(author, authorBound);
+            return id < 0 || authorLists[id >>> CHUNK_SHIFT] == null ? null
+                    : authorLists[id >>> CHUNK_SHIFT][id & CHUNK_MASK];
+        }, size);
+    }
+
+    /**
+     * Builds an unversioned snapshot of the given books; ordinal {@code i} is {@code books.get(i)}.
+     */
+    public static CatalogSnapshot of(List<Book> books) {
+        return of(books, 0);
+    }
+
+    /**
+     * Builds a snapshot of the given books; ordinal {@code i} is {@code books.get(i)}.
+     * Books without an id are not in the id map.
+     *
+     * @param version the version to stamp the snapshot with
+     */
+    public static CatalogSnapshot of(List<Book> books, long version) {
+        // All genres up front, so the mask width is known before the first book is written
+        GenreDictionary genres = new GenreDictionary();
+        for (Book book : books) {
+            genres.addAll(book.getGenres());
+        }
+        Draft draft = new Draft(genres, books.size());
+        for (Book book : books) {
+            draft.append(book);
+        }
+        return new CatalogSnapshot(draft, version, null, 0, null);
+    }
+
+    /**
+     * Returns a snapshot of this snapshot's books followed by the appended ones.
+     *
+     * @param version the version to stamp the new snapshot with
+     * @see #withChanges(int[], List, List, long)
+     */
+    CatalogSnapshot withAppended(List<Book> appended, long version) {
+        return withChanges(new int[0], List.of(), appended, version);
+    }
+
+    /**
+     * Returns a snapshot with some books replaced in place and others appended.
+     * <p>
+     * The new snapshot writes the appended books past this one's end, copies the chunks and
+     * posting lists the replaced books touch and shares the rest of its storage, so this costs
+     * the changed books only. That works once per snapshot: a second derivation from the same
+     * snapshot, or books bringing in more genres than the mask words hold, build a full copy
+     * instead.
+     *
+     * @param replacedOrdinals the ordinals whose books are replaced
+     * @param replacements     the new books at those ordinals, each with the id of the book it replaces
+     * @param appended         the books to append
+     * @param version          the version to stamp the new snapshot with
+     */
+    CatalogSnapshot withChanges(int[] replacedOrdinals, List<Book> replacements, List<Book> appended, long version) {
+        if (size == 0 || !claimStorage()) {
+            return of(changed(replacedOrdinals, replacements, appended), version);
+        }
+        Draft draft = new Draft(this);
+        for (int i = 0; i < replacedOrdinals.length; i++) {
+            if (!draft.replace(replacedOrdinals[i], replacements.get(i))) {
+                return of(changed(replacedOrdinals, replacements, appended), version);
+            }
+        }
+        for (Book book : appended) {
+            if (!draft.append(book)) {
+                return of(changed(replacedOrdinals, replacements, appended), version);
+            }
+        }
+
+        // Carry a known popularity order forward with the ordinals whose rating may have moved
+        int[] order = popularityOrder;
+        int[] base = order != null ? order : popularityBase;
+        int baseSize = order != null ? size : popularityBaseSize;
+        int[] replaced = union(order != null ? null : popularityReplaced, replacedOrdinals, baseSize);
+        if (replaced.length > MAX_REPLACED_FOR_MERGE) {
+            base = null;
+        }
+        return base == null
+                ? new CatalogSnapshot(draft, version, null, 0, null)
+                : new CatalogSnapshot(draft, version, base, baseSize, replaced);
+    }
+
+    /**
+     * Returns the sorted union of the ordinals below the bound, without duplicates.
+     */
+    private static int[] union(int[] sorted, int[] ordinals, int bound) {
+        int[] all = sorted == null ? new int[ordinals.length] : Arrays.copyOf(sorted, sorted.length + ordinals.length);
+        int count = sorted == null ? 0 : sorted.length;
+        for (int ordinal : ordinals) {
+            if (ordinal < bound) {
+                all[count++] = ordinal;
+            }
+        }
+        Arrays.sort(all, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || all[i] != all[distinct - 1]) {
+                all[distinct++] = all[i];
+            }
+        }
+        return Arrays.copyOf(all, distinct);
+    }
+
+    private List<Book> changed(int[] replacedOrdinals, List<Book> replacements, List<Book> appended) {
+        List<Book> all = new ArrayList<>(size + appended.size());
+        all.addAll(getBooks());
+        for (int i = 0; i < replacedOrdinals.length; i++) {
+            all.set(replacedOrdinals[i], replacements.get(i));
+        }
+        all.addAll(appended);
+        return all;
+    }
+
+    private synchronized boolean claimStorage() {
+        if (extended) {
+            return false;
+        }
+        extended = true;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the version of the catalog this snapshot was built for; it grows with every change.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public Instant getBuildTime() {
+        return buildTime;
+    }
+
+    /**
+     * Returns the books in ordinal order, as an unmodifiable list backed by the snapshot.
+     */
+    public List<Book> getBooks() {
+        return new AbstractList<Book>() {
+            @Override
+            public Book get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+                }
+                return getBook(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Returns the ordinal of the book with the given id, or -1 if it is not in the snapshot.
+     */
+    public int ordinalOf(String bookId) {
+        return ordinalOfIntId(IdRegistry.forBooks().find(bookId));
+    }
+
+    /**
+     * Returns the ordinal of the book with the given {@link IdRegistry#forBooks() registry} int id,
+     * or -1 if it is not in the snapshot.
+     */
+    public int ordinalOfIntId(int bookIntId) {
+        // Ordinals past the end belong to snapshots derived from this one
+        return bookIntId < 0 ? -1 : ordinals.get(bookIntId, size);
+    }
+
+    /**
+     * Returns the registry int id of the book at the ordinal, or -1 if the book has no id.
+     */
+    public int getBookIntId(int ordinal) {
+        return chunks[ordinal >>> CHUNK_SHIFT].bookIntIds[ordinal & CHUNK_MASK];
+    }
+
+    /**
+     * Returns the book with the given id, or {@code null} if it is not in the snapshot.
+     */
+    public Book findById(String bookId) {
+        int ordinal = ordinalOf(bookId);
+        return ordinal < 0 ? null : getBook(ordinal);
+    }
+
+    /**
+     * Returns the genre index of the snapshot.
+     */
+    public PostingIndex getGenreIndex() {
+        return genreIndex;
+    }
+
+    /**
+     * Returns the author index of the snapshot.
+     */
+    public PostingIndex getAuthorIndex() {
+        return authorIndex;
+    }
+
+    /**
+     * Returns all ordinals ordered by rating, highest first, ties in catalog order.
+     * This is the order in which books without any genre or author match rank,
+     * so it serves as the popularity fallback. Computed on first use, by merging the
+     * books appended or replaced since an ancestor's order into it when that order is known.
+     */
+    public int[] getPopularityOrder() {
+        int[] order = popularityOrder;
+        if (order == null) {
+            // Racing threads compute the same order; any of them may publish it
+            order = popularityBase == null ? sortByPopularity(identity(size)) : mergePopularity();
+            popularityOrder = order;
+        }
+        return order;
+    }
+
+    /**
+     * Sorts the ordinals by rating, highest first, then by ordinal. Ratings are replaced by
+     * their dense rank, which fits a {@code long} next to the ordinal, so the sort is a
+     * primitive one.
+     */
+    private int[] sortByPopularity(int[] ordinals) {
+        int n = ordinals.length;
+        long[] ratingKeys = new long[n];
+        for (int i = 0; i < n; i++) {
+            ratingKeys[i] = sortableBits(getRating(ordinals[i]));
+        }
+        long[] distinct = Arrays.copyOf(ratingKeys, n);
+        Arrays.sort(distinct);
+        int distinctCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinctCount == 0 || distinct[i] != distinct[distinctCount - 1]) {
+                distinct[distinctCount++] = distinct[i];
+            }
+        }
+        // Highest rating first: the best rating gets rank 0 in the high half
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            long rank = distinctCount - 1 - Arrays.binarySearch(distinct, 0, distinctCount, ratingKeys[i]);
+            keys[i] = (rank << 32) | ordinals[i];
+        }
+        Arrays.sort(keys);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    private static int[] identity(int size) {
+        int[] ordinals = new int[size];
+        for (int i = 0; i < size; i++) {
+            ordinals[i] = i;
+        }
+        return ordinals;
+    }
+
+    /**
+     * Merges the ordinals appended or replaced since the base order was computed into it.
+     */
+    private int[] mergePopularity() {
+        int[] base = popularityBase;
+        int[] replaced = popularityReplaced;
+        int[] changed = Arrays.copyOf(replaced, replaced.length + size - popularityBaseSize);
+        for (int i = replaced.length; i < changed.length; i++) {
+            changed[i] = popularityBaseSize + i - replaced.length;
+        }
+        changed = sortByPopularity(changed);
+        int[] order = new int[size];
+        int b = 0;
+        int c = 0;
+        for (int i = 0; i < size; i++) {
+            while (b < base.length && Arrays.binarySearch(replaced, base[b]) >= 0) {
+                b++;
+            }
+            if (c == changed.length || (b < base.length && morePopular(base[b], changed[c]))) {
+                order[i] = base[b++];
+            } else {
+                order[i] = changed[c++];
+            }
+        }
+        return order;
+    }
+
+    private boolean morePopular(int ordinal, int other) {
+        int byRating = Double.compare(getRating(ordinal), getRating(other));
+        return byRating > 0 || (byRating == 0 && ordinal < other);
+    }
+
+    /**
+     * Maps a double to a long whose signed order is the order of {@link Double#compare}.
+     */
+    private static long sortableBits(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    public Book getBook(int ordinal) {
+        return chunks[ordinal >>> CHUNK_SHIFT].books[ordinal & CHUNK_MASK];
+    }
+
+    public double getRating(int ordinal) {
+        return chunks[ordinal >>> CHUNK_SHIFT].ratings[ordinal & CHUNK_MASK];
+    }
+
+    public int getAuthorId(int ordinal) {
+        return chunks[ordinal >>> CHUNK_SHIFT].authorIds[ordinal & CHUNK_MASK];
+    }
+
+    public String getAuthorName(int authorId) {
+        return authorNames[authorId];
+    }
+
+    /**
+     * Returns the id of the author, or -1 if no book in the snapshot has that author.
+     */
+    public int getAuthorId(String author) {
+        return authors.find(author, authorCount);
+    }
+
+    public int getAuthorCount() {
+        return authorCount;
+    }
+
+    /**
+     * Returns the number of {@code long} words in each genre mask.
+     */
+    public int getMaskWords() {
+        return maskWords;
+    }
+
+    /**
+     * Returns the genre dictionary the masks were built with; bits are the genre ids.
+     * It belongs to the snapshot and must not be modified.
+     */
+    public GenreDictionary getGenreDictionary() {
+        return genres;
+    }
+
+    /**
+     * Returns word {@code word} of the book's genre mask.
+     */
+    public long getGenreMaskWord(int ordinal, int word) {
+        return chunks[ordinal >>> CHUNK_SHIFT].genreMasks[(ordinal & CHUNK_MASK) * maskWords + word];
+    }
+
+    /**
+     * Counts the genres the book shares with a mask of at least {@link #getMaskWords()} words.
+     */
+    public int genreOverlap(int ordinal, long[] mask) {
+        long[] genreMasks = chunks[ordinal >>> CHUNK_SHIFT].genreMasks;
+        int base = (ordinal & CHUNK_MASK) * maskWords;
+        int count = 0;
+        for (int w = 0; w < maskWords; w++) {
+            count += Long.bitCount(genreMasks[base + w] & mask[w]);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the id of the genre, or -1 if no book in the snapshot has that genre.
+     */
+    public int getGenreId(String genre) {
+        return genres.bitOf(genre);
+    }
+
+    public int getGenreCount() {
+        return genres.size();
+    }
+
+    /**
+     * The columns of {@value #CHUNK_SIZE} consecutive ordinals.
+     */
+    private static final class Chunk {
+        private final Book[] books;
+        private final double[] ratings;
+        private final int[] authorIds;
+        private final int[] bookIntIds;
+        private final long[] genreMasks;
+
+        private Chunk(int maskWords) {
+            this.books = new Book[CHUNK_SIZE];
+            this.ratings = new double[CHUNK_SIZE];
+            this.authorIds = new int[CHUNK_SIZE];
+            this.bookIntIds = new int[CHUNK_SIZE];
+            this.genreMasks = new long[CHUNK_SIZE * maskWords];
+        }
+
+        private Chunk(Chunk chunk) {
+            this.books = chunk.books.clone();
+            this.ratings = chunk.ratings.clone();
+            this.authorIds = chunk.authorIds.clone();
+            this.bookIntIds = chunk.bookIntIds.clone();
+            this.genreMasks = chunk.genreMasks.clone();
+        }
+    }
+
+    /**
+     * Author names to dense ids, shared by a snapshot and the ones derived from it. Ids are
+     * only ever added; a snapshot ignores the ids from its author count on.
+     */
+    private static final class AuthorDictionary {
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private volatile int nullId = -1;
+        private String[] names = new String[16];
+        private int size;
+
+        private int intern(String name) {
+            int id = find(name, size);
+            if (id >= 0) {
+                return id;
+            }
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size * 2);
+            }
+            names[size] = name;
+            if (name == null) {
+                nullId = size;
+            } else {
+                ids.put(name, size);
+            }
+            return size++;
+        }
+
+        private int find(String name, int bound) {
+            Integer id = name == null ? Integer.valueOf(nullId) : ids.get(name);
+            return id != null && id >= 0 && id < bound ? id : -1;
+        }
+    }
+
+    /**
+     * Registry int ids to ordinals by linear probing. Each slot packs the id plus one in the high
+     * half and the ordinal in the low half, so 0 is empty and a slot is written in one step. A
+     * snapshot and the ones derived from it share a table until it fills up: the newest writer
+     * only fills empty slots, with release stores, and readers ignore the ordinals past their size.
+     */
+    private static final class OrdinalMap {
+        private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+        private static final int MIN_CAPACITY = 16;
+
+        private final long[] slots;
+        private final int mask;
+        private int size;
+
+        private OrdinalMap(int books) {
+            int capacity = MIN_CAPACITY;
+            while (capacity < books * 2) {
+                capacity <<= 1;
+            }
+            this.slots = new long[capacity];
+            this.mask = capacity - 1;
+        }
+
+        /**
+         * Returns the ordinal of the id if it is below the bound, or -1.
+         */
+        private int get(int bookIntId, int bound) {
+            long key = bookIntId + 1L;
+            int slot = hash(bookIntId) & mask;
+            while (true) {
+                long entry = (long) SLOTS.getAcquire(slots, slot);
+                if (entry == 0) {
+                    return -1;
+                }
+                if (entry >>> 32 == key) {
+                    int ordinal = (int) entry;
+                    return ordinal < bound ? ordinal : -1;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private boolean isFull() {
+            return (size + 1) * 2 > slots.length;
+        }
+
+        private void put(int bookIntId, int ordinal) {
+            long key = bookIntId + 1L;
+            int slot = hash(bookIntId) & mask;
+            long entry;
+            while ((entry = (long) SLOTS.getAcquire(slots, slot)) != 0 && entry >>> 32 != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (entry == 0) {
+                size++;
+            }
+            SLOTS.setRelease(slots, slot, (key << 32) | ordinal);
+        }
+
+        /**
+         * Returns a table of twice the capacity with the entries of the ordinals below the bound.
+         */
+        private OrdinalMap grow(int bound) {
+            OrdinalMap grown = new OrdinalMap(slots.length);
+            for (long entry : slots) {
+                if (entry != 0 && (int) entry < bound) {
+                    grown.put((int) (entry >>> 32) - 1, (int) entry);
+                }
+            }
+            return grown;
+        }
+
+        private static int hash(int bookIntId) {
+            int h = bookIntId * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * The storage of a snapshot being built. A draft derived from a snapshot starts out with
+     * its arrays and only writes past that snapshot's end; to change anything below it, the
+     * draft first copies the array holding it. Arrays that must grow are copied too.
+     */
+    private static final class Draft {
+        private Chunk[] chunks;
+        private int size;
+        private final AuthorDictionary authors;
+        private PostingList[][] authorPostings;
+        private GenreDictionary genres;
+        private final int maskWords;
+        private PostingList[] genrePostings;
+        private OrdinalMap ordinals;
+
+        // What this draft has copied or created, and may therefore change in place
+        private boolean ownGenres;
+        private boolean ownChunkSpine;
+        private final BitSet ownChunks = new BitSet();
+        private boolean ownGenrePostings;
+        private boolean ownAuthorSpine;
+        private final BitSet ownAuthorChunks = new BitSet();
+
+        private Draft(GenreDictionary genres, int books) {
+            this.chunks = new Chunk[1];
+            this.authors = new AuthorDictionary();
+            this.authorPostings = new PostingList[1][];
+            this.genres = genres;
+            this.ownGenres = true;
+            this.maskWords = genres.words();
+            this.genrePostings = new PostingList[Math.max(1, genres.size())];
+            this.ordinals = new OrdinalMap(books);
+        }
+
+        private Draft(CatalogSnapshot parent) {
+            this.chunks = parent.chunks;
+            this.size = parent.size;
+            this.authors = parent.authors;
+            this.authorPostings = parent.authorPostings;
+            this.genres = parent.genres;
+            this.maskWords = parent.maskWords;
+            this.genrePostings = parent.genrePostings;
+            this.ordinals = parent.ordinals;
+        }
+
+        /**
+         * Appends a book at the next ordinal and indexes it.
+         *
+         * @return false, having written nothing, if the book's genres do not fit the mask words
+         */
+        private boolean append(Book book) {
+            if (!fitsMask(book.getGenres())) {
+                return false;
+            }
+            int ordinal = size;
+            int c = ordinal >>> CHUNK_SHIFT;
+            if (c == chunks.length) {
+                chunks = Arrays.copyOf(chunks, c * 2);
+                ownChunkSpine = true;
+            }
+            if (chunks[c] == null) {
+                chunks[c] = new Chunk(maskWords);
+                ownChunks.set(c);
+            }
+            write(chunks[c], ordinal, book, false);
+            int bookIntId = book.getId() == null ? -1 : IdRegistry.forBooks().register(book.getId());
+            chunks[c].bookIntIds[ordinal & CHUNK_MASK] = bookIntId;
+            // The first book with an id keeps it
+            if (bookIntId >= 0 && ordinals.get(bookIntId, ordinal) < 0) {
+                if (ordinals.isFull()) {
+                    ordinals = ordinals.grow(ordinal);
+                }
+                ordinals.put(bookIntId, ordinal);
+            }
+            size++;
+            return true;
+        }
+
+        /**
+         * Replaces the book at the ordinal with a book of the same id and moves it between
+         * posting lists as its author and genres require.
+         *
+         * @return false, having written nothing, if the book's genres do not fit the mask words
+         */
+        private boolean replace(int ordinal, Book book) {
+            if (!fitsMask(book.getGenres())) {
+                return false;
+            }
+            Chunk chunk = ownChunk(ordinal >>> CHUNK_SHIFT);
+            int i = ordinal & CHUNK_MASK;
+            int oldAuthorId = chunk.authorIds[i];
+            if (authors.names[oldAuthorId] != null) {
+                setAuthorList(oldAuthorId, authorList(oldAuthorId).without(ordinal));
+            }
+            int base = i * maskWords;
+            for (int w = 0; w < maskWords; w++) {
+                for (long bits = chunk.genreMasks[base + w]; bits != 0; bits &= bits - 1) {
+                    int bit = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    setGenreList(bit, genrePostings[bit].without(ordinal));
+                }
+                chunk.genreMasks[base + w] = 0;
+            }
+            write(chunk, ordinal, book, true);
+            return true;
+        }
+
+        private boolean fitsMask(List<String> bookGenres) {
+            if (bookGenres == null) {
+                return true;
+            }
+            int newGenres = 0;
+            for (int g = 0; g < bookGenres.size(); g++) {
+                String genre = bookGenres.get(g);
+                if (genre != null && genres.bitOf(genre) < 0 && bookGenres.indexOf(genre) == g) {
+                    newGenres++;
+                }
+            }
+            return genres.size() + newGenres <= maskWords * Long.SIZE;
+        }
+
+        /**
+         * Writes the book's columns and adds it to its posting lists, at their end for an
+         * appended book or in order for a replaced one.
+         */
+        private void write(Chunk chunk, int ordinal, Book book, boolean replaced) {
+            int i = ordinal & CHUNK_MASK;
+            chunk.books[i] = book;
+            chunk.ratings[i] = book.getRating();
+            int authorId = authors.intern(book.getAuthor());
+            chunk.authorIds[i] = authorId;
+            if (book.getAuthor() != null) {
+                if (replaced) {
+                    setAuthorList(authorId, authorList(authorId).with(ordinal));
+                } else {
+                    authorList(authorId).append(ordinal);
+                }
+            }
+            if (book.getGenres() != null) {
+                for (String genre : book.getGenres()) {
+                    if (genre == null) {
+                        continue;
+                    }
+                    int bit = genreBit(genre);
+                    chunk.genreMasks[i * maskWords + (bit >>> 6)] |= 1L << bit;
+                    if (replaced) {
+                        setGenreList(bit, genreList(bit).with(ordinal));
+                    } else {
+                        genreList(bit).append(ordinal);
+                    }
+                }
+            }
+        }
+
+        private Chunk ownChunk(int c) {
+            if (!ownChunks.get(c)) {
+                if (!ownChunkSpine) {
+                    chunks = chunks.clone();
+                    ownChunkSpine = true;
+                }
+                chunks[c] = new Chunk(chunks[c]);
+                ownChunks.set(c);
+            }
+            return chunks[c];
+        }
+
+        private int genreBit(String genre) {
+            int bit = genres.bitOf(genre);
+            if (bit < 0) {
+                if (!ownGenres) {
+                    genres = genres.copy();
+                    ownGenres = true;
+                }
+                bit = genres.add(genre);
+            }
+            return bit;
+        }
+
+        private PostingList genreList(int bit) {
+            if (bit >= genrePostings.length) {
+                genrePostings = Arrays.copyOf(genrePostings, Math.max(bit + 1, genrePostings.length * 2));
+                ownGenrePostings = true;
+            }
+            if (genrePostings[bit] == null) {
+                genrePostings[bit] = new PostingList();
+            }
+            return genrePostings[bit];
+        }
+
+        private void setGenreList(int bit, PostingList list) {
+            if (!ownGenrePostings) {
+                genrePostings = genrePostings.clone();
+                ownGenrePostings = true;
+            }
+            genrePostings[bit] = list;
+        }
+
+        private PostingList authorList(int authorId) {
+            int c = authorId >>> CHUNK_SHIFT;
+            if (c >= authorPostings.length) {
+                authorPostings = Arrays.copyOf(authorPostings, Math.max(c + 1, authorPostings.length * 2));
+                ownAuthorSpine = true;
+            }
+            if (authorPostings[c] == null) {
+                authorPostings[c] = new PostingList[CHUNK_SIZE];
+                ownAuthorChunks.set(c);
+            }
+            PostingList[] lists = authorPostings[c];
+            int i = authorId & CHUNK_MASK;
+            if (lists[i] == null) {
+                lists[i] = new PostingList();
+            }
+            return lists[i];
+        }
+
+        private void setAuthorList(int authorId, PostingList list) {
+            int c = authorId >>> CHUNK_SHIFT;
+            if (!ownAuthorChunks.get(c)) {
+                if (!ownAuthorSpine) {
+                    authorPostings = authorPostings.clone();
+                    ownAuthorSpine = true;
+                }
+                authorPostings[c] = authorPostings[c].clone();
+                ownAuthorChunks.set(c);
+            }
+            authorPostings[c][authorId & CHUNK_MASK] = list;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.collabia.bookrec.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.collabia.bookrec.model.Book;
+import com.collabia.bookrec.model.User;
+import com.collabia.bookrec.utils.CompressedBitmap;
+import com.collabia.bookrec.utils.IdRegistry;
+
+/**
+ * Materialized "best rated" lists for users without any reading history.
+ * <p>
+ * Keeps a global list and one list per genre of the highest {@code averageRating}
+ * books, ties in catalog order. The lists are rebuilt from the {@link BookCatalog}
+ * on a schedule and swapped in atomically. A cold-start recommendation is then a
+ * k-way merge of the lists of the user's favorite genres, topped up from the
+ * global list, without the books the user hid. That costs O(k * genres) and does
+ * not touch the catalog.
+ */
+public class ColdStartLists {
+
+    private static final Logger LOGGER = Logger.getLogger(ColdStartLists.class.getName());
+    private static final int DEFAULT_LIST_SIZE = 100;
+    private static final long DEFAULT_REFRESH_MINUTES = 15;
+
+    private static ColdStartLists instance;
+
+    private final BookCatalog catalog;
+    private final int listSize;
+    private volatile Lists lists;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param catalog  the catalog the lists are built from
+     * @param listSize the number of books kept per list
+     */
+    public ColdStartLists(BookCatalog catalog, int listSize) {
+        this.catalog = catalog;
+        this.listSize = listSize;
+    }
+
+    /**
+     * Returns the lists built from the shared catalog, refreshed every {@value #DEFAULT_REFRESH_MINUTES} minutes.
+     */
+    public static synchronized ColdStartLists getInstance() {
+        if (instance == null) {
+            instance = new ColdStartLists(BookCatalog.getInstance(), DEFAULT_LIST_SIZE);
+            instance.start(DEFAULT_REFRESH_MINUTES, TimeUnit.MINUTES);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns true if the user has neither read nor liked any book. Hidden books say what the
+     * user does not want, not what they like, so a user who only hid books is still served
+     * from the lists; {@link #recommend(User, int)} leaves those books out.
+     */
+    public static boolean isColdStart(User user) {
+        return (user.getReadBooks() == null || user.getReadBooks().isEmpty())
+                && (user.getLikedBooks() == null || user.getLikedBooks().isEmpty());
+    }
+
+    /**
+     * Starts refreshing the lists periodically on a daemon thread.
+     */
+    public synchronized void start(long period, TimeUnit unit) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cold-start-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                if (catalog.isLoaded()) {
+                    refresh();
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to refresh cold-start lists", e);
+            }
+        }, period, period, unit);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Rebuilds the lists from the current catalog and swaps them in.
+     */
+    public void refresh() {
+        Book[] books = catalog.getBooks().toArray(new Book[0]);
+
+        // One sort by average rating, then distribute into the per-genre lists
+        Integer[] order = new Integer[books.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble((Integer i) -> books[i].getAverageRating()).reversed());
+
+        int[] global = new int[Math.min(listSize, books.length)];
+        Map<String, int[]> byGenre = new HashMap<>();
+        Map<String, Integer> genreSizes = new HashMap<>();
+        for (int rank = 0; rank < order.length; rank++) {
+            int ordinal = order[rank];
+            if (rank < global.length) {
+                global[rank] = ordinal;
+            }
+            if (books[ordinal].getGenres() == null) {
+                continue;
+            }
+            for (String genre : new HashSet<>(books[ordinal].getGenres())) {
+                int size = genreSizes.getOrDefault(genre, 0);
+                if (size < listSize) {
+                    byGenre.computeIfAbsent(genre, g -> new int[listSize])[size] = ordinal;
+                    genreSizes.put(genre, size + 1);
+                }
+            }
+        }
+        for (Map.Entry<String, int[]> entry : byGenre.entrySet()) {
+            entry.setValue(Arrays.copyOf(entry.getValue(), genreSizes.get(entry.getKey())));
+        }
+
+        lists = new Lists(books, global, byGenre);
+    }
+
+    /**
+     * Merges the best rated books of the user's favorite genres, highest average rating first,
+     * and fills up with the globally best rated books. Books the user has hidden or read are
+     * left out.
+     *
+     * @param user  the user, whose favorite genres may be empty
+     * @param limit the maximum number of books to return
+     * @return the recommended books, best first
+     */
+    public List<Book> recommend(User user, int limit) {
+        Lists current = lists;
+        if (current == null) {
+            refresh();
+            current = lists;
+        }
+
+        List<int[]> sources = new ArrayList<>();
+        if (user.getFavoriteGenres() != null) {
+            for (String genre : new HashSet<>(user.getFavoriteGenres())) {
+                int[] list = current.byGenre.get(genre);
+                if (list != null && list.length > 0) {
+                    sources.add(list);
+                }
+            }
+        }
+
+        // Drop the excluded books from the listed ones as a set; ids the registry has never
+        // seen cannot be excluded
+        IdRegistry registry = IdRegistry.forBooks();
+        CompressedBitmap allowed = new CompressedBitmap();
+        for (int[] list : sources) {
+            current.addIntIds(list, registry, allowed);
+        }
+        current.addIntIds(current.global, registry, allowed);
+        UserBookSets.of(user).removeExcluded(allowed);
+
+        // K-way merge: the lists share one order, so a book in several lists is at all their heads at once
+        List<Book> result = new ArrayList<>(Math.max(0, limit));
+        Set<Integer> emitted = new HashSet<>();
+        int[] heads = new int[sources.size()];
+        while (result.size() < limit) {
+            int best = -1;
+            for (int s = 0; s < sources.size(); s++) {
+                if (heads[s] < sources.get(s).length) {
+                    int ordinal = sources.get(s)[heads[s]];
+                    if (best < 0 || current.ranksAbove(ordinal, best)) {
+                        best = ordinal;
+                    }
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            for (int s = 0; s < sources.size(); s++) {
+                if (heads[s] < sources.get(s).length && sources.get(s)[heads[s]] == best) {
+                    heads[s]++;
+                }
+            }
+            emitted.add(best);
+            if (current.isAllowed(best, registry, allowed)) {
+                result.add(current.books[best]);
+            }
+        }
+
+        for (int i = 0; i < current.global.length && result.size() < limit; i++) {
+            int ordinal = current.global[i];
+            if (!emitted.contains(ordinal) && current.isAllowed(ordinal, registry, allowed)) {
+                result.add(current.books[ordinal]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * One immutable generation of the lists; ordinals index {@code books}.
+     */
+    private static class Lists {
+        private final Book[] books;
+        private final int[] global;
+        private final Map<String, int[]> byGenre;
+
+        private Lists(Book[] books, int[] global, Map<String, int[]> byGenre) {
+            this.books = books;
+            this.global = global;
+            this.byGenre = byGenre;
+        }
+
+        private void addIntIds(int[] ordinals, IdRegistry registry, CompressedBitmap target) {
+            for (int ordinal : ordinals) {
+                int intId = registry.find(books[ordinal].getId());
+                if (intId >= 0) {
+                    target.add(intId);
+                }
+            }
+        }
+
+        private boolean isAllowed(int ordinal, IdRegistry registry, CompressedBitmap allowed) {
+            int intId = registry.find(books[ordinal].getId());
+            return intId < 0 || allowed.contains(intId);
+        }
+
+        private boolean ranksAbove(int ordinalA, int ordinalB) {
+            return TopKSelector.ranksAbove(books[ordinalA].getAverageRating(), ordinalA,
+                    books[ordinalB].getAverageRating(), ordinalB);
+        }
+    }
+}
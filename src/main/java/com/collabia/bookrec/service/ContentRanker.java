@@ -0,0 +1,55 @@
+package com.collabia.bookrec.service;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ranks candidates by content similarity: one point per shared favorite genre, one for a
+ * known author and up to 0.3 for the rating.
+ */
+public class ContentRanker implements CandidateRanker {
+
+    /**
+     * System property that, when {@code true}, keeps {@link #create()} on the scalar ranker.
+     */
+    public static final String SCALAR_ONLY_PROPERTY = "bookrec.scoring.scalarOnly";
+
+    private static final Logger LOGGER = Logger.getLogger(ContentRanker.class.getName());
+    private static final String VECTOR_RANKER = "com.collabia.bookrec.service.VectorContentRanker";
+
+    /**
+     * Returns the {@link VectorContentRanker} if it was built, with the {@code vector-api} Maven
+     * profile, and the {@code jdk.incubator.vector} module is available; a scalar ranker
+     * otherwise. Both produce the same scores.
+     */
+    public static CandidateRanker create() {
+        if (Boolean.getBoolean(SCALAR_ONLY_PROPERTY)) {
+            return new ContentRanker();
+        }
+        try {
+            // Loaded by name: this class must not link against the incubator module
+            return (CandidateRanker) Class.forName(VECTOR_RANKER).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            LOGGER.log(Level.FINE, "Vector API not available, ranking with scalar code", e);
+            return new ContentRanker();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "content-ranker";
+    }
+
+    @Override
+    public void rank(CandidateFeatures features, TopKSelector topK) {
+        for (int i = 0; i < features.size(); i++) {
+            // Normalize rating (assuming rating is out of 5)
+            double normalizedAvgRating = features.getRating(i) / 5.0;
+
+            // Calculate final score
+            double score = features.getGenreOverlap(i) + (features.isAuthorMatch(i) ? 1 : 0) + (normalizedAvgRating * 0.3);
+
+            topK.offer(score, features.getOrdinal(i));
+        }
+    }
+}
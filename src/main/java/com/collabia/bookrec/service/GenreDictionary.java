@@ -0,0 +1,126 @@
+package com.collabia.bookrec.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns every distinct genre a bit position so genre sets can be stored as bitmasks.
+ * <p>
+ * A set of genres is encoded as a {@code long[]} of {@link #words()} words; with
+ * up to 64 genres that is a single {@code long}. The overlap between two sets is
+ * then {@code Long.bitCount(a & b)} per word instead of string hashing and
+ * equality checks. Genres listed twice on the same book collapse into one bit.
+ */
+public class GenreDictionary {
+
+    private final Map<String, Integer> bits = new HashMap<>();
+    private final List<String> genres = new ArrayList<>();
+
+    public GenreDictionary() {
+    }
+
+    /**
+     * Creates a dictionary holding the given genres.
+     */
+    public GenreDictionary(Collection<String> genres) {
+        addAll(genres);
+    }
+
+    /**
+     * Returns a dictionary with the same genres at the same bits, to which genres can be added
+     * without changing this one.
+     */
+    public GenreDictionary copy() {
+        return new GenreDictionary(genres);
+    }
+
+    /**
+     * Returns the bit of the genre, assigning the next free bit if it is new.
+     *
+     * @param genre the genre to add; {@code null} is ignored and returns -1
+     */
+    public int add(String genre) {
+        if (genre == null) {
+            return -1;
+        }
+        Integer bit = bits.get(genre);
+        if (bit == null) {
+            bit = genres.size();
+            genres.add(genre);
+            bits.put(genre, bit);
+        }
+        return bit;
+    }
+
+    public void addAll(Collection<String> newGenres) {
+        if (newGenres == null) {
+            return;
+        }
+        for (String genre : newGenres) {
+            add(genre);
+        }
+    }
+
+    /**
+     * Returns the bit of the genre, or -1 if it is not in the dictionary.
+     */
+    public int bitOf(String genre) {
+        Integer bit = genre == null ? null : bits.get(genre);
+        return bit == null ? -1 : bit;
+    }
+
+    public String genreAt(int bit) {
+        return genres.get(bit);
+    }
+
+    public int size() {
+        return genres.size();
+    }
+
+    /**
+     * Returns the number of {@code long} words needed to hold a mask over every genre, at least one.
+     */
+    public int words() {
+        return Math.max(1, (genres.size() + 63) >>> 6);
+    }
+
+    /**
+     * Encodes the genres as a mask of {@link #words()} words. Genres not in the dictionary are skipped.
+     */
+    public long[] encode(Collection<String> genreSet) {
+        long[] mask = new long[words()];
+        encodeInto(genreSet, mask, 0);
+        return mask;
+    }
+
+    /**
+     * ORs the bits of the genres into {@code target} starting at word {@code offset}.
+     * Genres not in the dictionary are skipped.
+     */
+    public void encodeInto(Collection<String> genreSet, long[] target, int offset) {
+        if (genreSet == null) {
+            return;
+        }
+        for (String genre : genreSet) {
+            int bit = bitOf(genre);
+            if (bit >= 0) {
+                target[offset + (bit >>> 6)] |= 1L << bit;
+            }
+        }
+    }
+
+    /**
+     * Counts the genres present in both masks.
+     */
+    public static int overlap(long[] a, long[] b) {
+        int words = Math.min(a.length, b.length);
+        int count = 0;
+        for (int w = 0; w < words; w++) {
+            count += Long.bitCount(a[w] & b[w]);
+        }
+        return count;
+    }
+}
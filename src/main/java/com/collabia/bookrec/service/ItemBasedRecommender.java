@@ -0,0 +1,199 @@
+package com.collabia.bookrec.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.collabia.bookrec.dao.BookNeighborDAO;
+import com.collabia.bookrec.dao.RatingDAO;
+import com.collabia.bookrec.model.Book;
+import com.collabia.bookrec.model.Rating;
+import com.collabia.bookrec.model.User;
+import com.collabia.bookrec.utils.CompressedBitmap;
+import com.collabia.bookrec.utils.IdRegistry;
+
+/**
+ * Item-item collaborative filtering over the neighbor lists of {@link ItemSimilarityJob}.
+ * <p>
+ * A book's score is the sum of its similarities to the books the user rated highly. Only the
+ * neighbor lists of those books are read, so a request costs the user's rating count times
+ * the list length, whatever the size of the catalog. Scores are summed by catalog ordinal in
+ * per-thread arrays sized by the catalog snapshot. Books the user has rated or read are left
+ * out, as are the books they hid and books missing from the catalog snapshot. The exclusions
+ * are applied to the candidates as a whole, by {@link CompressedBitmap#andNot(CompressedBitmap)}.
+ */
+public class ItemBasedRecommender {
+
+    /**
+     * The lowest rating, on the 1-5 scale, whose book's neighbors are recommended.
+     */
+    public static final int DEFAULT_MIN_RATING = 4;
+
+    private static final Logger LOGGER = Logger.getLogger(ItemBasedRecommender.class.getName());
+    private static final ThreadLocal<Accumulator> ACCUMULATOR = ThreadLocal.withInitial(Accumulator::new);
+    // Database reads run here rather than on the scoring pool, whose threads are meant to compute
+    private static final ExecutorService DATABASE_READS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "item-based-reads");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static CompletableFuture<ItemBasedRecommender> shared;
+
+    private final ItemNeighborIndex neighbors;
+    private final BookCatalog catalog;
+    private final RatingDAO ratingDAO;
+    private final int minRating;
+
+    public ItemBasedRecommender(ItemNeighborIndex neighbors, BookCatalog catalog, RatingDAO ratingDAO) {
+        this(neighbors, catalog, ratingDAO, DEFAULT_MIN_RATING);
+    }
+
+    public ItemBasedRecommender(ItemNeighborIndex neighbors, BookCatalog catalog, RatingDAO ratingDAO, int minRating) {
+        this.neighbors = neighbors;
+        this.catalog = catalog;
+        this.ratingDAO = ratingDAO;
+        this.minRating = minRating;
+    }
+
+    /**
+     * Returns the recommender shared by all DAO-backed engines, over the shared {@link BookCatalog}.
+     * The neighbor lists are loaded once, in the background on a thread of its own; the future
+     * completes when they are in memory, or exceptionally if they could not be loaded.
+     */
+    public static synchronized CompletableFuture<ItemBasedRecommender> getShared() {
+        if (shared == null) {
+            shared = CompletableFuture.supplyAsync(() -> new ItemBasedRecommender(
+                    ItemNeighborIndex.load(new BookNeighborDAO()), BookCatalog.getInstance(), new RatingDAO()),
+                    DATABASE_READS);
+            shared.whenComplete((recommender, e) -> {
+                if (e != null) {
+                    LOGGER.log(Level.WARNING, "Failed to load the item neighbor lists; recommending by content only", e);
+                }
+            });
+        }
+        return shared;
+    }
+
+    /**
+     * Recommends books from the user's ratings in the database.
+     */
+    public List<Book> recommend(User user, int limit) {
+        if (user == null || user.getId() == null || ratingDAO == null) {
+            return new ArrayList<>();
+        }
+        return recommend(user, ratingDAO.findByUserId(user.getId().toHexString()), limit);
+    }
+
+    /**
+     * Reads the user's ratings from the database in the background, for callers that cannot wait
+     * on the query, such as {@link RecommendationEngine#recommendForUser(User, int, long, TimeUnit)}.
+     */
+    public CompletableFuture<List<Rating>> findRatingsAsync(User user) {
+        if (user == null || user.getId() == null || ratingDAO == null) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        String userId = user.getId().toHexString();
+        return CompletableFuture.supplyAsync(() -> ratingDAO.findByUserId(userId), DATABASE_READS);
+    }
+
+    /**
+     * Recommends the {@code limit} books with the highest summed similarity to the books the
+     * user rated at least the minimum rating ({@value #DEFAULT_MIN_RATING} by default), best
+     * first. Equal scores go to the book first in the catalog.
+     *
+     * @param user    the user, for the books already read or hidden
+     * @param ratings the user's ratings
+     * @param limit   the maximum number of books to return
+     */
+    public List<Book> recommend(User user, List<Rating> ratings, int limit) {
+        List<Book> recommendations = new ArrayList<>();
+        if (ratings == null || ratings.isEmpty() || limit <= 0) {
+            return recommendations;
+        }
+        IdRegistry registry = IdRegistry.forBooks();
+        CatalogSnapshot snapshot = catalog.getSnapshot();
+        Accumulator accumulator = ACCUMULATOR.get().prepare(snapshot.size());
+
+        // Rated books are excluded whatever their rating
+        CompressedBitmap rated = new CompressedBitmap();
+        for (Rating rating : ratings) {
+            int bookIntId = registry.find(rating.getBookId());
+            if (bookIntId >= 0) {
+                rated.add(bookIntId);
+            }
+        }
+        CompressedBitmap candidates = new CompressedBitmap();
+        for (Rating rating : ratings) {
+            if (rating.getRating() < minRating) {
+                continue;
+            }
+            int bookIntId = registry.find(rating.getBookId());
+            int[] neighborIds = neighbors.getNeighbors(bookIntId);
+            float[] similarities = neighbors.getSimilarities(bookIntId);
+            for (int n = 0; n < neighborIds.length; n++) {
+                int ordinal = snapshot.ordinalOfIntId(neighborIds[n]);
+                if (ordinal >= 0) {
+                    accumulator.add(ordinal, similarities[n]);
+                    candidates.add(neighborIds[n]);
+                }
+            }
+        }
+
+        // Drop rated, read and hidden books from the candidates in one pass over their bitmaps
+        candidates.andNot(rated);
+        if (user != null) {
+            UserBookSets.of(user).removeExcluded(candidates);
+        }
+        if (candidates.isEmpty()) {
+            return recommendations;
+        }
+        TopKSelector topK = new TopKSelector(limit);
+        candidates.forEach(bookIntId -> {
+            int ordinal = snapshot.ordinalOfIntId(bookIntId);
+            topK.offer(accumulator.sums[ordinal], ordinal);
+        });
+        for (int ordinal : topK.toSortedOrdinals()) {
+            recommendations.add(snapshot.getBook(ordinal));
+        }
+        return recommendations;
+    }
+
+    /**
+     * Per-thread sums by catalog ordinal. Entries are valid when their stamp equals the
+     * current epoch, so a request only touches the books it scores.
+     */
+    private static final class Accumulator {
+        private int epoch;
+        private int[] stamps = new int[0];
+        private double[] sums = new double[0];
+
+        private Accumulator prepare(int books) {
+            if (stamps.length < books) {
+                stamps = new int[books];
+                sums = new double[books];
+                epoch = 0;
+            }
+            if (epoch == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                epoch = 0;
+            }
+            epoch++;
+            return this;
+        }
+
+        private void add(int ordinal, double similarity) {
+            if (stamps[ordinal] != epoch) {
+                stamps[ordinal] = epoch;
+                sums[ordinal] = 0;
+            }
+            sums[ordinal] += similarity;
+        }
+    }
+}
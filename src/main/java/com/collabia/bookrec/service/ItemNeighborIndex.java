@@ -0,0 +1,117 @@
+package com.collabia.bookrec.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.collabia.bookrec.dao.BookNeighborDAO;
+import com.collabia.bookrec.model.BookNeighbors;
+import com.collabia.bookrec.utils.IdRegistry;
+
+/**
+ * The neighbor lists computed by {@link ItemSimilarityJob}, held in memory by
+ * {@link IdRegistry#forBooks() registry} book id.
+ * <p>
+ * Each list is a pair of primitive arrays ordered by descending similarity, so looking up a
+ * book's neighbors is an array access. Instances are shared between threads; the arrays they
+ * return must not be modified.
+ */
+public final class ItemNeighborIndex {
+
+    private static final int[] NO_NEIGHBORS = new int[0];
+    private static final float[] NO_SIMILARITIES = new float[0];
+
+    private final int[][] neighbors;
+    private final float[][] similarities;
+    private final int size;
+
+    ItemNeighborIndex(int[][] neighbors, float[][] similarities) {
+        this.neighbors = neighbors;
+        this.similarities = similarities;
+        int books = 0;
+        for (int[] list : neighbors) {
+            if (list != null) {
+                books++;
+            }
+        }
+        this.size = books;
+    }
+
+    /**
+     * Loads every stored neighbor list.
+     */
+    public static ItemNeighborIndex load(BookNeighborDAO bookNeighborDAO) {
+        List<BookNeighbors> lists = new ArrayList<>();
+        bookNeighborDAO.forEach(lists::add);
+        return of(lists);
+    }
+
+    public static ItemNeighborIndex of(List<BookNeighbors> lists) {
+        IdRegistry registry = IdRegistry.forBooks();
+        int[] bookIds = new int[lists.size()];
+        int maxBookId = -1;
+        for (int i = 0; i < lists.size(); i++) {
+            bookIds[i] = registry.register(lists.get(i).getBookId());
+            maxBookId = Math.max(maxBookId, bookIds[i]);
+        }
+        int[][] neighbors = new int[maxBookId + 1][];
+        float[][] similarities = new float[maxBookId + 1][];
+        for (int i = 0; i < lists.size(); i++) {
+            BookNeighbors list = lists.get(i);
+            int count = Math.min(list.getNeighborIds().size(), list.getSimilarities().size());
+            int[] neighborIds = new int[count];
+            float[] neighborSimilarities = new float[count];
+            for (int n = 0; n < count; n++) {
+                neighborIds[n] = registry.register(list.getNeighborIds().get(n));
+                neighborSimilarities[n] = list.getSimilarities().get(n).floatValue();
+            }
+            neighbors[bookIds[i]] = neighborIds;
+            similarities[bookIds[i]] = neighborSimilarities;
+        }
+        return new ItemNeighborIndex(neighbors, similarities);
+    }
+
+    /**
+     * Returns the neighbor lists as documents for {@link BookNeighborDAO}.
+     */
+    public List<BookNeighbors> toDocuments(Date computedAt) {
+        IdRegistry registry = IdRegistry.forBooks();
+        List<BookNeighbors> documents = new ArrayList<>(size);
+        for (int book = 0; book < neighbors.length; book++) {
+            if (neighbors[book] == null) {
+                continue;
+            }
+            List<String> neighborIds = new ArrayList<>(neighbors[book].length);
+            List<Double> neighborSimilarities = new ArrayList<>(neighbors[book].length);
+            for (int n = 0; n < neighbors[book].length; n++) {
+                neighborIds.add(registry.idOf(neighbors[book][n]));
+                neighborSimilarities.add((double) similarities[book][n]);
+            }
+            documents.add(new BookNeighbors(registry.idOf(book), neighborIds, neighborSimilarities, computedAt));
+        }
+        return documents;
+    }
+
+    /**
+     * Returns the registry ids of the book's neighbors, most similar first; empty if it has none.
+     */
+    public int[] getNeighbors(int bookIntId) {
+        return bookIntId >= 0 && bookIntId < neighbors.length && neighbors[bookIntId] != null
+                ? neighbors[bookIntId] : NO_NEIGHBORS;
+    }
+
+    /**
+     * Returns the similarities matching {@link #getNeighbors(int)}.
+     */
+    public float[] getSimilarities(int bookIntId) {
+        return bookIntId >= 0 && bookIntId < similarities.length && similarities[bookIntId] != null
+                ? similarities[bookIntId] : NO_SIMILARITIES;
+    }
+
+    /**
+     * Returns the number of books that have neighbors.
+     */
+    public int size() {
+        return size;
+    }
+}
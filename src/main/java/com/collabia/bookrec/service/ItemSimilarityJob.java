@@ -0,0 +1,303 @@
+package com.collabia.bookrec.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import com.collabia.bookrec.dao.BookNeighborDAO;
+import com.collabia.bookrec.dao.RatingDAO;
+import com.collabia.bookrec.db.MongoDBConnection;
+import com.collabia.bookrec.model.Rating;
+import com.collabia.bookrec.utils.IdRegistry;
+
+/**
+ * Offline job that computes the top-N most similar books of every book from the "ratings"
+ * collection, for {@link ItemBasedRecommender}.
+ * <p>
+ * Similarity is the adjusted cosine: each rating is centered on its user's mean rating, and
+ * two books are compared over the users who rated both, normalized by the books' full rating
+ * norms. Ratings are held as sparse rows by user and by book in primitive arrays indexed by
+ * {@link IdRegistry} ids. The dot products of one book with all others come from walking its
+ * raters' rows, so the work is the sum over users of their ratings squared, not books squared.
+ * Books are split into a few blocks per thread of the {@link ScoringPool}; each block has its
+ * own accumulator. Only positive similarities are kept.
+ */
+public class ItemSimilarityJob {
+
+    private static final Logger LOGGER = Logger.getLogger(ItemSimilarityJob.class.getName());
+    public static final int DEFAULT_NEIGHBOR_COUNT = 50;
+    private static final int RATING_BATCH_SIZE = 10_000;
+    private static final int BLOCKS_PER_THREAD = 4;
+
+    private final RatingDAO ratingDAO;
+    private final BookNeighborDAO bookNeighborDAO;
+    private final int neighborCount;
+
+    public ItemSimilarityJob(RatingDAO ratingDAO, BookNeighborDAO bookNeighborDAO, int neighborCount) {
+        this.ratingDAO = ratingDAO;
+        this.bookNeighborDAO = bookNeighborDAO;
+        this.neighborCount = neighborCount;
+    }
+
+    /**
+     * Computes the neighbors of every rated book and stores them, replacing the previous run.
+     *
+     * @return the number of books whose neighbors were written
+     */
+    public int run() {
+        long start = System.currentTimeMillis();
+        RatingTriples triples = new RatingTriples();
+        ratingDAO.forEachRating(RATING_BATCH_SIZE, triples::add);
+        ItemNeighborIndex index = compute(triples);
+
+        Date computedAt = new Date();
+        bookNeighborDAO.saveAll(index.toDocuments(computedAt));
+        bookNeighborDAO.deleteComputedBefore(computedAt);
+        LOGGER.info("Computed neighbors of " + index.size() + " books from " + triples.size + " ratings in "
+                + (System.currentTimeMillis() - start) + " ms.");
+        return index.size();
+    }
+
+    /**
+     * Computes the neighbors of every book rated in {@code ratings}.
+     */
+    public ItemNeighborIndex computeNeighbors(List<Rating> ratings) {
+        RatingTriples triples = new RatingTriples();
+        for (Rating rating : ratings) {
+            triples.add(rating);
+        }
+        return compute(triples);
+    }
+
+    private ItemNeighborIndex compute(RatingTriples triples) {
+        SparseRatings byUser = SparseRatings.byUser(triples);
+        SparseRatings byBook = byUser.transpose(triples.maxBook + 1);
+        double[] norms = new double[byBook.rows()];
+        for (int book = 0; book < norms.length; book++) {
+            double sum = 0;
+            for (int k = byBook.start[book]; k < byBook.start[book + 1]; k++) {
+                sum += byBook.values[k] * byBook.values[k];
+            }
+            norms[book] = Math.sqrt(sum);
+        }
+
+        int[][] neighbors = new int[norms.length][];
+        float[][] similarities = new float[norms.length][];
+        // A few blocks per thread balance popular books; each block allocates accumulators over all books
+        int blockSize = Math.max(1, (norms.length + ScoringPool.getParallelism() * BLOCKS_PER_THREAD - 1)
+                / (ScoringPool.getParallelism() * BLOCKS_PER_THREAD));
+        List<Callable<Void>> blocks = new ArrayList<>();
+        for (int from = 0; from < norms.length; from += blockSize) {
+            int blockStart = from;
+            int blockEnd = Math.min(from + blockSize, norms.length);
+            blocks.add(() -> {
+                scoreBookBlock(byUser, byBook, norms, blockStart, blockEnd, neighbors, similarities);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> block : ScoringPool.getPool().invokeAll(blocks)) {
+                block.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Item similarity computation was interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Item similarity computation failed.", e.getCause());
+        }
+        return new ItemNeighborIndex(neighbors, similarities);
+    }
+
+    /**
+     * Finds the neighbors of the books {@code [from, to)}. The dot products accumulate in an
+     * array over all books; a stamp per entry tells which book last touched it, so nothing is
+     * cleared between books.
+     */
+    private void scoreBookBlock(SparseRatings byUser, SparseRatings byBook, double[] norms, int from, int to,
+                                int[][] neighbors, float[][] similarities) {
+        double[] dots = new double[norms.length];
+        int[] stamps = new int[norms.length];
+        int[] touched = new int[norms.length];
+        TopKSelector topK = new TopKSelector(neighborCount);
+        for (int book = from; book < to; book++) {
+            if (norms[book] == 0) {
+                continue;
+            }
+            int stamp = book + 1;
+            int touchedCount = 0;
+            for (int k = byBook.start[book]; k < byBook.start[book + 1]; k++) {
+                int user = byBook.columns[k];
+                double centered = byBook.values[k];
+                for (int m = byUser.start[user]; m < byUser.start[user + 1]; m++) {
+                    int other = byUser.columns[m];
+                    if (other == book) {
+                        continue;
+                    }
+                    if (stamps[other] != stamp) {
+                        stamps[other] = stamp;
+                        dots[other] = 0;
+                        touched[touchedCount++] = other;
+                    }
+                    dots[other] += centered * byUser.values[m];
+                }
+            }
+
+            topK.reset(neighborCount);
+            for (int t = 0; t < touchedCount; t++) {
+                int other = touched[t];
+                if (norms[other] > 0) {
+                    double similarity = dots[other] / (norms[book] * norms[other]);
+                    if (similarity > 0) {
+                        topK.offer(similarity, other);
+                    }
+                }
+            }
+            int[] ranked = topK.toSortedOrdinals();
+            if (ranked.length == 0) {
+                continue;
+            }
+            float[] rankedSimilarities = new float[ranked.length];
+            for (int r = 0; r < ranked.length; r++) {
+                rankedSimilarities[r] = (float) (dots[ranked[r]] / (norms[book] * norms[ranked[r]]));
+            }
+            neighbors[book] = ranked;
+            similarities[book] = rankedSimilarities;
+        }
+    }
+
+    public static void main(String[] args) {
+        // NOTE: Ensure MongoDB is running.
+        int neighborCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NEIGHBOR_COUNT;
+        new ItemSimilarityJob(new RatingDAO(), new BookNeighborDAO(), neighborCount).run();
+        ScoringPool.shutdown();
+        MongoDBConnection.close();
+    }
+
+    /**
+     * Ratings as parallel primitive arrays of registry user id, registry book id and rating.
+     */
+    private static final class RatingTriples {
+        private int[] users = new int[1024];
+        private int[] books = new int[1024];
+        private int[] ratings = new int[1024];
+        private int size;
+        private int maxUser = -1;
+        private int maxBook = -1;
+
+        private void add(Rating rating) {
+            if (rating == null || rating.getUserId() == null || rating.getBookId() == null) {
+                return;
+            }
+            if (size == users.length) {
+                users = Arrays.copyOf(users, size * 2);
+                books = Arrays.copyOf(books, size * 2);
+                ratings = Arrays.copyOf(ratings, size * 2);
+            }
+            users[size] = IdRegistry.forUsers().register(rating.getUserId());
+            books[size] = IdRegistry.forBooks().register(rating.getBookId());
+            ratings[size] = rating.getRating();
+            maxUser = Math.max(maxUser, users[size]);
+            maxBook = Math.max(maxBook, books[size]);
+            size++;
+        }
+    }
+
+    /**
+     * Compressed sparse rows: the entries of row {@code r} are {@code [start[r], start[r + 1])}.
+     */
+    private static final class SparseRatings {
+        private final int[] start;
+        private final int[] columns;
+        private final double[] values;
+
+        private SparseRatings(int[] start, int[] columns, double[] values) {
+            this.start = start;
+            this.columns = columns;
+            this.values = values;
+        }
+
+        private int rows() {
+            return start.length - 1;
+        }
+
+        /**
+         * Builds the rows of every user, sorted by book, with repeated ratings of a book
+         * averaged and every rating centered on the user's mean.
+         */
+        private static SparseRatings byUser(RatingTriples triples) {
+            int rows = triples.maxUser + 1;
+            int[] start = new int[rows + 1];
+            for (int i = 0; i < triples.size; i++) {
+                start[triples.users[i] + 1]++;
+            }
+            for (int r = 0; r < rows; r++) {
+                start[r + 1] += start[r];
+            }
+            // Book in the high half, rating in the low half, so sorting a row sorts by book
+            long[] entries = new long[triples.size];
+            int[] next = Arrays.copyOf(start, rows);
+            for (int i = 0; i < triples.size; i++) {
+                entries[next[triples.users[i]]++] = ((long) triples.books[i] << 32) | (triples.ratings[i] & 0xFFFFFFFFL);
+            }
+
+            int[] compactStart = new int[rows + 1];
+            int[] columns = new int[triples.size];
+            double[] values = new double[triples.size];
+            int size = 0;
+            for (int r = 0; r < rows; r++) {
+                Arrays.sort(entries, start[r], start[r + 1]);
+                int rowStart = size;
+                double total = 0;
+                for (int i = start[r]; i < start[r + 1]; ) {
+                    int book = (int) (entries[i] >>> 32);
+                    long sum = 0;
+                    int count = 0;
+                    for (; i < start[r + 1] && (int) (entries[i] >>> 32) == book; i++) {
+                        sum += (int) entries[i];
+                        count++;
+                    }
+                    columns[size] = book;
+                    values[size] = (double) sum / count;
+                    total += values[size];
+                    size++;
+                }
+                double mean = size > rowStart ? total / (size - rowStart) : 0;
+                for (int k = rowStart; k < size; k++) {
+                    values[k] -= mean;
+                }
+                compactStart[r + 1] = size;
+            }
+            return new SparseRatings(compactStart, columns, values);
+        }
+
+        /**
+         * Returns the same entries as rows by column, each row sorted by its new columns.
+         */
+        private SparseRatings transpose(int columnCount) {
+            int[] transposedStart = new int[columnCount + 1];
+            int entries = start[rows()];
+            for (int k = 0; k < entries; k++) {
+                transposedStart[columns[k] + 1]++;
+            }
+            for (int c = 0; c < columnCount; c++) {
+                transposedStart[c + 1] += transposedStart[c];
+            }
+            int[] next = Arrays.copyOf(transposedStart, columnCount);
+            int[] transposedColumns = new int[entries];
+            double[] transposedValues = new double[entries];
+            for (int r = 0; r < rows(); r++) {
+                for (int k = start[r]; k < start[r + 1]; k++) {
+                    int position = next[columns[k]]++;
+                    transposedColumns[position] = r;
+                    transposedValues[position] = values[k];
+                }
+            }
+            return new SparseRatings(transposedStart, transposedColumns, transposedValues);
+        }
+    }
+}
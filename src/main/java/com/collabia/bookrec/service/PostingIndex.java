@@ -0,0 +1,184 @@
+package com.collabia.bookrec.service;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Inverted index from a string key (genre, author, ...) to the ordinals of the
+ * catalog books carrying that key, as seen by one {@link CatalogSnapshot}.
+ * <p>
+ * Posting lists are primitive {@code int} arrays sorted ascending. They are shared
+ * between a snapshot and the ones derived from it: ordinals of appended books are
+ * added to the end of the existing lists, so an index only reads the ordinals below
+ * its snapshot's size. A snapshot that replaces a book gets copies of the lists the
+ * book enters or leaves.
+ */
+public final class PostingIndex {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * Resolves a key to its posting list, or {@code null} if no book of the snapshot has it.
+     */
+    @FunctionalInterface
+    interface Lists {
+        PostingList get(String key);
+    }
+
+    private final Lists lists;
+    private final int bound;
+
+    /**
+     * @param lists resolves keys to posting lists
+     * @param bound the size of the snapshot; larger ordinals belong to later snapshots
+     */
+    PostingIndex(Lists lists, int bound) {
+        this.lists = lists;
+        this.bound = bound;
+    }
+
+    /**
+     * Calls the consumer with every ordinal indexed under the key, in ascending order.
+     */
+    public void forEach(String key, IntConsumer consumer) {
+        PostingList list = key == null ? null : lists.get(key);
+        if (list == null) {
+            return;
+        }
+        int size = list.size;
+        int[] ordinals = list.ordinals;
+        for (int i = 0; i < size && ordinals[i] < bound; i++) {
+            consumer.accept(ordinals[i]);
+        }
+    }
+
+    /**
+     * Calls the action with the ordinals indexed under the key, in ascending order, until it returns false.
+     *
+     * @return false if the action stopped the iteration
+     */
+    public boolean forEachWhile(String key, IntPredicate action) {
+        PostingList list = key == null ? null : lists.get(key);
+        if (list == null) {
+            return true;
+        }
+        int size = list.size;
+        int[] ordinals = list.ordinals;
+        for (int i = 0; i < size && ordinals[i] < bound; i++) {
+            if (!action.test(ordinals[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a copy of the posting list for the key, or an empty array when the key is unknown.
+     */
+    public int[] get(String key) {
+        PostingList list = key == null ? null : lists.get(key);
+        if (list == null) {
+            return new int[0];
+        }
+        int size = list.size;
+        return Arrays.copyOf(list.ordinals, list.countBelow(bound, size));
+    }
+
+    /**
+     * Returns the number of ordinals indexed under the key.
+     */
+    public int size(String key) {
+        PostingList list = key == null ? null : lists.get(key);
+        if (list == null) {
+            return 0;
+        }
+        int size = list.size;
+        return list.countBelow(bound, size);
+    }
+
+    /**
+     * A growable, ascending list of ordinals. Only the writer of the newest snapshot modifies a
+     * list, and only by appending: readers read {@code size} before {@code ordinals}, so every
+     * entry below the size they read is visible to them. Inserting or removing an ordinal in the
+     * middle returns a new list.
+     */
+    static final class PostingList {
+        private volatile int[] ordinals;
+        private volatile int size;
+
+        PostingList() {
+            this.ordinals = new int[INITIAL_CAPACITY];
+        }
+
+        private PostingList(int[] ordinals, int size) {
+            this.ordinals = ordinals;
+            this.size = size;
+        }
+
+        /**
+         * Appends an ordinal no smaller than any in the list; repeating the last one does nothing.
+         */
+        void append(int ordinal) {
+            int n = size;
+            int[] current = ordinals;
+            if (n > 0 && current[n - 1] == ordinal) {
+                return;
+            }
+            if (n == current.length) {
+                current = Arrays.copyOf(current, n * 2);
+                current[n] = ordinal;
+                ordinals = current;
+            } else {
+                current[n] = ordinal;
+            }
+            size = n + 1;
+        }
+
+        /**
+         * Returns a copy of this list with the ordinal inserted in order, or this list if it has it.
+         */
+        PostingList with(int ordinal) {
+            int n = size;
+            int[] current = ordinals;
+            int position = Arrays.binarySearch(current, 0, n, ordinal);
+            if (position >= 0) {
+                return this;
+            }
+            position = -position - 1;
+            int[] copy = new int[Math.max(INITIAL_CAPACITY, n + 1 + (n >>> 1))];
+            System.arraycopy(current, 0, copy, 0, position);
+            copy[position] = ordinal;
+            System.arraycopy(current, position, copy, position + 1, n - position);
+            return new PostingList(copy, n + 1);
+        }
+
+        /**
+         * Returns a copy of this list without the ordinal, or this list if it does not have it.
+         */
+        PostingList without(int ordinal) {
+            int n = size;
+            int[] current = ordinals;
+            int position = Arrays.binarySearch(current, 0, n, ordinal);
+            if (position < 0) {
+                return this;
+            }
+            int[] copy = new int[Math.max(INITIAL_CAPACITY, n)];
+            System.arraycopy(current, 0, copy, 0, position);
+            System.arraycopy(current, position + 1, copy, position, n - position - 1);
+            return new PostingList(copy, n - 1);
+        }
+
+        /**
+         * Returns the number of the first {@code size} ordinals that are below the bound.
+         */
+        private int countBelow(int bound, int size) {
+            int[] current = ordinals;
+            if (size == 0 || current[size - 1] < bound) {
+                return size;
+            }
+            int position = Arrays.binarySearch(current, 0, size, bound);
+            return position >= 0 ? position : -position - 1;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.collabia.bookrec.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.collabia.bookrec.dao.BookDAO;
+import com.collabia.bookrec.dao.RecommendationDAO;
+import com.collabia.bookrec.model.Book;
+import com.collabia.bookrec.model.PrecomputedRecommendation;
+import com.collabia.bookrec.model.User;
+
+/**
+ * Serves recommendations written by the {@link RecommendationBatchJob}.
+ * <p>
+ * A precomputed list is only served while it is fresh: written with the current
+ * {@link #FORMAT_VERSION}, younger than the maximum age, and computed for the
+ * user's current profile fingerprint (favorite genres, read, liked and hidden
+ * books). In every other case {@link #find(User, int)} returns empty and the
+ * caller computes recommendations live.
+ */
+public class PrecomputedRecommendations {
+
+    public static final int FORMAT_VERSION = 1;
+    private static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    private final RecommendationDAO recommendationDAO;
+    private final BookDAO bookDAO;
+    private final BookCatalog catalog;
+    private final long maxAgeMillis;
+
+    public PrecomputedRecommendations(RecommendationDAO recommendationDAO, BookDAO bookDAO) {
+        this(recommendationDAO, bookDAO, BookCatalog.getInstance(), DEFAULT_MAX_AGE_MILLIS);
+    }
+
+    /**
+     * @param recommendationDAO the DAO holding the precomputed lists
+     * @param bookDAO           used to resolve book ids while the catalog is not loaded
+     * @param catalog           used to resolve book ids without a round trip once loaded
+     * @param maxAgeMillis      how long a precomputed list is served
+     */
+    public PrecomputedRecommendations(RecommendationDAO recommendationDAO, BookDAO bookDAO, BookCatalog catalog,
+                                      long maxAgeMillis) {
+        this.recommendationDAO = recommendationDAO;
+        this.bookDAO = bookDAO;
+        this.catalog = catalog;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Returns the user's precomputed recommendations if a fresh list exists.
+     *
+     * @param user  the user to look up
+     * @param limit the maximum number of books to return
+     * @return the books, best first, or empty when the list is missing or stale
+     */
+    public Optional<List<Book>> find(User user, int limit) {
+        if (user == null || user.getId() == null) {
+            return Optional.empty();
+        }
+        Optional<PrecomputedRecommendation> stored = recommendationDAO.findByUserId(user.getId().toHexString());
+        if (stored.isEmpty() || !isFresh(stored.get(), user)) {
+            return Optional.empty();
+        }
+
+        List<String> bookIds = stored.get().getBookIds();
+        bookIds = bookIds.subList(0, Math.min(limit, bookIds.size()));
+        return Optional.of(resolve(bookIds));
+    }
+
+    /**
+     * Returns true if the stored list was computed by the current format, recently enough, for the user's current profile.
+     */
+    public boolean isFresh(PrecomputedRecommendation stored, User user) {
+        return stored.getVersion() == FORMAT_VERSION
+                && stored.getComputedAt() != null
+                && System.currentTimeMillis() - stored.getComputedAt().getTime() <= maxAgeMillis
+                && stored.getProfileFingerprint() == RecommendationCache.fingerprint(user);
+    }
+
+    private List<Book> resolve(List<String> bookIds) {
+        if (!catalog.isLoaded()) {
+            return bookDAO.findByIds(bookIds);
+        }
+        List<Book> books = new ArrayList<>(bookIds.size());
+        for (String bookId : bookIds) {
+            Book book = catalog.findById(bookId);
+            if (book != null) {
+                books.add(book);
+            }
+        }
+        return books;
+    }
+}
@@ -0,0 +1,95 @@
+package com.collabia.bookrec.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.collabia.bookrec.dao.BookDAO;
+import com.collabia.bookrec.dao.RecommendationDAO;
+import com.collabia.bookrec.dao.UserDAO;
+import com.collabia.bookrec.db.MongoDBConnection;
+import com.collabia.bookrec.model.Book;
+import com.collabia.bookrec.model.PrecomputedRecommendation;
+import com.collabia.bookrec.model.User;
+
+/**
+ * Offline job that precomputes the top recommendations of every user into the "recommendations" collection.
+ * <p>
+ * Users are streamed from the database in batches. Each batch is scored with
+ * {@link RecommendationEngine#recommendForUsers(List, int)}, which sweeps the
+ * catalog once per block of users. The batch is then written with one bulk write.
+ * Every stored list carries the format version, the user's profile fingerprint
+ * and the time it was computed, so {@link PrecomputedRecommendations} can tell
+ * when it has gone stale.
+ */
+public class RecommendationBatchJob {
+
+    private static final Logger LOGGER = Logger.getLogger(RecommendationBatchJob.class.getName());
+    public static final int DEFAULT_TOP_N = 50;
+    private static final int USER_BATCH_SIZE = 1_000;
+
+    private final UserDAO userDAO;
+    private final RecommendationEngine recommendationEngine;
+    private final RecommendationDAO recommendationDAO;
+    private final int topN;
+
+    public RecommendationBatchJob(UserDAO userDAO, RecommendationEngine recommendationEngine,
+                                  RecommendationDAO recommendationDAO, int topN) {
+        this.userDAO = userDAO;
+        this.recommendationEngine = recommendationEngine;
+        this.recommendationDAO = recommendationDAO;
+        this.topN = topN;
+    }
+
+    /**
+     * Computes and stores recommendations for every user.
+     *
+     * @return the number of users whose recommendations were written
+     */
+    public int run() {
+        long start = System.currentTimeMillis();
+        int[] written = {0};
+        userDAO.forEachBatch(USER_BATCH_SIZE, users -> written[0] += runBatch(users));
+        LOGGER.info("Precomputed recommendations for " + written[0] + " users in "
+                + (System.currentTimeMillis() - start) + " ms.");
+        return written[0];
+    }
+
+    /**
+     * Computes and stores recommendations for the given users.
+     *
+     * @return the number of users whose recommendations were written
+     */
+    public int runBatch(List<User> users) {
+        Date computedAt = new Date();
+        Map<String, List<Book>> recommendations = recommendationEngine.recommendForUsers(users, topN);
+
+        List<PrecomputedRecommendation> documents = new ArrayList<>(recommendations.size());
+        for (User user : users) {
+            if (user.getId() == null) {
+                continue;
+            }
+            List<Book> books = recommendations.get(user.getId().toHexString());
+            List<String> bookIds = new ArrayList<>(books.size());
+            for (Book book : books) {
+                bookIds.add(book.getId());
+            }
+            documents.add(new PrecomputedRecommendation(user.getId().toHexString(), bookIds,
+                    PrecomputedRecommendations.FORMAT_VERSION, RecommendationCache.fingerprint(user), computedAt));
+        }
+        recommendationDAO.saveAll(documents);
+        return documents.size();
+    }
+
+    public static void main(String[] args) {
+        // NOTE: Ensure MongoDB is running.
+        int topN = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TOP_N;
+        RecommendationBatchJob job = new RecommendationBatchJob(new UserDAO(),
+                new RecommendationEngine(new BookDAO()), new RecommendationDAO(), topN);
+        job.run();
+        ScoringPool.shutdown();
+        MongoDBConnection.close();
+    }
+}
@@ -0,0 +1,221 @@
+package com.collabia.bookrec.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.collabia.bookrec.dao.RatingDAO;
+import com.collabia.bookrec.dao.UserDAO;
+import com.collabia.bookrec.model.Book;
+import com.collabia.bookrec.model.User;
+import com.collabia.bookrec.utils.IdRegistry;
+import com.collabia.bookrec.utils.SingleFlight;
+
+/**
+ * LRU cache of computed recommendations per user.
+ * <p>
+ * Entries are keyed by the user's {@link IdRegistry#forUsers() registry} int id and the number of
+ * books, and remember the profile fingerprint and the catalog version they were computed for. A
+ * user keeps up to {@value #MAX_LIMITS_PER_USER} lists of different lengths side by side, so the
+ * dashboard and paging do not evict each other; a shorter list is not served from a longer one
+ * because a blended list is not a prefix of a longer blended list. A lookup only hits when the
+ * fingerprint and version still match and the entry is younger than the TTL, so a changed profile
+ * or catalog never serves stale results. The shared instance also listens to
+ * {@link UserDAO} updates and {@link RatingDAO} inserts and drops the affected
+ * user's entry as soon as the inputs change.
+ */
+public class RecommendationCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 1_000;
+    private static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final int MAX_LIMITS_PER_USER = 4;
+
+    private static RecommendationCache instance;
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<Integer, Map<Integer, Entry>> entries;
+    private final SingleFlight<FlightKey, List<Book>> flights = new SingleFlight<>();
+    private long hits;
+    private long misses;
+
+    public RecommendationCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param maxEntries the number of users kept before the least recently used user's lists are evicted
+     * @param ttl        how long an entry may be served
+     * @param unit       the unit of {@code ttl}
+     */
+    public RecommendationCache(int maxEntries, long ttl, TimeUnit unit) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Map<Integer, Entry>> eldest) {
+                return size() > RecommendationCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cache shared by all DAO-backed engines, subscribed to user and rating changes.
+     */
+    public static synchronized RecommendationCache getInstance() {
+        if (instance == null) {
+            instance = new RecommendationCache();
+            UserDAO.addUpdateListener(instance::invalidate);
+            RatingDAO.addRatingListener(rating -> instance.invalidate(rating.getUserId()));
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the cached recommendations for the user, or {@code null} on a miss.
+     *
+     * @param user           the user, whose current profile must match the cached fingerprint
+     * @param limit          the number of books wanted; served from an entry computed for exactly as many
+     * @param catalogVersion the version of the catalog the caller would score
+     */
+    public synchronized List<Book> get(User user, int limit, long catalogVersion) {
+        int userId = keyOf(user);
+        Map<Integer, Entry> byLimit = userId < 0 ? null : entries.get(userId);
+        Entry entry = byLimit == null ? null : byLimit.get(limit);
+        if (entry == null || entry.catalogVersion != catalogVersion || entry.fingerprint != fingerprint(user)) {
+            misses++;
+            return null;
+        }
+        if (System.nanoTime() - entry.createdAt > ttlNanos) {
+            byLimit.remove(limit);
+            misses++;
+            return null;
+        }
+        hits++;
+        return new ArrayList<>(entry.books);
+    }
+
+    /**
+     * Stores recommendations computed for the user's current profile.
+     */
+    public synchronized void put(User user, int limit, long catalogVersion, List<Book> books) {
+        int userId = keyOf(user);
+        if (userId < 0) {
+            return;
+        }
+        entries.computeIfAbsent(userId, id -> new LinkedHashMap<>(8, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                return size() > MAX_LIMITS_PER_USER;
+            }
+        }).put(limit, new Entry(fingerprint(user), catalogVersion, new ArrayList<>(books)));
+    }
+
+    /**
+     * Drops the cached recommendations of one user.
+     *
+     * @param userId the user id as a hex string
+     */
+    public synchronized void invalidate(String userId) {
+        int intId = IdRegistry.forUsers().find(userId);
+        if (intId >= 0) {
+            entries.remove(intId);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the group that coalesces concurrent computations of the same user's recommendations,
+     * so engines sharing this cache also share the work of a miss.
+     */
+    public SingleFlight<FlightKey, List<Book>> getFlights() {
+        return flights;
+    }
+
+    /**
+     * Returns the key under which the user's computation of {@code limit} books is coalesced,
+     * or {@code null} for a user without an id.
+     */
+    public static FlightKey flightKey(User user, int limit) {
+        int userId = keyOf(user);
+        return userId < 0 ? null : new FlightKey(userId, limit, fingerprint(user));
+    }
+
+    /**
+     * Returns the number of cached lists, over all users and lengths.
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (Map<Integer, Entry> byLimit : entries.values()) {
+            size += byLimit.size();
+        }
+        return size;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Computes an order-insensitive fingerprint of the inputs that drive a user's recommendations:
+     * favorite genres, read, liked and hidden books.
+     */
+    public static long fingerprint(User user) {
+        long hash = 17;
+        hash = hash * 31 + setHash(user.getFavoriteGenres(), 0x9E3779B97F4A7C15L);
+        hash = hash * 31 + setHash(user.getReadBooks(), 0xC2B2AE3D27D4EB4FL);
+        hash = hash * 31 + setHash(user.getLikedBooks(), 0x165667B19E3779F9L);
+        hash = hash * 31 + setHash(user.getHiddenBooks(), 0x27D4EB2F165667C5L);
+        return hash;
+    }
+
+    private static long setHash(List<String> values, long seed) {
+        if (values == null) {
+            return 0;
+        }
+        // Sum of mixed element hashes: independent of order
+        long sum = values.size();
+        for (String value : values) {
+            long h = (value == null ? 0 : value.hashCode()) * seed;
+            h ^= h >>> 32;
+            h *= 0xD6E8FEB86659FD93L;
+            h ^= h >>> 32;
+            sum += h;
+        }
+        return sum;
+    }
+
+    private static int keyOf(User user) {
+        return user == null || user.getId() == null ? -1 : IdRegistry.forUsers().register(user.getId());
+    }
+
+    /**
+     * Identifies one recommendation computation: the user's registry int id, the number of books
+     * and the profile fingerprint.
+     */
+    public record FlightKey(int userId, int limit, long fingerprint) {
+    }
+
+    private static class Entry {
+        private final long fingerprint;
+        private final long catalogVersion;
+        private final List<Book> books;
+        private final long createdAt;
+
+        private Entry(long fingerprint, long catalogVersion, List<Book> books) {
+            this.fingerprint = fingerprint;
+            this.catalogVersion = catalogVersion;
+            this.books = books;
+            this.createdAt = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.collabia.bookrec.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.collabia.bookrec.model.Book;
+import com.collabia.bookrec.model.User;
+
+/**
+ * State of one request flowing through a {@link RecommendationPipeline}.
+ * <p>
+ * Holds the user's profile resolved against the catalog snapshot (read books,
+ * preferred genres and authors) and the candidate set the generators fill.
+ * Candidates are deduplicated; each generator stage adds under its own
+ * candidate budget and timeout, enforced by {@link #addCandidate(int)}.
+ */
+public final class RecommendationContext {
+
+    private static final int TIMEOUT_CHECK_INTERVAL = 256;
+
+    private final User user;
+    private final int limit;
+    private final CatalogSnapshot snapshot;
+    private final UserBookSets bookSets;
+    final ScoringScratch scratch;
+    private final long deadline;
+    private volatile boolean partial;
+
+    private int stageBudget;
+    private int stageAdded;
+    private long stageDeadline;
+    private boolean stageTimedOut;
+
+    // Ranking work of this request, summed over the candidate ranges ranked, possibly in parallel
+    private final LongAdder fetchNanos = new LongAdder();
+    private final LongAdder rankNanos = new LongAdder();
+    private final LongAdder rankedCandidates = new LongAdder();
+    private volatile boolean rankingTimedOut;
+    private long rankingStart;
+
+    // Where the request deadline, rather than a stage timeout, stopped the request
+    private volatile boolean deadlineCut;
+    private int cutGenerator = -1;
+    private int candidatesBeforeCut;
+    private final List<int[]> unrankedRanges = new ArrayList<>();
+
+    RecommendationContext(User user, int limit, CatalogSnapshot snapshot, long deadline) {
+        this.user = user;
+        this.limit = limit;
+        this.snapshot = snapshot;
+        this.bookSets = UserBookSets.of(user);
+        this.scratch = ScoringScratch.forSnapshot(snapshot, limit);
+        this.deadline = deadline;
+
+        // Mark books already read and derive preferred authors from them; the cached read set
+        // holds registry ids, which map to ordinals through an array
+        bookSets.forEachRead(bookIntId -> {
+            int ordinal = snapshot.ordinalOfIntId(bookIntId);
+            if (ordinal >= 0) {
+                scratch.markRead(ordinal);
+                scratch.markPreferredAuthor(snapshot.getAuthorId(ordinal));
+            }
+        });
+        // Hidden books are excluded like read ones but say nothing about the user's taste
+        bookSets.forEachHidden(bookIntId -> {
+            int ordinal = snapshot.ordinalOfIntId(bookIntId);
+            if (ordinal >= 0) {
+                scratch.markRead(ordinal);
+            }
+        });
+        if (user.getFavoriteGenres() != null) {
+            for (String genre : user.getFavoriteGenres()) {
+                int genreId = snapshot.getGenreId(genre);
+                if (genreId >= 0) {
+                    scratch.markPreferredGenre(genreId);
+                }
+            }
+        }
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns the catalog snapshot the whole request runs against.
+     */
+    public CatalogSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the user's cached read, liked and hidden sets.
+     */
+    public UserBookSets getBookSets() {
+        return bookSets;
+    }
+
+    public boolean isRead(int ordinal) {
+        return scratch.isRead(ordinal);
+    }
+
+    public boolean isCandidate(int ordinal) {
+        return scratch.isCandidate(ordinal);
+    }
+
+    public int getCandidateCount() {
+        return scratch.candidateCount;
+    }
+
+    /**
+     * Returns the number of authors of the books the user has read.
+     */
+    public int getPreferredAuthorCount() {
+        return scratch.preferredAuthorCount;
+    }
+
+    /**
+     * Returns the snapshot author id of the i-th preferred author.
+     */
+    public int getPreferredAuthor(int i) {
+        return scratch.preferredAuthors[i];
+    }
+
+    /**
+     * Adds a book to the candidates of this request.
+     *
+     * @return false once the current stage has used up its candidate budget or its time;
+     *         the generator should stop then
+     */
+    public boolean addCandidate(int ordinal) {
+        if (stageTimedOut || (stageBudget > 0 && stageAdded >= stageBudget)) {
+            return false;
+        }
+        if (stageAdded % TIMEOUT_CHECK_INTERVAL == 0 && System.nanoTime() - stageDeadline >= 0) {
+            stageTimedOut = true;
+            deadlineCut |= stageDeadline == deadline;
+            return false;
+        }
+        if (!scratch.isCandidate(ordinal)) {
+            scratch.addCandidate(ordinal);
+            stageAdded++;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the candidate book with the given catalog ordinal.
+     */
+    public Book getBook(int ordinal) {
+        return snapshot.getBook(ordinal);
+    }
+
+    /**
+     * Returns whether a stage ran out of time, so the result may miss books.
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    void markPartial() {
+        partial = true;
+    }
+
+    void beginStage(int budget, long timeoutNanos) {
+        stageBudget = budget;
+        stageAdded = 0;
+        long stageEnd = System.nanoTime() + timeoutNanos;
+        stageDeadline = timeoutNanos > 0 && stageEnd - deadline < 0 ? stageEnd : deadline;
+        stageTimedOut = false;
+    }
+
+    void beginRanking(long timeoutNanos) {
+        beginStage(0, timeoutNanos);
+        rankingStart = System.nanoTime();
+    }
+
+    void addRankingWork(long fetchNanos, long rankNanos, long candidates) {
+        this.fetchNanos.add(fetchNanos);
+        this.rankNanos.add(rankNanos);
+        this.rankedCandidates.add(candidates);
+    }
+
+    /**
+     * Marks the ranking timed out with the candidates {@code [from, to)} left unranked.
+     */
+    void markRankingTimedOut(int from, int to) {
+        rankingTimedOut = true;
+        markPartial();
+        if (getStageDeadline() == deadline) {
+            deadlineCut = true;
+            synchronized (unrankedRanges) {
+                unrankedRanges.add(new int[] {from, to});
+            }
+        }
+    }
+
+    /**
+     * Returns whether the request deadline stopped a stage, so that the request can be
+     * resumed where it stopped.
+     */
+    boolean isDeadlineCut() {
+        return deadlineCut;
+    }
+
+    void markCutGenerator(int generator, int candidatesBefore) {
+        cutGenerator = generator;
+        candidatesBeforeCut = candidatesBefore;
+    }
+
+    /**
+     * Returns the index of the first generator the request deadline stopped, or -1.
+     */
+    int getCutGenerator() {
+        return cutGenerator;
+    }
+
+    int getCandidatesBeforeCut() {
+        return candidatesBeforeCut;
+    }
+
+    /**
+     * Returns the candidate ranges the ranking deadline left unranked, as consecutive
+     * {@code [from, to)} pairs.
+     */
+    int[] getUnrankedRanges() {
+        synchronized (unrankedRanges) {
+            int[] ranges = new int[unrankedRanges.size() * 2];
+            for (int i = 0; i < unrankedRanges.size(); i++) {
+                ranges[2 * i] = unrankedRanges.get(i)[0];
+                ranges[2 * i + 1] = unrankedRanges.get(i)[1];
+            }
+            return ranges;
+        }
+    }
+
+    long getRankingStart() {
+        return rankingStart;
+    }
+
+    long getFetchNanos() {
+        return fetchNanos.sum();
+    }
+
+    long getRankNanos() {
+        return rankNanos.sum();
+    }
+
+    long getRankedCandidates() {
+        return rankedCandidates.sum();
+    }
+
+    boolean isRankingTimedOut() {
+        return rankingTimedOut;
+    }
+
+    long getStageDeadline() {
+        return stageDeadline;
+    }
+
+    int getStageAdded() {
+        return stageAdded;
+    }
+
+    boolean isStageTimedOut() {
+        return stageTimedOut;
+    }
+}
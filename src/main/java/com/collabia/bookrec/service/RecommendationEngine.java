@@ -1,16 +1,30 @@
 package com.collabia.bookrec.service;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import com.collabia.bookrec.dao.BookDAO;
+import com.collabia.bookrec.dao.RecommendationDAO;
 import com.collabia.bookrec.model.Book;
 import com.collabia.bookrec.model.User;
+import com.collabia.bookrec.utils.CompressedBitmap;
+import com.collabia.bookrec.utils.IdRegistry;
+import com.collabia.bookrec.utils.SingleFlight;
 
 /**
  * RecommendationEngine provides content-based book recommendations for users.
@@ -18,36 +32,247 @@ import com.collabia.bookrec.model.User;
  */
 public class RecommendationEngine {
 
+    public static final String PARALLEL_THRESHOLD_PROPERTY = "bookrec.scoring.parallelThreshold";
+    public static final String AGGREGATION_PUSHDOWN_PROPERTY = "bookrec.scoring.aggregationPushdown";
+    static final int DEFAULT_PARALLEL_THRESHOLD = 50_000;
+    private static final int MIN_CHUNK_SIZE = 4_096;
+    private static final int USER_BLOCK_SIZE = 8;
+    private static final int PROVISIONAL_CANDIDATES = 2_048;
+    private static final int SESSION_DEPTH = 120;
+    private static final long CATALOG_REFRESH_MINUTES = 5;
+
+    /**
+     * The share of a list given to item-based recommendations when an {@link ItemBasedRecommender} is set.
+     */
+    public static final double DEFAULT_ITEM_BASED_SHARE = 0.25;
+    private static final SingleFlight<BookCatalog, Boolean> catalogLoads = new SingleFlight<>();
+
     private final BookDAO bookDAO;
+    private final BookCatalog catalog;
+    private final RecommendationCache cache;
+    private final RecommendationSessions sessions = new RecommendationSessions();
+    private final AtomicLong budgetedRequests = new AtomicLong();
+    private final AtomicLong budgetsExceeded = new AtomicLong();
+    private final RecommendationPipeline fullScanPipeline = RecommendationPipeline.createFullScan();
+    private RecommendationPipeline pipeline = RecommendationPipeline.createDefault();
+    private RecommendationPlanner planner;
+    private PrecomputedRecommendations precomputedRecommendations;
+    private ColdStartLists coldStartLists;
+    private volatile ItemBasedRecommender itemBasedRecommender;
+    private double itemBasedShare = DEFAULT_ITEM_BASED_SHARE;
+    private int parallelThreshold = Integer.getInteger(PARALLEL_THRESHOLD_PROPERTY, DEFAULT_PARALLEL_THRESHOLD);
+    private boolean aggregationPushdown = Boolean.getBoolean(AGGREGATION_PUSHDOWN_PROPERTY);
 
     /**
      * Constructs a RecommendationEngine with the specified BookDAO.
+     * Books are read from the shared {@link BookCatalog}, which is loaded through the DAO on first use,
+     * and results are kept in the shared {@link RecommendationCache}.
+     * Users without history are served from the shared {@link ColdStartLists}. The shared catalog
+     * picks up changed books every {@value #CATALOG_REFRESH_MINUTES} minutes. The shared
+     * {@link RecommendationPlanner} picks the strategy of each computation, including the lists
+     * of the {@link RecommendationBatchJob} through {@link PrecomputedRecommendations}. Once the
+     * neighbor lists of the {@link ItemSimilarityJob} are loaded, the shared
+     * {@link ItemBasedRecommender} is blended in.
      *
      * @param bookDAO the data access object for retrieving books
      */
     public RecommendationEngine(BookDAO bookDAO) {
+        this(bookDAO, BookCatalog.getInstance(), RecommendationCache.getInstance());
+        this.coldStartLists = ColdStartLists.getInstance();
+        this.planner = RecommendationPlanner.getInstance();
+        this.precomputedRecommendations = new PrecomputedRecommendations(new RecommendationDAO(), bookDAO);
+        catalog.scheduleRefresh(bookDAO, CATALOG_REFRESH_MINUTES, TimeUnit.MINUTES);
+        ItemBasedRecommender.getShared().thenAccept(this::setItemBasedRecommender);
+    }
+
+    /**
+     * Constructs a RecommendationEngine that scores the given catalog.
+     *
+     * @param bookDAO the data access object used to load the catalog, may be {@code null} for a preloaded catalog
+     * @param catalog the in-memory catalog to recommend from
+     */
+    public RecommendationEngine(BookDAO bookDAO, BookCatalog catalog) {
+        this(bookDAO, catalog, new RecommendationCache());
+    }
+
+    /**
+     * Constructs a RecommendationEngine that scores the given catalog and caches results in the given cache.
+     *
+     * @param bookDAO the data access object used to load the catalog, may be {@code null} for a preloaded catalog
+     * @param catalog the in-memory catalog to recommend from
+     * @param cache   the cache for per-user results
+     */
+    public RecommendationEngine(BookDAO bookDAO, BookCatalog catalog, RecommendationCache cache) {
         this.bookDAO = bookDAO;
+        this.catalog = catalog;
+        this.cache = cache;
     }
 
     public RecommendationEngine() {
-        this.bookDAO = null;
+        this(null, new BookCatalog());
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Sets the catalog size from which scoring is split across the {@link ScoringPool}.
+     * Smaller catalogs are scored on the calling thread. The threshold is passed on to the
+     * {@link #getPlanner() planner}, which is shared by all DAO-backed engines.
+     *
+     * @param parallelThreshold the minimum number of books for parallel scoring
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+        if (planner != null) {
+            planner.setParallelThreshold(parallelThreshold);
+        }
+    }
+
+    public boolean isAggregationPushdown() {
+        return aggregationPushdown;
+    }
+
+    /**
+     * Switches {@link #recommendForUser(User, int)} to scoring inside MongoDB with
+     * {@link #recommendByAggregation(User, int)}. Needs a {@link BookDAO}; defaults to the
+     * {@value #AGGREGATION_PUSHDOWN_PROPERTY} system property.
+     */
+    public void setAggregationPushdown(boolean aggregationPushdown) {
+        this.aggregationPushdown = aggregationPushdown;
+    }
+
+    public RecommendationPlanner getPlanner() {
+        return planner;
+    }
+
+    /**
+     * Sets the planner that chooses a {@link RecommendationStrategy} per computation. Without
+     * one, every computation runs the {@link #getPipeline() pipeline} in memory.
+     */
+    public void setPlanner(RecommendationPlanner planner) {
+        this.planner = planner;
+    }
+
+    public PrecomputedRecommendations getPrecomputedRecommendations() {
+        return precomputedRecommendations;
+    }
+
+    /**
+     * Makes fresh precomputed lists available to the {@link #getPlanner() planner}.
+     */
+    public void setPrecomputedRecommendations(PrecomputedRecommendations precomputedRecommendations) {
+        this.precomputedRecommendations = precomputedRecommendations;
+    }
+
+    public RecommendationPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Sets the pipeline that generates and ranks candidates for single-user requests.
+     */
+    public void setPipeline(RecommendationPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    public ColdStartLists getColdStartLists() {
+        return coldStartLists;
+    }
+
+    /**
+     * Sets the lists that serve users who have neither read nor liked a book,
+     * or {@code null} to score those users against the catalog like everyone else.
+     */
+    public void setColdStartLists(ColdStartLists coldStartLists) {
+        this.coldStartLists = coldStartLists;
+    }
+
+    public ItemBasedRecommender getItemBasedRecommender() {
+        return itemBasedRecommender;
+    }
+
+    /**
+     * Sets the collaborative filtering blended into single-user recommendations, or {@code null}
+     * for content-based recommendations only. Results computed before are not blended again until
+     * they leave the cache.
+     */
+    public void setItemBasedRecommender(ItemBasedRecommender itemBasedRecommender) {
+        this.itemBasedRecommender = itemBasedRecommender;
+    }
+
+    public double getItemBasedShare() {
+        return itemBasedShare;
+    }
+
+    /**
+     * Sets the share of each list, rounded to whole books, that goes to item-based recommendations.
+     */
+    public void setItemBasedShare(double itemBasedShare) {
+        this.itemBasedShare = itemBasedShare;
     }
 
     public List<Book> getRecommendations(User user, List<Book> availableBooks) {
+        if (availableBooks == null) {
+            return new ArrayList<>();
+        }
+        return getRecommendations(user, availableBooks, availableBooks.size());
+    }
+
+    /**
+     * Ranks the unread, not hidden books of {@code availableBooks} for the user and returns the best {@code limit} of them.
+     * The books are scored in place against a genre dictionary of the user's favorite genres only, so a call
+     * costs the books given, not the size of the catalog; the best ones are selected with a bounded
+     * {@link TopKSelector}, so the cost is O(N log K) instead of a full sort.
+     * Books with equal scores keep their order in {@code availableBooks}.
+     *
+     * @param user           the user to recommend for
+     * @param availableBooks the books to choose from
+     * @param limit          the maximum number of books to return
+     * @return the recommended books, best first
+     */
+    public List<Book> getRecommendations(User user, List<Book> availableBooks, int limit) {
         if (user == null || availableBooks == null) {
             return new ArrayList<>();
         }
 
-        Set<String> readBookIds = new HashSet<>(user.getReadBooks() != null ? user.getReadBooks() : new ArrayList<>());
-        List<String> favoriteGenres = user.getFavoriteGenres() != null ? user.getFavoriteGenres() : new ArrayList<>();
+        GenreDictionary favoriteGenres = new GenreDictionary(
+                user.getFavoriteGenres() != null ? user.getFavoriteGenres() : new ArrayList<>());
+        long[] genreMask = favoriteGenres.encode(user.getFavoriteGenres());
+        boolean hasFavoriteGenres = favoriteGenres.size() > 0;
+        IdRegistry registry = IdRegistry.forBooks();
+        Book[] books = availableBooks.toArray(new Book[0]);
+
+        // Drop the books already read or hidden from the given ones as a set; ids the
+        // registry has never seen cannot be in either
+        int[] bookIntIds = new int[books.length];
+        CompressedBitmap unread = new CompressedBitmap();
+        for (int ordinal = 0; ordinal < books.length; ordinal++) {
+            bookIntIds[ordinal] = registry.find(books[ordinal].getId());
+            if (bookIntIds[ordinal] >= 0) {
+                unread.add(bookIntIds[ordinal]);
+            }
+        }
+        UserBookSets.of(user).removeExcluded(unread);
 
-        // Filter out books already read and score remaining books
-        return availableBooks.stream()
-                .filter(book -> !readBookIds.contains(book.getId()))
-                .map(book -> new ScoredBook(book, calculateScore(book, favoriteGenres)))
-                .sorted(Comparator.comparingDouble(ScoredBook::getScore).reversed())
-                .map(ScoredBook::getBook)
-                .collect(Collectors.toList());
+        // Keep the best scoring remaining books
+        TopKSelector topK = select(0, books.length, books.length, new TopKSelector(limit), (from, to, selector) -> {
+            long[] bookMask = new long[genreMask.length];
+            for (int ordinal = from; ordinal < to; ordinal++) {
+                Book book = books[ordinal];
+                if (bookIntIds[ordinal] >= 0 && !unread.contains(bookIntIds[ordinal])) {
+                    continue;
+                }
+                selector.offer(calculateScore(book, favoriteGenres, genreMask, hasFavoriteGenres, bookMask), ordinal);
+            }
+        });
+
+        List<Book> recommendations = new ArrayList<>(topK.size());
+        for (int ordinal : topK.toSortedOrdinals()) {
+            recommendations.add(books[ordinal]);
+        }
+        return recommendations;
     }
 
     /**
@@ -63,132 +288,762 @@ public class RecommendationEngine {
      * </ul>
      * Books the user has already read are excluded from the recommendations.
      * <p>
+     * The request runs through the engine's {@link RecommendationPipeline}. With the default
+     * pipeline, only books that share at least one favorite genre or preferred author, books
+     * similar to liked ones and the most popular remaining books are scored; they are looked up
+     * in the genre and author indexes and the popularity order of the {@link BookCatalog}.
+     * Every other book can only earn a smaller rating bonus than the popular ones, so the
+     * result is the same as scoring the full catalog.
+     * <p>
+     * Features are fetched in batches from the catalog's columnar {@link CatalogSnapshot} and
+     * per-request state lives in reusable per-thread buffers, so ranking allocates nothing.
+     * Catalogs of at least {@link #getParallelThreshold()} books are ranked in chunks on the
+     * dedicated {@link ScoringPool}.
+     * <p>
+     * Results are cached per user in the {@link RecommendationCache} and served again as long as
+     * the user's favorite genres, read, liked and hidden books and the catalog are unchanged. Concurrent
+     * requests for the same user, profile and limit are coalesced into one computation through the
+     * cache's {@link SingleFlight}.
+     * <p>
+     * Users without any read or liked book are answered from the {@link ColdStartLists}, if set:
+     * the best rated books of their favorite genres by average rating, merged from lists that are
+     * precomputed on a schedule, without the books they hid. This trades the exact score for a
+     * constant-time answer.
+     * <p>
+     * With {@link #setAggregationPushdown(boolean) aggregation pushdown} on, the other users are
+     * scored by {@link #recommendByAggregation(User, int)} instead, without the in-memory catalog.
+     * Otherwise, if a {@link #setPlanner(RecommendationPlanner) planner} is set, it chooses how each
+     * computation runs; while the catalog is still loading it can answer from the database.
+     * <p>
+     * With an {@link #setItemBasedRecommender(ItemBasedRecommender) item-based recommender} set,
+     * {@link #getItemBasedShare() a share} of the list comes from the user's ratings through the
+     * neighbor lists, spread evenly over the list.
+     * <p>
      * Complexity:
-     * Let N be the total number of books and M be the number of books the user has liked.
-     * The complexity is O(N * log(N) + M) due to fetching liked books' authors, iterating through all books to score them, and sorting the scored books.
+     * Let C be the number of candidate books, M the number of books the user has read and K the limit.
+     * The complexity is O(M + C * log(K)) for deriving preferred authors through the catalog's id map and selecting
+     * the best candidates with a bounded heap, plus the length of the popularity order walked by the popularity generator.
      *
      * @param user  The user for whom to generate recommendations.
      * @param limit The maximum number of recommended books to return.
      * @return A list of recommended books, sorted by relevance score in descending order.
      */
     public List<Book> recommendForUser(User user, int limit) {
+        boolean coldStart = coldStartLists != null && ColdStartLists.isColdStart(user);
+        if (aggregationPushdown && bookDAO != null && !coldStart) {
+            return recommendByAggregation(user, limit);
+        }
+        if (planner != null && bookDAO != null && !coldStart && !catalog.isLoaded()) {
+            // Answer from the database while the catalog loads in the background
+            loadCatalogAsync();
+            return recommendPlanned(null, user, limit);
+        }
+        catalog.ensureLoaded(bookDAO);
+        if (coldStart) {
+            return coldStartLists.recommend(user, limit);
+        }
+        if (user.getId() == null) {
+            return recommendCached(user, limit);
+        }
+
+        RecommendationCache.FlightKey flightKey = RecommendationCache.flightKey(user, limit);
+        return new ArrayList<>(cache.getFlights().execute(flightKey, () -> recommendCached(user, limit)));
+    }
+
+    /**
+     * Recommends books by running the scoring as an aggregation inside MongoDB.
+     * <p>
+     * The database filters out the read and hidden books, scores every other book with the same formula as
+     * the in-memory ranking, sorts and keeps the top {@code limit}, so only those books are
+     * transferred. The result matches the in-memory ranking of a catalog loaded in {@code _id}
+     * order, which is how {@link BookDAO#findAll()} loads it. Results are not cached.
+     *
+     * @param user  The user for whom to generate recommendations.
+     * @param limit The maximum number of recommended books to return.
+     * @return the recommended books, best first
+     * @throws IllegalStateException if the engine has no {@link BookDAO}
+     */
+    public List<Book> recommendByAggregation(User user, int limit) {
         if (bookDAO == null) {
-            return new ArrayList<>();
+            throw new IllegalStateException("Aggregation pushdown needs a BookDAO.");
         }
+        return bookDAO.findTopScored(user.getReadBooks(), user.getHiddenBooks(), user.getFavoriteGenres(), limit);
+    }
 
-        List<Book> allBooks = bookDAO.getAllBooks();
-        Set<String> readBookIds = new HashSet<>(user.getReadBooks() != null ? user.getReadBooks() : new ArrayList<>());
-        Set<String> preferredGenres = new HashSet<>(user.getFavoriteGenres() != null ? user.getFavoriteGenres() : new ArrayList<>());
-        
-        // Derive preferred authors from books the user has read and liked
-        Set<String> preferredAuthors = new HashSet<>();
-        if (user.getReadBooks() != null) {
-            for (String bookId : user.getReadBooks()) {
-                Optional<Book> readBook = allBooks.stream()
-                        .filter(b -> b.getId().equals(bookId))
-                        .findFirst();
-                if (readBook.isPresent()) {
-                    preferredAuthors.add(readBook.get().getAuthor());
-                }
+    /**
+     * Serves the user's recommendations from the cache or computes and caches them.
+     */
+    private List<Book> recommendCached(User user, int limit) {
+        CatalogSnapshot snapshot = catalog.getSnapshot();
+        List<Book> cached = cache.get(user, limit, snapshot.getVersion());
+        if (cached != null) {
+            return cached;
+        }
+        List<Book> recommendations = planner != null ? recommendPlanned(snapshot, user, limit)
+                : computeRecommendations(snapshot, user, limit, null, RecommendationPipeline.noDeadline()).getBooks();
+        recommendations = blendItemBased(user, recommendations, limit);
+        cache.put(user, limit, snapshot.getVersion(), recommendations);
+        return recommendations;
+    }
+
+    /**
+     * Lets the planner choose a strategy and runs it, moving on to the next cheapest one if a
+     * strategy cannot answer; records the actual time of every strategy run.
+     *
+     * @param snapshot the catalog, or {@code null} while it is not loaded
+     */
+    private List<Book> recommendPlanned(CatalogSnapshot snapshot, User user, int limit) {
+        RecommendationPlanner.Plan plan = planner.plan(snapshot, user, limit, bookDAO != null,
+                precomputedRecommendations != null && user.getId() != null);
+        for (RecommendationStrategy strategy : plan.getStrategies()) {
+            long start = System.nanoTime();
+            List<Book> books = execute(strategy, snapshot, user, limit);
+            planner.record(plan, strategy, System.nanoTime() - start, books != null);
+            if (books != null) {
+                return books;
             }
         }
+        throw new IllegalStateException("No recommendation strategy could answer: " + plan);
+    }
+
+    /**
+     * Lets the planner choose a strategy and runs it within the deadline. The in-memory strategies
+     * stop at the deadline and finish in the background; the database ones are single round trips.
+     * Only complete executions are recorded with the planner.
+     */
+    private RecommendationResult recommendPlanned(CatalogSnapshot snapshot, User user, int limit, long deadline) {
+        RecommendationPlanner.Plan plan = planner.plan(snapshot, user, limit, bookDAO != null,
+                precomputedRecommendations != null && user.getId() != null);
+        for (RecommendationStrategy strategy : plan.getStrategies()) {
+            long start = System.nanoTime();
+            RecommendationResult result;
+            if (strategy == RecommendationStrategy.INDEXED || strategy == RecommendationStrategy.FULL_SCAN) {
+                result = computeRecommendations(snapshot, user, limit, null, deadline,
+                        strategy == RecommendationStrategy.INDEXED ? pipeline : fullScanPipeline);
+            } else {
+                List<Book> books = execute(strategy, snapshot, user, limit);
+                result = books != null ? new RecommendationResult(books, false) : null;
+            }
+            if (result == null || !result.isPartial()) {
+                planner.record(plan, strategy, System.nanoTime() - start, result != null);
+            }
+            if (result != null) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("No recommendation strategy could answer: " + plan);
+    }
+
+    /**
+     * Runs one strategy, or returns {@code null} if it cannot answer this request.
+     */
+    private List<Book> execute(RecommendationStrategy strategy, CatalogSnapshot snapshot, User user, int limit) {
+        switch (strategy) {
+            case INDEXED:
+                return computeRecommendations(snapshot, user, limit, null, RecommendationPipeline.noDeadline(),
+                        pipeline).getBooks();
+            case FULL_SCAN:
+                return computeRecommendations(snapshot, user, limit, null, RecommendationPipeline.noDeadline(),
+                        fullScanPipeline).getBooks();
+            case AGGREGATION:
+                return recommendByAggregation(user, limit);
+            case PRECOMPUTED:
+                // A list cut off below the limit cannot tell whether more books would follow
+                List<Book> books = precomputedRecommendations.find(user, limit).orElse(null);
+                return books != null && books.size() >= limit ? books : null;
+            default:
+                throw new IllegalArgumentException("Unknown strategy: " + strategy);
+        }
+    }
 
-        // List to store books with their calculated scores
-        List<BookScore> bookScores = new ArrayList<>();
+    private CompletableFuture<Boolean> loadCatalogAsync() {
+        return catalogLoads.submit(catalog, () -> {
+            catalog.ensureLoaded(bookDAO);
+            return true;
+        }, ScoringPool.getPool());
+    }
 
-        // Calculate score for each unread book
-        for (Book book : allBooks) {
-            // Skip books already read by the user
-            if (readBookIds.contains(book.getId())) {
-                continue;
+    /**
+     * Recommends books for a user within a latency budget.
+     * <p>
+     * The budget bounds every stage of the {@link RecommendationPipeline}. Candidates are ranked
+     * in the order the generators produced them, genre-index hits first, in batches between
+     * which the deadline is checked. When the budget runs out the best books found so far are returned, topped up by the popularity
+     * fallback, and the result is flagged as partial. If the catalog is still loading when the
+     * budget ends, the result is empty and partial; the load continues in the background.
+     * Complete results are cached like those of {@link #recommendForUser(User, int)} and equal them.
+     * <p>
+     * A partial result does not abandon the work done: the request carries on in the background
+     * from where the budget stopped it, and {@link RecommendationResult#getCompletion()}
+     * completes with the same books as {@code recommendForUser(user, limit)}. The ratings the
+     * {@link #setItemBasedRecommender(ItemBasedRecommender) item-based recommendations} start from
+     * are read within the budget too; if they arrive after it, the content ranking is returned as
+     * partial and the completion holds the blended list.
+     * <p>
+     * With a {@link #setPlanner(RecommendationPlanner) planner}, the strategy is chosen as for
+     * {@link #recommendForUser(User, int)}, so a fresh precomputed list can answer in one lookup.
+     *
+     * @param user   The user for whom to generate recommendations.
+     * @param limit  The maximum number of recommended books to return.
+     * @param budget The time the call may take.
+     * @param unit   The unit of {@code budget}.
+     * @return the recommendations, flagged as partial if the budget was exceeded
+     */
+    public RecommendationResult recommendForUser(User user, int limit, long budget, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(budget);
+        budgetedRequests.incrementAndGet();
+
+        if (!catalog.isLoaded() && !awaitCatalog(deadline)) {
+            budgetsExceeded.incrementAndGet();
+            return new RecommendationResult(new ArrayList<>(), true,
+                    loadCatalogAsync().thenApplyAsync(loaded -> recommendForUser(user, limit), ScoringPool.getPool()));
+        }
+        if (coldStartLists != null && ColdStartLists.isColdStart(user)) {
+            return new RecommendationResult(coldStartLists.recommend(user, limit), false);
+        }
+
+        CatalogSnapshot snapshot = catalog.getSnapshot();
+        List<Book> cached = cache.get(user, limit, snapshot.getVersion());
+        if (cached != null) {
+            return new RecommendationResult(cached, false);
+        }
+        RecommendationResult result = planner != null ? recommendPlanned(snapshot, user, limit, deadline)
+                : computeRecommendations(snapshot, user, limit, null, deadline);
+        if (result.isPartial()) {
+            budgetsExceeded.incrementAndGet();
+            return result;
+        }
+        RecommendationResult blended = blendItemBased(user, result.getBooks(), limit, snapshot.getVersion(), deadline);
+        if (blended.isPartial()) {
+            budgetsExceeded.incrementAndGet();
+        }
+        return blended;
+    }
+
+    /**
+     * Returns the number of calls to {@link #recommendForUser(User, int, long, TimeUnit)}.
+     */
+    public long getBudgetedRequests() {
+        return budgetedRequests.get();
+    }
+
+    /**
+     * Returns the number of budgeted calls that ran out of time and returned a partial result.
+     */
+    public long getBudgetsExceeded() {
+        return budgetsExceeded.get();
+    }
+
+    /**
+     * Loads the catalog in the background and waits for it until the deadline.
+     *
+     * @return whether the catalog is loaded
+     */
+    private boolean awaitCatalog(long deadline) {
+        CompletableFuture<Boolean> load = loadCatalogAsync();
+        try {
+            load.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to load the catalog", e.getCause());
+        }
+    }
+
+    /**
+     * Returns one page of the user's recommendations.
+     * <p>
+     * The first request ranks the top {@value #SESSION_DEPTH} books once and keeps the ranking in a
+     * short-lived session; the returned cursor points into it, so later pages are slices of that
+     * ranking and are served without scoring the catalog again. Pages of one session stay
+     * consistent while the catalog changes. A cursor whose session expired ranks again and
+     * continues at its offset; paging past the session's depth extends the ranking.
+     *
+     * @param user     The user for whom to generate recommendations.
+     * @param cursor   The cursor of the previous page, or {@code null} for the first page.
+     * @param pageSize The maximum number of books on the page.
+     * @return the page and the cursor of the next page, which is {@code null} after the last page
+     * @throws IllegalArgumentException if the cursor is malformed or the page size is not positive
+     */
+    public RecommendationPage recommendForUser(User user, String cursor, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        int userId = user.getId() == null ? -1 : IdRegistry.forUsers().register(user.getId());
+        String sessionId = null;
+        int offset = 0;
+        RecommendationSessions.Session session = null;
+        if (cursor != null) {
+            RecommendationSessions.Cursor position = RecommendationSessions.decodeCursor(cursor);
+            sessionId = position.getSessionId();
+            offset = position.getOffset();
+            session = sessions.get(sessionId, userId);
+        }
+
+        int end = offset + pageSize;
+        if (session == null || (session.getRanking().size() < end && !session.isComplete())) {
+            int depth = Math.max(SESSION_DEPTH, session == null ? end : Math.max(end, 2 * session.getRanking().size()));
+            List<Book> ranking = recommendForUser(user, depth);
+            boolean complete = ranking.size() < depth;
+            if (session == null) {
+                sessionId = sessions.open(userId, ranking, complete);
+            } else {
+                sessions.update(sessionId, userId, ranking, complete);
             }
+            session = sessions.get(sessionId, userId);
+        }
 
-            // Calculate genre overlap count
-            int genreOverlapCount = 0;
-            for (String genre : book.getGenres()) {
-                if (preferredGenres.contains(genre)) {
-                    genreOverlapCount++;
-                }
+        List<Book> ranking = session.getRanking();
+        List<Book> page = new ArrayList<>(ranking.subList(Math.min(offset, ranking.size()), Math.min(end, ranking.size())));
+        boolean more = end < ranking.size() || (!session.isComplete() && !page.isEmpty());
+        return new RecommendationPage(page, more ? RecommendationSessions.encodeCursor(sessionId, end) : null);
+    }
+
+    /**
+     * Streams the recommendations of {@link #recommendForUser(User, int)} as they are refined.
+     * <p>
+     * When the user has many candidate books, a provisional ranking of the first
+     * {@value #PROVISIONAL_CANDIDATES} candidates is published before the rest are scored, so
+     * the first results can be shown long before the final ranking is ready. The final list is
+     * always the last item and equals what {@code recommendForUser} returns. A cached result is
+     * published as the only item.
+     *
+     * @param user  The user for whom to generate recommendations.
+     * @param limit The maximum number of recommended books per list.
+     * @return a cold publisher; every subscription computes the lists on the {@link ScoringPool}
+     */
+    public Flow.Publisher<List<Book>> streamRecommendations(User user, int limit) {
+        return new RecommendationStream(ScoringPool.getPool(), publisher -> {
+            catalog.ensureLoaded(bookDAO);
+            if (coldStartLists != null && ColdStartLists.isColdStart(user)) {
+                publisher.submit(coldStartLists.recommend(user, limit));
+                return;
+            }
+
+            CatalogSnapshot snapshot = catalog.getSnapshot();
+            List<Book> cached = cache.get(user, limit, snapshot.getVersion());
+            if (cached != null) {
+                publisher.submit(cached);
+                return;
+            }
+            List<Book> recommendations = computeRecommendations(snapshot, user, limit, publisher::submit,
+                    RecommendationPipeline.noDeadline()).getBooks();
+            recommendations = blendItemBased(user, recommendations, limit);
+            cache.put(user, limit, snapshot.getVersion(), recommendations);
+            publisher.submit(recommendations);
+        });
+    }
+
+    /**
+     * Runs the user through the {@link RecommendationPipeline} against one catalog snapshot.
+     *
+     * @param provisional receives a provisional ranking before the bulk of the candidates is scored,
+     *                    or {@code null} if only the final ranking is wanted
+     * @param deadline    the {@link System#nanoTime()} by which ranking must stop
+     */
+    private RecommendationResult computeRecommendations(CatalogSnapshot snapshot, User user, int limit,
+                                                        Consumer<List<Book>> provisional, long deadline) {
+        return computeRecommendations(snapshot, user, limit, provisional, deadline, pipeline);
+    }
+
+    private RecommendationResult computeRecommendations(CatalogSnapshot snapshot, User user, int limit,
+                                                        Consumer<List<Book>> provisional, long deadline,
+                                                        RecommendationPipeline pipeline) {
+        RecommendationContext context = pipeline.generate(user, limit, snapshot, deadline);
+        ScoringScratch scratch = context.scratch;
+
+        // Cheap pass over the first candidates for a provisional ranking
+        int scored = 0;
+        TopKSelector provisionalTopK = null;
+        if (provisional != null && scratch.candidateCount > PROVISIONAL_CANDIDATES) {
+            provisionalTopK = new TopKSelector(limit);
+            pipeline.rank(context, 0, PROVISIONAL_CANDIDATES, provisionalTopK);
+            provisional.accept(toRecommendations(snapshot, scratch, provisionalTopK, limit));
+            scored = PROVISIONAL_CANDIDATES;
+        }
+
+        // Rank the remaining candidates and keep only the best ones
+        TopKSelector topK = select(scored, scratch.candidateCount, snapshot.size(), scratch.topK,
+                (from, to, selector) -> pipeline.rank(context, from, to, selector));
+        if (provisionalTopK != null) {
+            topK.merge(provisionalTopK);
+        }
+        pipeline.finishRanking(context);
+
+        List<Book> recommendations = toRecommendations(snapshot, scratch, topK, limit);
+        if (context.isDeadlineCut()) {
+            RecommendationPipeline.Remainder remainder = pipeline.remainder(context, topK);
+            return new RecommendationResult(recommendations, true,
+                    finishInBackground(snapshot, user, limit, pipeline, remainder));
+        }
+        return new RecommendationResult(recommendations, context.isPartial());
+    }
+
+    /**
+     * Finishes a request its deadline cut short on the {@link ScoringPool}, from where it
+     * stopped: the unfinished generators run again, the candidates left unranked are ranked
+     * and merged with the best books found before the deadline. The result equals that of an
+     * unbudgeted request against the same snapshot and is cached like it.
+     */
+    private CompletableFuture<List<Book>> finishInBackground(CatalogSnapshot snapshot, User user, int limit,
+                                                             RecommendationPipeline pipeline,
+                                                             RecommendationPipeline.Remainder remainder) {
+        return CompletableFuture.supplyAsync(() -> {
+            RecommendationContext context = pipeline.resume(user, limit, snapshot, remainder);
+            TopKSelector topK = remainder.getRanked();
+            int[] unranked = remainder.getUnranked();
+            for (int i = 0; i < unranked.length; i += 2) {
+                topK.merge(select(unranked[i], unranked[i + 1], snapshot.size(), new TopKSelector(limit),
+                        (from, to, selector) -> pipeline.rank(context, from, to, selector)));
             }
+            // Candidates of the generators that ran again
+            topK.merge(select(remainder.getKeptCandidates(), context.getCandidateCount(), snapshot.size(),
+                    new TopKSelector(limit), (from, to, selector) -> pipeline.rank(context, from, to, selector)));
+            pipeline.finishRanking(context);
 
-            // Check author match
-            int authorMatch = preferredAuthors.contains(book.getAuthor()) ? 1 : 0;
+            List<Book> recommendations = toRecommendations(snapshot, context.scratch, topK, limit);
+            if (!context.isPartial()) {
+                recommendations = blendItemBased(user, recommendations, limit);
+                cache.put(user, limit, snapshot.getVersion(), recommendations);
+            }
+            return recommendations;
+        }, ScoringPool.getPool());
+    }
 
-            // Normalize rating (assuming rating is out of 5)
-            double normalizedAvgRating = book.getRating() / 5.0;
+    /**
+     * Blends the item-based recommendations into a content ranking, reading the user's ratings on
+     * the calling thread.
+     */
+    private List<Book> blendItemBased(User user, List<Book> content, int limit) {
+        ItemBasedRecommender recommender = itemBasedRecommender;
+        if (!blendsItemBased(recommender, user, limit)) {
+            return content;
+        }
+        return blend(content, recommender.recommend(user, limit), limit);
+    }
 
-            // Calculate final score
-            double score = genreOverlapCount + authorMatch + (normalizedAvgRating * 0.3);
+    /**
+     * Blends the item-based recommendations into a complete content ranking of a budgeted request
+     * and caches the list. The user's ratings are read in the background and waited for until the
+     * deadline; if they arrive later, the content ranking is returned as partial and the blended
+     * list completes the result.
+     */
+    private RecommendationResult blendItemBased(User user, List<Book> content, int limit, long catalogVersion,
+                                                long deadline) {
+        ItemBasedRecommender recommender = itemBasedRecommender;
+        if (!blendsItemBased(recommender, user, limit)) {
+            cache.put(user, limit, catalogVersion, content);
+            return new RecommendationResult(content, false);
+        }
+        CompletableFuture<List<Book>> blended = recommender.findRatingsAsync(user).thenApplyAsync(ratings -> {
+            List<Book> recommendations = blend(content, recommender.recommend(user, ratings, limit), limit);
+            cache.put(user, limit, catalogVersion, recommendations);
+            return recommendations;
+        }, ScoringPool.getPool());
+        try {
+            return new RecommendationResult(blended.get(Math.max(0, deadline - System.nanoTime()),
+                    TimeUnit.NANOSECONDS), false);
+        } catch (TimeoutException e) {
+            return new RecommendationResult(content, true, blended);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new RecommendationResult(content, true, blended);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to read the ratings of the user", e.getCause());
+        }
+    }
 
-            bookScores.add(new BookScore(book, score));
+    private boolean blendsItemBased(ItemBasedRecommender recommender, User user, int limit) {
+        return recommender != null && Math.round(limit * itemBasedShare) > 0 && user.getId() != null;
+    }
+
+    /**
+     * Blends item-based recommendations into a content ranking. The item-based share of the
+     * limit is spread evenly, from the second place on: with a limit of 12 and the default share,
+     * places 2, 6 and 10 go to the best item-based books the ranking does not already hold. All
+     * other places keep the content order. When one side runs out the other fills the list.
+     */
+    private List<Book> blend(List<Book> content, List<Book> itemBased, int limit) {
+        int slots = (int) Math.round(limit * itemBasedShare);
+        if (itemBased.isEmpty() || slots <= 0) {
+            return content;
         }
 
-        // Sort by score in descending order
-        bookScores.sort(Comparator.comparingDouble(BookScore::getScore).reversed());
+        int stride = Math.max(2, limit / slots);
+        List<Book> blended = new ArrayList<>(limit);
+        Set<String> chosen = new HashSet<>();
+        int nextContent = 0;
+        int nextItemBased = 0;
+        int itemBasedPlaced = 0;
+        while (blended.size() < limit) {
+            boolean itemBasedPlace = itemBasedPlaced < slots && blended.size() % stride == 1;
+            // Skip books the other side has already placed
+            while (nextContent < content.size() && chosen.contains(content.get(nextContent).getId())) {
+                nextContent++;
+            }
+            while (nextItemBased < itemBased.size() && chosen.contains(itemBased.get(nextItemBased).getId())) {
+                nextItemBased++;
+            }
+            Book book;
+            if (nextItemBased < itemBased.size() && (itemBasedPlace || nextContent >= content.size())) {
+                book = itemBased.get(nextItemBased++);
+                itemBasedPlaced++;
+            } else if (nextContent < content.size()) {
+                book = content.get(nextContent++);
+            } else {
+                break;
+            }
+            blended.add(book);
+            chosen.add(book.getId());
+        }
+        return blended;
+    }
 
-        // Extract top N books
+    /**
+     * Turns the selected ordinals into books, best first. If the candidates could not fill the
+     * limit, which only happens when a stage ran out of time, fills up from the catalog's popularity order.
+     */
+    private List<Book> toRecommendations(CatalogSnapshot snapshot, ScoringScratch scratch, TopKSelector topK,
+                                         int limit) {
+        // Extract top N books, best first
+        int[] selected = topK.toSortedOrdinals();
         List<Book> recommendations = new ArrayList<>();
-        int count = Math.min(limit, bookScores.size());
-        for (int i = 0; i < count; i++) {
-            recommendations.add(bookScores.get(i).getBook());
+        for (int bestOrdinal : selected) {
+            recommendations.add(snapshot.getBook(bestOrdinal));
+        }
+
+        // Popularity fallback for the slots the ranked candidates could not fill
+        if (recommendations.size() < limit) {
+            for (int ordinal : snapshot.getPopularityOrder()) {
+                if (recommendations.size() >= limit) {
+                    break;
+                }
+                if (!scratch.isRead(ordinal) && !contains(selected, ordinal)) {
+                    recommendations.add(snapshot.getBook(ordinal));
+                }
+            }
         }
 
         return recommendations;
     }
 
-    private double calculateScore(Book book, List<String> favoriteGenres) {
-        double score = 0.0;
+    private static boolean contains(int[] ordinals, int ordinal) {
+        for (int candidate : ordinals) {
+            if (candidate == ordinal) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        // Base score from rating (0-5 range)
-        score += book.getRating() * 10;
+    /**
+     * Recommends books for many users at once, for precomputation and cache warming.
+     * <p>
+     * The catalog snapshot is taken once for the whole batch and each user's preferences are
+     * encoded up front: a genre mask, a read-book bitmap and a preferred-author bitmap. Users are
+     * then scored in blocks of {@value #USER_BLOCK_SIZE}. Each block walks the catalog once and
+     * scores a book for every user of the block while its columns are still in cache. Blocks run
+     * in parallel on the {@link ScoringPool}. Every user gets the content ranking of
+     * {@link #recommendForUser(User, int)}. The item-based recommendations are not blended in, as
+     * that would read every user's ratings, so with an
+     * {@link #setItemBasedRecommender(ItemBasedRecommender) item-based recommender} the lists are not
+     * cached; single-user requests blend them in when they serve a precomputed list.
+     *
+     * @param users the users to recommend for; users without an id are skipped
+     * @param k     the maximum number of books per user
+     * @return the recommendations per user id (hex string), in the order of {@code users}; without an
+     *         item-based recommender they are also stored in the {@link RecommendationCache}
+     */
+    public Map<String, List<Book>> recommendForUsers(List<User> users, int k) {
+        Map<String, List<Book>> results = new LinkedHashMap<>();
+        if (users == null || users.isEmpty()) {
+            return results;
+        }
+        catalog.ensureLoaded(bookDAO);
 
-        // Genre overlap bonus (up to 30 points)
-        if (book.getGenres() != null && !favoriteGenres.isEmpty()) {
-            long genreMatches = book.getGenres().stream()
-                    .filter(favoriteGenres::contains)
-                    .count();
-            score += genreMatches * 15;
+        CatalogSnapshot snapshot = catalog.getSnapshot();
+        long catalogVersion = snapshot.getVersion();
+        List<UserProfile> profiles = new ArrayList<>(users.size());
+        for (User user : users) {
+            if (user != null && user.getId() != null) {
+                profiles.add(buildProfile(user, snapshot, k));
+            }
         }
 
-        return score;
-    }
+        int blockCount = (profiles.size() + USER_BLOCK_SIZE - 1) / USER_BLOCK_SIZE;
+        if (blockCount > 1) {
+            List<Callable<Void>> blocks = new ArrayList<>(blockCount);
+            for (int from = 0; from < profiles.size(); from += USER_BLOCK_SIZE) {
+                int blockStart = from;
+                int blockEnd = Math.min(from + USER_BLOCK_SIZE, profiles.size());
+                blocks.add(() -> {
+                    scoreUserBlock(snapshot, profiles, blockStart, blockEnd);
+                    return null;
+                });
+            }
+            try {
+                for (Future<Void> block : ScoringPool.getPool().invokeAll(blocks)) {
+                    block.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Batch recommendation was interrupted.", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Batch recommendation failed.", e.getCause());
+            }
+        } else {
+            scoreUserBlock(snapshot, profiles, 0, profiles.size());
+        }
 
-    private static class ScoredBook {
-        private final Book book;
-        private final double score;
+        ItemBasedRecommender recommender = itemBasedRecommender;
+        for (UserProfile profile : profiles) {
+            List<Book> recommendations = new ArrayList<>(profile.topK.size());
+            for (int ordinal : profile.topK.toSortedOrdinals()) {
+                recommendations.add(snapshot.getBook(ordinal));
+            }
+            results.put(profile.userId, recommendations);
+            // The cache holds what recommendForUser returns, which blends in the item-based books
+            if (!blendsItemBased(recommender, profile.user, k)) {
+                cache.put(profile.user, k, catalogVersion, recommendations);
+            }
+        }
+        return results;
+    }
 
-        public ScoredBook(Book book, double score) {
-            this.book = book;
-            this.score = score;
+    private UserProfile buildProfile(User user, CatalogSnapshot snapshot, int k) {
+        UserProfile profile = new UserProfile(user, snapshot, k);
+        UserBookSets bookSets = UserBookSets.of(user);
+        bookSets.forEachRead(bookIntId -> {
+            int ordinal = snapshot.ordinalOfIntId(bookIntId);
+            if (ordinal >= 0) {
+                profile.readBooks.set(ordinal);
+                profile.preferredAuthors.set(snapshot.getAuthorId(ordinal));
+            }
+        });
+        bookSets.forEachHidden(bookIntId -> {
+            int ordinal = snapshot.ordinalOfIntId(bookIntId);
+            if (ordinal >= 0) {
+                profile.readBooks.set(ordinal);
+            }
+        });
+        if (user.getFavoriteGenres() != null) {
+            for (String genre : user.getFavoriteGenres()) {
+                int genreId = snapshot.getGenreId(genre);
+                if (genreId >= 0) {
+                    profile.genreMask[genreId >>> 6] |= 1L << genreId;
+                }
+            }
         }
+        return profile;
+    }
 
-        public Book getBook() {
-            return book;
+    /**
+     * Walks the catalog once and scores every book for the profiles {@code [from, to)}.
+     */
+    private static void scoreUserBlock(CatalogSnapshot snapshot, List<UserProfile> profiles, int from, int to) {
+        UserProfile[] block = profiles.subList(from, to).toArray(new UserProfile[0]);
+        for (int ordinal = 0; ordinal < snapshot.size(); ordinal++) {
+            int authorId = snapshot.getAuthorId(ordinal);
+            double ratingBonus = (snapshot.getRating(ordinal) / 5.0) * 0.3;
+            for (UserProfile profile : block) {
+                if (profile.readBooks.get(ordinal)) {
+                    continue;
+                }
+                int genreOverlapCount = snapshot.genreOverlap(ordinal, profile.genreMask);
+                int authorMatch = profile.preferredAuthors.get(authorId) ? 1 : 0;
+                double score = genreOverlapCount + authorMatch + ratingBonus;
+                profile.topK.offer(score, ordinal);
+            }
         }
+    }
 
-        public double getScore() {
-            return score;
+    /**
+     * Runs the scorer over the candidates {@code [from, to)} and returns the best ones.
+     * Catalogs of at least {@link #getParallelThreshold()} books are split into chunks on the
+     * {@link ScoringPool}, each with its own partial top K; smaller ones fill {@code sequential}.
+     */
+    private TopKSelector select(int from, int to, int catalogSize, TopKSelector sequential,
+                                ScoringTask.RangeScorer scorer) {
+        int count = to - from;
+        if (catalogSize >= parallelThreshold && count > MIN_CHUNK_SIZE) {
+            int parallelism = ScoringPool.getParallelism();
+            int chunkSize = Math.max(MIN_CHUNK_SIZE, count / (parallelism * 4));
+            return ScoringPool.getPool().invoke(new ScoringTask(scorer, from, to, sequential.capacity(), chunkSize));
         }
+        scorer.score(from, to, sequential);
+        return sequential;
     }
 
     /**
-     * Inner class to hold a book and its calculated recommendation score.
+     * Returns other books by the author of the given book, highest rated first.
+     * Uses the catalog's author index, so the cost depends only on the author's bibliography.
+     *
+     * @param book  the book whose author to look up
+     * @param limit the maximum number of books to return
+     * @return books by the same author, excluding {@code book} itself
      */
-    private static class BookScore {
-        private final Book book;
-        private final double score;
+    public List<Book> moreByAuthor(Book book, int limit) {
+        if (book == null || book.getAuthor() == null) {
+            return new ArrayList<>();
+        }
+        catalog.ensureLoaded(bookDAO);
 
-        public BookScore(Book book, double score) {
-            this.book = book;
-            this.score = score;
+        List<Book> sameAuthor = catalog.getBooksByAuthor(book.getAuthor());
+        TopKSelector topK = new TopKSelector(limit);
+        for (int i = 0; i < sameAuthor.size(); i++) {
+            Book candidate = sameAuthor.get(i);
+            if (candidate != book && (candidate.getId() == null || !candidate.getId().equals(book.getId()))) {
+                topK.offer(candidate.getRating(), i);
+            }
         }
 
-        public Book getBook() {
-            return book;
+        List<Book> result = new ArrayList<>(topK.size());
+        for (int index : topK.toSortedOrdinals()) {
+            result.add(sameAuthor.get(index));
         }
+        return result;
+    }
+
+    private static double calculateScore(Book book, GenreDictionary favoriteGenres, long[] genreMask,
+                                         boolean hasFavoriteGenres, long[] bookMask) {
+        double score = 0.0;
+
+        // Base score from rating (0-5 range)
+        score += book.getRating() * 10;
+
+        // Genre overlap bonus (up to 30 points)
+        if (book.getGenres() != null && hasFavoriteGenres) {
+            Arrays.fill(bookMask, 0L);
+            favoriteGenres.encodeInto(book.getGenres(), bookMask, 0);
+            long genreMatches = GenreDictionary.overlap(bookMask, genreMask);
+            score += genreMatches * 15;
+        }
+
+        return score;
+    }
+
+    /**
+     * Preferences of one user encoded against a catalog snapshot, for batch scoring.
+     */
+    private static class UserProfile {
+        private final User user;
+        private final String userId;
+        private final long[] genreMask;
+        private final BitSet readBooks;
+        private final BitSet preferredAuthors;
+        private final TopKSelector topK;
 
-        public double getScore() {
-            return score;
+        private UserProfile(User user, CatalogSnapshot snapshot, int k) {
+            this.user = user;
+            this.userId = user.getId().toHexString();
+            this.genreMask = new long[snapshot.getMaskWords()];
+            this.readBooks = new BitSet(snapshot.size());
+            this.preferredAuthors = new BitSet(snapshot.getAuthorCount());
+            this.topK = new TopKSelector(k);
         }
     }
 }
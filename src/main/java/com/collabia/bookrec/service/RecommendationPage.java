@@ -0,0 +1,31 @@
+package com.collabia.bookrec.service;
+
+import java.util.List;
+
+import com.collabia.bookrec.model.Book;
+
+/**
+ * One page of a user's ranked recommendations.
+ * The next page is requested with {@link #getNextCursor()}, which is {@code null} after the last page.
+ */
+public class RecommendationPage {
+    private final List<Book> books;
+    private final String nextCursor;
+
+    public RecommendationPage(List<Book> books, String nextCursor) {
+        this.books = books;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Book> getBooks() {
+        return books;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
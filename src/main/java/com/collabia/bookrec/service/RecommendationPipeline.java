@@ -0,0 +1,290 @@
+package com.collabia.bookrec.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import com.collabia.bookrec.model.User;
+
+/**
+ * Staged recommendation pipeline: candidate generation, batched feature fetch and ranking.
+ * <p>
+ * Generators run in order, each under its own candidate budget and timeout, and fill a
+ * deduplicated candidate set. The candidates are then processed in batches: their features
+ * are fetched from the {@link CatalogSnapshot} columns and the {@link CandidateRanker}
+ * scores them into a bounded top-K selector. Feature fetch and ranking share the ranking
+ * timeout, but each stage keeps its own {@link StageMetrics}, so the slow stage shows up
+ * in {@link #getMetrics()}. A stage that runs out of time marks the request partial.
+ * <p>
+ * New signals are added as generators over indexes or precomputed lists, so none of them
+ * rescans the catalog.
+ */
+public class RecommendationPipeline {
+
+    private static final int FEATURE_BATCH_SIZE = 256;
+    private static final ThreadLocal<CandidateFeatures> FEATURES =
+            ThreadLocal.withInitial(() -> new CandidateFeatures(FEATURE_BATCH_SIZE));
+
+    private final List<GeneratorStage> generators = new CopyOnWriteArrayList<>();
+    private final StageMetrics fetchMetrics = new StageMetrics("feature-fetch");
+    private volatile RankerStage rankerStage;
+
+    public RecommendationPipeline() {
+        setRanker(ContentRanker.create(), 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the pipeline the engine uses by default: the genre index, author index,
+     * similar-to-liked (up to 1,000 candidates) and popularity generators and the {@link ContentRanker}.
+     * It ranks the same books as scoring the whole catalog.
+     */
+    public static RecommendationPipeline createDefault() {
+        return new RecommendationPipeline()
+                .addGenerator(CandidateGenerators.genreIndex(), 0, 0, TimeUnit.NANOSECONDS)
+                .addGenerator(CandidateGenerators.authorIndex(), 0, 0, TimeUnit.NANOSECONDS)
+                .addGenerator(CandidateGenerators.similarToLiked(), 1_000, 0, TimeUnit.NANOSECONDS)
+                .addGenerator(CandidateGenerators.popularity(), 0, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns a pipeline that ranks every unread book of the catalog with the {@link ContentRanker}.
+     * It returns the same books as {@link #createDefault()}, without consulting any index.
+     */
+    public static RecommendationPipeline createFullScan() {
+        return new RecommendationPipeline()
+                .addGenerator(CandidateGenerators.allBooks(), 0, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Appends a generator stage.
+     *
+     * @param generator     the generator
+     * @param maxCandidates the most new candidates the stage may add, or 0 for no limit
+     * @param timeout       the time the stage may take per request, or 0 for no limit
+     * @param unit          the unit of {@code timeout}
+     * @return this pipeline
+     */
+    public RecommendationPipeline addGenerator(CandidateGenerator generator, int maxCandidates,
+                                                            long timeout, TimeUnit unit) {
+        generators.add(new GeneratorStage(generator, maxCandidates, unit.toNanos(timeout)));
+        return this;
+    }
+
+    /**
+     * Replaces the ranker.
+     *
+     * @param ranker  the ranker
+     * @param timeout the time feature fetch and ranking may take per request, or 0 for no limit
+     * @param unit    the unit of {@code timeout}
+     * @return this pipeline
+     */
+    public RecommendationPipeline setRanker(CandidateRanker ranker, long timeout, TimeUnit unit) {
+        this.rankerStage = new RankerStage(ranker, unit.toNanos(timeout));
+        return this;
+    }
+
+    /**
+     * Returns the metrics of all stages in pipeline order.
+     */
+    public List<StageMetrics> getMetrics() {
+        List<StageMetrics> metrics = new ArrayList<>();
+        for (GeneratorStage stage : generators) {
+            metrics.add(stage.metrics);
+        }
+        metrics.add(fetchMetrics);
+        metrics.add(rankerStage.metrics);
+        return Collections.unmodifiableList(metrics);
+    }
+
+    /**
+     * Returns the stage that has taken the most time in total.
+     */
+    public StageMetrics getSlowestStage() {
+        StageMetrics slowest = null;
+        for (StageMetrics metrics : getMetrics()) {
+            if (slowest == null || metrics.getTotalNanos() > slowest.getTotalNanos()) {
+                slowest = metrics;
+            }
+        }
+        return slowest;
+    }
+
+    /**
+     * Returns a deadline that never passes in practice, for requests without a budget.
+     */
+    static long noDeadline() {
+        return System.nanoTime() + (Long.MAX_VALUE >> 1);
+    }
+
+    /**
+     * Resolves the user's profile against the snapshot and runs the generators.
+     *
+     * @param deadline the {@link System#nanoTime()} by which the whole request must be done
+     */
+    RecommendationContext generate(User user, int limit, CatalogSnapshot snapshot, long deadline) {
+        RecommendationContext context = new RecommendationContext(user, limit, snapshot, deadline);
+        runGenerators(context, 0);
+        context.beginRanking(rankerStage.timeoutNanos);
+        return context;
+    }
+
+    /**
+     * Picks up a request its deadline cut short, on any thread, without a deadline this time.
+     * The candidates it kept are restored and the generators it did not finish run again.
+     * The ranges of {@link Remainder#getUnranked()} are then left to rank.
+     */
+    RecommendationContext resume(User user, int limit, CatalogSnapshot snapshot, Remainder remainder) {
+        RecommendationContext context = new RecommendationContext(user, limit, snapshot, noDeadline());
+        for (int ordinal : remainder.candidates) {
+            context.scratch.addCandidate(ordinal);
+        }
+        runGenerators(context, remainder.nextGenerator);
+        context.beginRanking(rankerStage.timeoutNanos);
+        return context;
+    }
+
+    private void runGenerators(RecommendationContext context, int first) {
+        for (int g = first; g < generators.size(); g++) {
+            GeneratorStage stage = generators.get(g);
+            int candidatesBefore = context.getCandidateCount();
+            context.beginStage(stage.maxCandidates, stage.timeoutNanos);
+            long start = System.nanoTime();
+            stage.generator.generate(context);
+            stage.metrics.record(System.nanoTime() - start, context.getStageAdded());
+            if (context.isStageTimedOut()) {
+                stage.metrics.recordTimeout();
+                context.markPartial();
+                if (context.isDeadlineCut() && context.getCutGenerator() < 0) {
+                    context.markCutGenerator(g, candidatesBefore);
+                }
+            }
+        }
+    }
+
+    /**
+     * Captures what a request cut short by its deadline left undone, so that {@link #resume}
+     * can finish it on another thread.
+     *
+     * @param ranked the best of the candidates ranked before the deadline
+     */
+    Remainder remainder(RecommendationContext context, TopKSelector ranked) {
+        ScoringScratch scratch = context.scratch;
+        if (context.getCutGenerator() >= 0) {
+            // Nothing is ranked once the deadline has passed; the cut generator starts over
+            int kept = context.getCandidatesBeforeCut();
+            return new Remainder(Arrays.copyOf(scratch.candidates, kept), context.getCutGenerator(),
+                    new int[] {0, kept}, new TopKSelector(context.getLimit()));
+        }
+        return new Remainder(Arrays.copyOf(scratch.candidates, scratch.candidateCount), generators.size(),
+                context.getUnrankedRanges(), new TopKSelector(context.getLimit()).merge(ranked));
+    }
+
+    /**
+     * Fetches features for and ranks the candidates in {@code [from, to)} batch by batch, until
+     * they run out or the ranking timeout passes. Disjoint ranges may be ranked concurrently;
+     * their work is summed in the context and recorded by {@link #finishRanking}.
+     */
+    void rank(RecommendationContext context, int from, int to, TopKSelector topK) {
+        RankerStage stage = rankerStage;
+        CandidateFeatures features = FEATURES.get();
+        long fetchNanos = 0;
+        long rankNanos = 0;
+        long fetched = 0;
+        for (int start = from; start < to; start += features.capacity()) {
+            long fetchStart = System.nanoTime();
+            if (fetchStart - context.getStageDeadline() >= 0) {
+                context.markRankingTimedOut(start, to);
+                break;
+            }
+            features.fetch(context, start, Math.min(start + features.capacity(), to));
+            long rankStart = System.nanoTime();
+            stage.ranker.rank(features, topK);
+            fetchNanos += rankStart - fetchStart;
+            rankNanos += System.nanoTime() - rankStart;
+            fetched += features.size();
+        }
+        context.addRankingWork(fetchNanos, rankNanos, fetched);
+    }
+
+    /**
+     * Records the feature fetch and ranking of a request once all its candidates are ranked.
+     * The two stages alternate batch by batch, so the wall time since ranking began is split
+     * between them by their share of the work.
+     */
+    void finishRanking(RecommendationContext context) {
+        RankerStage stage = rankerStage;
+        long wallNanos = System.nanoTime() - context.getRankingStart();
+        long fetchNanos = context.getFetchNanos();
+        long workNanos = fetchNanos + context.getRankNanos();
+        long fetchWallNanos = workNanos == 0 ? 0 : (long) ((double) wallNanos * fetchNanos / workNanos);
+        fetchMetrics.record(fetchWallNanos, context.getRankedCandidates());
+        stage.metrics.record(wallNanos - fetchWallNanos, context.getRankedCandidates());
+        if (context.isRankingTimedOut()) {
+            stage.metrics.recordTimeout();
+        }
+    }
+
+    /**
+     * The state a cut-short request hands over to {@link #resume}: the candidates to keep, the
+     * first generator to run again, the candidate ranges still to rank and the best books of
+     * those already ranked.
+     */
+    static final class Remainder {
+        private final int[] candidates;
+        private final int nextGenerator;
+        private final int[] unranked;
+        private final TopKSelector ranked;
+
+        private Remainder(int[] candidates, int nextGenerator, int[] unranked, TopKSelector ranked) {
+            this.candidates = candidates;
+            this.nextGenerator = nextGenerator;
+            this.unranked = unranked;
+            this.ranked = ranked;
+        }
+
+        /**
+         * Returns the {@code [from, to)} candidate ranges left to rank, as consecutive pairs.
+         * The candidates generators add on resume follow the kept ones and must be ranked too.
+         */
+        int[] getUnranked() {
+            return unranked;
+        }
+
+        int getKeptCandidates() {
+            return candidates.length;
+        }
+
+        TopKSelector getRanked() {
+            return ranked;
+        }
+    }
+
+    private static class RankerStage {
+        private final CandidateRanker ranker;
+        private final long timeoutNanos;
+        private final StageMetrics metrics;
+
+        private RankerStage(CandidateRanker ranker, long timeoutNanos) {
+            this.ranker = ranker;
+            this.timeoutNanos = timeoutNanos;
+            this.metrics = new StageMetrics(ranker.getName());
+        }
+    }
+
+    private static class GeneratorStage {
+        private final CandidateGenerator generator;
+        private final int maxCandidates;
+        private final long timeoutNanos;
+        private final StageMetrics metrics;
+
+        private GeneratorStage(CandidateGenerator generator, int maxCandidates, long timeoutNanos) {
+            this.generator = generator;
+            this.maxCandidates = maxCandidates;
+            this.timeoutNanos = timeoutNanos;
+            this.metrics = new StageMetrics(generator.getName());
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.collabia.bookrec.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.collabia.bookrec.model.User;
+
+/**
+ * Cost-based choice of a {@link RecommendationStrategy} per request.
+ * <p>
+ * Each strategy's cost is estimated in nanoseconds from statistics the catalog snapshot
+ * already keeps:
+ * <ul>
+ * <li>{@link RecommendationStrategy#INDEXED}: the posting-list lengths of the user's
+ * favorite genres, the read and liked books times the average books per author, and the
+ * walk of the popularity order.</li>
+ * <li>{@link RecommendationStrategy#FULL_SCAN}: the catalog size, ranked in parallel on
+ * large catalogs.</li>
+ * <li>{@link RecommendationStrategy#AGGREGATION}: the database round trips plus the
+ * collection size.</li>
+ * <li>{@link RecommendationStrategy#PRECOMPUTED}: one round trip, plus the cheapest
+ * alternative weighted by the observed share of stale or missing lists.</li>
+ * </ul>
+ * Every request resolves the read books, so that cost is common to the in-memory strategies.
+ * <p>
+ * The engine reports the actual time of every executed plan through {@link #record}. Each
+ * strategy's own cost is scaled by a moving average of actual over estimated time, so the fitted
+ * constants below only set the starting point and the estimates follow the machine and the data
+ * they run on. The decision, the estimates and the actual time are logged at {@link Level#FINE},
+ * and per-strategy totals are kept.
+ */
+public class RecommendationPlanner {
+
+    private static final Logger LOGGER = Logger.getLogger(RecommendationPlanner.class.getName());
+
+    // Per-item costs in nanoseconds, fitted to single requests on a 100,000-book synthetic catalog
+    private static final double READ_BOOK_NANOS = 1_500;
+    private static final double CANDIDATE_NANOS = 45;
+    private static final double POPULARITY_STEP_NANOS = 4;
+    private static final double SCAN_GENERATE_NANOS = 4;
+    private static final double SCAN_RANK_NANOS = 18;
+    private static final double ROUND_TRIP_NANOS = 1_000_000;
+    private static final double DATABASE_DOCUMENT_NANOS = 400;
+    private static final double DESERIALIZE_NANOS = 3_000;
+    private static final double RESOLVE_NANOS = 100;
+    private static final int SIMILAR_TO_LIKED_BUDGET = 1_000;
+
+    // Weight of the latest execution in a strategy's correction, and the bounds of the correction.
+    // The first executions run before the JIT compiled the strategy and do not count.
+    private static final int WARMUP_EXECUTIONS = 10;
+    private static final double CORRECTION_WEIGHT = 0.1;
+    private static final double MIN_CORRECTION = 0.01;
+    private static final double MAX_CORRECTION = 100;
+
+    private static RecommendationPlanner instance;
+
+    private final int parallelism;
+    private volatile int parallelThreshold;
+    private final Map<RecommendationStrategy, Totals> totals = new EnumMap<>(RecommendationStrategy.class);
+    private final LongAdder precomputedHits = new LongAdder();
+    private final LongAdder precomputedMisses = new LongAdder();
+
+    /**
+     * @param parallelThreshold the catalog size from which the engine ranks in parallel
+     */
+    public RecommendationPlanner(int parallelThreshold) {
+        this(ScoringPool.getParallelism(), parallelThreshold);
+    }
+
+    /**
+     * Returns the planner shared by all DAO-backed engines, so the corrections it learns from one
+     * engine's executions apply to the others. Its threshold defaults to the
+     * {@value RecommendationEngine#PARALLEL_THRESHOLD_PROPERTY} system property.
+     */
+    public static synchronized RecommendationPlanner getInstance() {
+        if (instance == null) {
+            instance = new RecommendationPlanner(Integer.getInteger(
+                    RecommendationEngine.PARALLEL_THRESHOLD_PROPERTY, RecommendationEngine.DEFAULT_PARALLEL_THRESHOLD));
+        }
+        return instance;
+    }
+
+    RecommendationPlanner(int parallelism, int parallelThreshold) {
+        this.parallelism = Math.max(1, parallelism);
+        this.parallelThreshold = parallelThreshold;
+        for (RecommendationStrategy strategy : RecommendationStrategy.values()) {
+            totals.put(strategy, new Totals());
+        }
+    }
+
+    /**
+     * Estimates every available strategy for the request and orders them cheapest first.
+     *
+     * @param snapshot             the loaded catalog, or {@code null} if it is not in memory yet
+     * @param user                 the user to recommend for
+     * @param limit                the number of books wanted
+     * @param aggregationAvailable whether the engine can query the database
+     * @param precomputedAvailable whether precomputed lists can be looked up for the user
+     * @return the plan; its first strategy is the one to run
+     * @throws IllegalStateException if no strategy is available
+     */
+    public Plan plan(CatalogSnapshot snapshot, User user, int limit, boolean aggregationAvailable,
+                     boolean precomputedAvailable) {
+        int readCount = user.getReadBooks() == null ? 0 : user.getReadBooks().size();
+        List<Estimate> estimates = new ArrayList<>(4);
+        if (snapshot != null) {
+            estimates.add(estimate(RecommendationStrategy.INDEXED, estimateIndexed(snapshot, user, limit, readCount)));
+            estimates.add(estimate(RecommendationStrategy.FULL_SCAN, estimateFullScan(snapshot, readCount)));
+        }
+        if (aggregationAvailable && snapshot != null) {
+            estimates.add(estimate(RecommendationStrategy.AGGREGATION,
+                    estimateAggregation(snapshot.size(), limit, readCount)));
+        } else if (aggregationAvailable) {
+            // Without the catalog in memory the database is the only way; its size is unknown
+            estimates.add(estimate(RecommendationStrategy.AGGREGATION, 2 * ROUND_TRIP_NANOS));
+        }
+        if (precomputedAvailable && !estimates.isEmpty()) {
+            // The lookup itself, then the cheapest alternative whenever the list is stale or missing
+            double fallback = Collections.min(estimates, Comparator.comparingDouble(Estimate::getNanos)).getNanos();
+            double lookup = ROUND_TRIP_NANOS + limit * RESOLVE_NANOS;
+            double cost = lookup * getCostCorrection(RecommendationStrategy.PRECOMPUTED)
+                    + (1 - getPrecomputedHitRate()) * fallback;
+            estimates.add(new Estimate(RecommendationStrategy.PRECOMPUTED, lookup, cost));
+        }
+        if (estimates.isEmpty()) {
+            throw new IllegalStateException("No recommendation strategy is available.");
+        }
+        estimates.sort(Comparator.comparingDouble(Estimate::getNanos));
+        return new Plan(estimates);
+    }
+
+    private Estimate estimate(RecommendationStrategy strategy, double baseNanos) {
+        return new Estimate(strategy, baseNanos, baseNanos * getCostCorrection(strategy));
+    }
+
+    private double estimateIndexed(CatalogSnapshot snapshot, User user, int limit, int readCount) {
+        double booksPerAuthor = snapshot.getAuthorCount() == 0 ? 0 : (double) snapshot.size() / snapshot.getAuthorCount();
+        double candidates = 0;
+        if (user.getFavoriteGenres() != null) {
+            for (String genre : user.getFavoriteGenres()) {
+                candidates += snapshot.getGenreIndex().size(genre);
+            }
+        }
+        candidates += readCount * booksPerAuthor;
+        int likedCount = user.getLikedBooks() == null ? 0 : user.getLikedBooks().size();
+        candidates += Math.min(SIMILAR_TO_LIKED_BUDGET, likedCount * booksPerAuthor);
+        candidates = Math.min(snapshot.size(), candidates) + limit;
+        // The popularity generator walks past the candidates and read books to find its books
+        double popularityWalk = Math.min(snapshot.size(), candidates + readCount + limit);
+        return readCount * READ_BOOK_NANOS + rankNanos(snapshot.size(), candidates, CANDIDATE_NANOS)
+                + popularityWalk * POPULARITY_STEP_NANOS;
+    }
+
+    private double estimateFullScan(CatalogSnapshot snapshot, int readCount) {
+        int size = snapshot.size();
+        return readCount * READ_BOOK_NANOS + size * SCAN_GENERATE_NANOS + rankNanos(size, size, SCAN_RANK_NANOS);
+    }
+
+    private static double estimateAggregation(int collectionSize, int limit, int readCount) {
+        double roundTrips = readCount > 0 ? 2 : 1;
+        return roundTrips * ROUND_TRIP_NANOS + collectionSize * DATABASE_DOCUMENT_NANOS + limit * DESERIALIZE_NANOS;
+    }
+
+    /**
+     * Ranking cost, split over the scoring pool when the engine would rank in parallel.
+     */
+    private double rankNanos(int catalogSize, double candidates, double nanosPerCandidate) {
+        double nanos = candidates * nanosPerCandidate;
+        return catalogSize >= parallelThreshold ? nanos / parallelism : nanos;
+    }
+
+    /**
+     * Records how long an executed strategy actually took, moves the strategy's cost correction
+     * towards it and logs the decision. Only pass times of complete executions: a run cut short by
+     * a deadline would make the strategy look cheaper than it is.
+     *
+     * @param plan        the plan the strategy came from
+     * @param strategy    the strategy that ran; a later one if an earlier one could not answer
+     * @param actualNanos the measured time of the strategy
+     * @param answered    false if the strategy could not answer and the next one was tried
+     */
+    public void record(Plan plan, RecommendationStrategy strategy, long actualNanos, boolean answered) {
+        double estimate = plan.getEstimateNanos(strategy);
+        Totals strategyTotals = totals.get(strategy);
+        strategyTotals.add((long) estimate, actualNanos);
+        double baseNanos = plan.getBaseNanos(strategy);
+        if (baseNanos > 0 && strategyTotals.executions.sum() > WARMUP_EXECUTIONS) {
+            strategyTotals.correct(actualNanos / baseNanos);
+        }
+        if (strategy == RecommendationStrategy.PRECOMPUTED) {
+            (answered ? precomputedHits : precomputedMisses).increment();
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(String.format("%s %s: estimated %.1f us, actual %.1f us; plan %s", strategy,
+                    answered ? "answered" : "could not answer", estimate / 1_000, actualNanos / 1_000.0, plan));
+        }
+    }
+
+    /**
+     * Sets the catalog size from which the engine ranks in parallel.
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Returns the factor the strategy's own estimated cost is multiplied by: the moving average
+     * of actual over estimated time, 1 until the strategy ran past its warm-up.
+     */
+    public double getCostCorrection(RecommendationStrategy strategy) {
+        return totals.get(strategy).correction;
+    }
+
+    /**
+     * Returns how often the strategy has been run.
+     */
+    public long getExecutions(RecommendationStrategy strategy) {
+        return totals.get(strategy).executions.sum();
+    }
+
+    /**
+     * Returns the mean estimated time of the strategy's executions.
+     */
+    public long getMeanEstimatedNanos(RecommendationStrategy strategy) {
+        return totals.get(strategy).meanEstimated();
+    }
+
+    /**
+     * Returns the mean measured time of the strategy's executions.
+     */
+    public long getMeanActualNanos(RecommendationStrategy strategy) {
+        return totals.get(strategy).meanActual();
+    }
+
+    /**
+     * Returns the share of precomputed lookups that found a fresh list, 0.5 until the first one.
+     */
+    public double getPrecomputedHitRate() {
+        long hits = precomputedHits.sum();
+        long lookups = hits + precomputedMisses.sum();
+        return lookups == 0 ? 0.5 : (double) hits / lookups;
+    }
+
+    /**
+     * The estimated strategies of one request, cheapest first.
+     */
+    public static final class Plan {
+        private final List<Estimate> estimates;
+
+        private Plan(List<Estimate> estimates) {
+            this.estimates = estimates;
+        }
+
+        /**
+         * Returns the strategies in the order they should be tried.
+         */
+        public List<RecommendationStrategy> getStrategies() {
+            List<RecommendationStrategy> strategies = new ArrayList<>(estimates.size());
+            for (Estimate estimate : estimates) {
+                strategies.add(estimate.strategy);
+            }
+            return strategies;
+        }
+
+        public RecommendationStrategy getStrategy() {
+            return estimates.get(0).strategy;
+        }
+
+        /**
+         * Returns the estimated nanoseconds of the strategy, or {@link Double#NaN} if it was not considered.
+         */
+        public double getEstimateNanos(RecommendationStrategy strategy) {
+            for (Estimate estimate : estimates) {
+                if (estimate.strategy == strategy) {
+                    return estimate.nanos;
+                }
+            }
+            return Double.NaN;
+        }
+
+        /**
+         * Returns the uncorrected estimate of the strategy's own work, or {@link Double#NaN} if it was not considered.
+         */
+        private double getBaseNanos(RecommendationStrategy strategy) {
+            for (Estimate estimate : estimates) {
+                if (estimate.strategy == strategy) {
+                    return estimate.baseNanos;
+                }
+            }
+            return Double.NaN;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder("[");
+            for (Estimate estimate : estimates) {
+                if (text.length() > 1) {
+                    text.append(", ");
+                }
+                text.append(estimate.strategy).append(String.format("=%.1f us", estimate.nanos / 1_000));
+            }
+            return text.append(']').toString();
+        }
+    }
+
+    private static final class Estimate {
+        private final RecommendationStrategy strategy;
+        // The strategy's own work from the constants, and the corrected total the plan is ordered by
+        private final double baseNanos;
+        private final double nanos;
+
+        private Estimate(RecommendationStrategy strategy, double baseNanos, double nanos) {
+            this.strategy = strategy;
+            this.baseNanos = baseNanos;
+            this.nanos = nanos;
+        }
+
+        private double getNanos() {
+            return nanos;
+        }
+    }
+
+    private static final class Totals {
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder estimatedNanos = new LongAdder();
+        private final LongAdder actualNanos = new LongAdder();
+        private volatile double correction = 1;
+
+        private void add(long estimated, long actual) {
+            executions.increment();
+            estimatedNanos.add(estimated);
+            actualNanos.add(actual);
+        }
+
+        private synchronized void correct(double ratio) {
+            double next = correction + CORRECTION_WEIGHT * (ratio - correction);
+            correction = Math.max(MIN_CORRECTION, Math.min(MAX_CORRECTION, next));
+        }
+
+        private long meanEstimated() {
+            long count = executions.sum();
+            return count == 0 ? 0 : estimatedNanos.sum() / count;
+        }
+
+        private long meanActual() {
+            long count = executions.sum();
+            return count == 0 ? 0 : actualNanos.sum() / count;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.collabia.bookrec.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.collabia.bookrec.model.Book;
+
+/**
+ * Recommendations computed within a latency budget.
+ * A partial result holds the best books found before the budget ran out; the computation
+ * goes on in the background and completes {@link #getCompletion()} with the final books.
+ */
+public class RecommendationResult {
+    private final List<Book> books;
+    private final boolean partial;
+    private final CompletableFuture<List<Book>> completion;
+
+    public RecommendationResult(List<Book> books, boolean partial) {
+        this(books, partial, CompletableFuture.completedFuture(books));
+    }
+
+    public RecommendationResult(List<Book> books, boolean partial, CompletableFuture<List<Book>> completion) {
+        this.books = books;
+        this.partial = partial;
+        this.completion = completion;
+    }
+
+    public List<Book> getBooks() {
+        return books;
+    }
+
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * Returns the final recommendations: these books for a complete result, those of the
+     * computation finishing in the background for a partial one.
+     */
+    public CompletableFuture<List<Book>> getCompletion() {
+        return completion;
+    }
+}
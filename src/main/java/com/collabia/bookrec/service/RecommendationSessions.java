@@ -0,0 +1,159 @@
+package com.collabia.bookrec.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.collabia.bookrec.model.Book;
+
+/**
+ * Short-lived store of computed rankings for paging through recommendations.
+ * <p>
+ * A session holds one user's ranking as it was when the first page was requested, so
+ * later pages are plain slices and stay consistent even if the catalog changes meanwhile.
+ * Cursors are opaque strings naming the session and the offset of the next page.
+ * Sessions expire after the TTL and the least recently used ones are evicted first.
+ */
+public class RecommendationSessions {
+
+    private static final int DEFAULT_MAX_SESSIONS = 1_000;
+    private static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecureRandom random = new SecureRandom();
+    private final int maxSessions;
+    private final long ttlNanos;
+    private final Map<String, Session> sessions;
+
+    public RecommendationSessions() {
+        this(DEFAULT_MAX_SESSIONS, DEFAULT_TTL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param maxSessions the number of sessions kept before the least recently used one is evicted
+     * @param ttl         how long a session may be paged through
+     * @param unit        the unit of {@code ttl}
+     */
+    public RecommendationSessions(int maxSessions, long ttl, TimeUnit unit) {
+        this.maxSessions = maxSessions;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.sessions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+                return size() > RecommendationSessions.this.maxSessions;
+            }
+        };
+    }
+
+    /**
+     * Stores a ranking and returns the id of its session.
+     *
+     * @param userId   the registry int id of the user the ranking belongs to, or -1 for a user without an id
+     * @param ranking  the ranked books, best first
+     * @param complete whether the ranking holds every recommendable book or was cut off
+     */
+    public synchronized String open(int userId, List<Book> ranking, boolean complete) {
+        String sessionId = Long.toHexString(random.nextLong());
+        sessions.put(sessionId, new Session(userId, ranking, complete));
+        return sessionId;
+    }
+
+    /**
+     * Replaces the ranking of a session, e.g. after it was extended past its cut-off.
+     */
+    public synchronized void update(String sessionId, int userId, List<Book> ranking, boolean complete) {
+        sessions.put(sessionId, new Session(userId, ranking, complete));
+    }
+
+    /**
+     * Returns the live session with the given id if it belongs to the user, or {@code null}.
+     */
+    public synchronized Session get(String sessionId, int userId) {
+        Session session = sessions.get(sessionId);
+        if (session == null || session.userId != userId) {
+            return null;
+        }
+        if (System.nanoTime() - session.createdAt > ttlNanos) {
+            sessions.remove(sessionId);
+            return null;
+        }
+        return session;
+    }
+
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Encodes a session id and the offset of the next page into an opaque cursor.
+     */
+    public static String encodeCursor(String sessionId, int offset) {
+        return ENCODER.encodeToString((sessionId + ":" + offset).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor into its session id and offset.
+     *
+     * @throws IllegalArgumentException if the cursor was not produced by {@link #encodeCursor(String, int)}
+     */
+    public static Cursor decodeCursor(String cursor) {
+        String value;
+        int offset;
+        try {
+            value = new String(DECODER.decode(cursor), StandardCharsets.UTF_8);
+            offset = Integer.parseInt(value.substring(value.indexOf(':') + 1));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid recommendation cursor: " + cursor, e);
+        }
+        int separator = value.indexOf(':');
+        if (separator <= 0 || offset < 0) {
+            throw new IllegalArgumentException("Invalid recommendation cursor: " + cursor);
+        }
+        return new Cursor(value.substring(0, separator), offset);
+    }
+
+    public static class Session {
+        private final int userId;
+        private final List<Book> ranking;
+        private final boolean complete;
+        private final long createdAt;
+
+        private Session(int userId, List<Book> ranking, boolean complete) {
+            this.userId = userId;
+            this.ranking = ranking;
+            this.complete = complete;
+            this.createdAt = System.nanoTime();
+        }
+
+        public List<Book> getRanking() {
+            return ranking;
+        }
+
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+    public static class Cursor {
+        private final String sessionId;
+        private final int offset;
+
+        private Cursor(String sessionId, int offset) {
+            this.sessionId = sessionId;
+            this.offset = offset;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+    }
+}
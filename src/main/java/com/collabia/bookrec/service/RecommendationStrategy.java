@@ -0,0 +1,30 @@
+package com.collabia.bookrec.service;
+
+/**
+ * The ways {@link RecommendationEngine} can compute a user's recommendations. All of them
+ * rank with the same content score; they differ only in where the work is done and which
+ * books are looked at.
+ */
+public enum RecommendationStrategy {
+
+    /**
+     * The default {@link RecommendationPipeline}: candidates from the genre and author indexes,
+     * liked books and popularity, ranked in memory.
+     */
+    INDEXED,
+
+    /**
+     * Every unread book of the in-memory catalog is ranked.
+     */
+    FULL_SCAN,
+
+    /**
+     * MongoDB scores the collection in an aggregation and returns the top books.
+     */
+    AGGREGATION,
+
+    /**
+     * A list written by the {@link RecommendationBatchJob}, if it is still fresh.
+     */
+    PRECOMPUTED
+}
@@ -0,0 +1,51 @@
+package com.collabia.bookrec.service;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Consumer;
+
+import com.collabia.bookrec.model.Book;
+
+/**
+ * Cold publisher of progressively refined recommendation lists.
+ * <p>
+ * Every subscription starts its own computation on the executor. Each item is a
+ * complete ranked list that replaces the previous one: first a provisional
+ * ranking, then the final one. The stream completes after the final list, or
+ * fails with whatever the computation threw. Errors are passed on to the
+ * subscriber as well, so it never waits on a stream that will not complete;
+ * virtual machine errors are then rethrown to the executor.
+ */
+public class RecommendationStream implements Flow.Publisher<List<Book>> {
+
+    private final Executor executor;
+    private final Consumer<SubmissionPublisher<List<Book>>> producer;
+
+    /**
+     * @param executor the executor that runs the computation and delivers items
+     * @param producer submits the ranked lists, best estimate last; the stream is closed when it returns
+     */
+    public RecommendationStream(Executor executor, Consumer<SubmissionPublisher<List<Book>>> producer) {
+        this.executor = executor;
+        this.producer = producer;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<Book>> subscriber) {
+        SubmissionPublisher<List<Book>> publisher = new SubmissionPublisher<>(executor, Flow.defaultBufferSize());
+        publisher.subscribe(subscriber);
+        executor.execute(() -> {
+            try {
+                producer.accept(publisher);
+                publisher.close();
+            } catch (Throwable e) {
+                publisher.closeExceptionally(e);
+                if (e instanceof VirtualMachineError) {
+                    throw (VirtualMachineError) e;
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,80 @@
+package com.collabia.bookrec.service;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dedicated fork-join pool for parallel recommendation scoring.
+ * <p>
+ * Scoring never runs on {@link ForkJoinPool#commonPool()}, so a large catalog
+ * cannot starve parallel streams or other work that relies on the common pool.
+ * The pool size is read from the {@code bookrec.scoring.parallelism} system
+ * property (default: the number of available processors). Its threads are daemons
+ * and do not keep the JVM alive.
+ */
+public final class ScoringPool {
+
+    public static final String PARALLELISM_PROPERTY = "bookrec.scoring.parallelism";
+
+    private static ForkJoinPool pool;
+
+    private ScoringPool() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Returns the shared scoring pool, creating it on first use.
+     */
+    public static synchronized ForkJoinPool getPool() {
+        if (pool == null || pool.isShutdown()) {
+            pool = createPool(Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors()));
+        }
+        return pool;
+    }
+
+    /**
+     * Replaces the shared pool with one of the given size. Tasks already running finish on the old pool.
+     *
+     * @param parallelism the number of scoring threads, at least 1
+     */
+    public static synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+        ForkJoinPool previous = pool;
+        pool = createPool(parallelism);
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+
+    public static synchronized int getParallelism() {
+        return getPool().getParallelism();
+    }
+
+    /**
+     * Shuts the pool down, waiting briefly for running tasks to finish.
+     */
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            pool = null;
+        }
+    }
+
+    private static ForkJoinPool createPool(int parallelism) {
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("recommendation-scorer-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ForkJoinPool(Math.max(1, parallelism), factory, null, false);
+    }
+}
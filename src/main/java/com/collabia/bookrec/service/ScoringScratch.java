@@ -0,0 +1,101 @@
+package com.collabia.bookrec.service;
+
+import java.util.Arrays;
+
+/**
+ * Per-thread scratch buffers reused across recommendation requests.
+ * <p>
+ * Membership flags (read books, candidates and preferred authors) are stamp
+ * arrays: an entry is set when it equals the current epoch. Starting a new
+ * request only increments the epoch, so nothing is cleared or reallocated unless
+ * the catalog has grown. Preferred genres are a bitmask in the snapshot's genre
+ * encoding, cleared per request.
+ */
+final class ScoringScratch {
+
+    private static final ThreadLocal<ScoringScratch> SCRATCH = ThreadLocal.withInitial(ScoringScratch::new);
+
+    int epoch;
+    int[] readStamps = new int[0];
+    int[] candidateStamps = new int[0];
+    long[] genreMask = new long[1];
+    int[] authorStamps = new int[0];
+    int[] candidates = new int[0];
+    int candidateCount;
+    int[] preferredAuthors = new int[0];
+    int preferredAuthorCount;
+    final TopKSelector topK = new TopKSelector(0);
+
+    private ScoringScratch() {
+    }
+
+    /**
+     * Returns the calling thread's scratch, prepared for a request over the snapshot.
+     */
+    static ScoringScratch forSnapshot(CatalogSnapshot snapshot, int limit) {
+        return SCRATCH.get().prepare(snapshot, limit);
+    }
+
+    private ScoringScratch prepare(CatalogSnapshot snapshot, int limit) {
+        int books = snapshot.size();
+        if (readStamps.length < books) {
+            readStamps = new int[books];
+            candidateStamps = new int[books];
+            candidates = new int[books];
+        }
+        if (genreMask.length < snapshot.getMaskWords()) {
+            genreMask = new long[snapshot.getMaskWords()];
+        } else {
+            Arrays.fill(genreMask, 0L);
+        }
+        if (authorStamps.length < snapshot.getAuthorCount()) {
+            authorStamps = new int[snapshot.getAuthorCount()];
+            preferredAuthors = new int[snapshot.getAuthorCount()];
+        }
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(readStamps, 0);
+            Arrays.fill(candidateStamps, 0);
+            Arrays.fill(authorStamps, 0);
+            epoch = 0;
+        }
+        epoch++;
+        candidateCount = 0;
+        preferredAuthorCount = 0;
+        topK.reset(limit);
+        return this;
+    }
+
+    void markRead(int ordinal) {
+        readStamps[ordinal] = epoch;
+    }
+
+    boolean isRead(int ordinal) {
+        return readStamps[ordinal] == epoch;
+    }
+
+    void addCandidate(int ordinal) {
+        if (candidateStamps[ordinal] != epoch) {
+            candidateStamps[ordinal] = epoch;
+            candidates[candidateCount++] = ordinal;
+        }
+    }
+
+    boolean isCandidate(int ordinal) {
+        return candidateStamps[ordinal] == epoch;
+    }
+
+    void markPreferredGenre(int genreId) {
+        genreMask[genreId >>> 6] |= 1L << genreId;
+    }
+
+    void markPreferredAuthor(int authorId) {
+        if (authorStamps[authorId] != epoch) {
+            authorStamps[authorId] = epoch;
+            preferredAuthors[preferredAuthorCount++] = authorId;
+        }
+    }
+
+    boolean isPreferredAuthor(int authorId) {
+        return authorStamps[authorId] == epoch;
+    }
+}
@@ -0,0 +1,54 @@
+package com.collabia.bookrec.service;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork-join task that scores a range of candidates and returns their top K.
+ * <p>
+ * The range is split in halves until it is no larger than the chunk size. Each
+ * chunk fills its own {@link TopKSelector}, and the partial selectors are merged on
+ * the way back up. Selection ties break on the ordinal, so the result is the same
+ * as scoring the range sequentially.
+ */
+class ScoringTask extends RecursiveTask<TopKSelector> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Scores the candidates {@code [from, to)} into the given selector.
+     * Implementations must only read shared state.
+     */
+    @FunctionalInterface
+    interface RangeScorer {
+        void score(int from, int to, TopKSelector topK);
+    }
+
+    private final RangeScorer scorer;
+    private final int from;
+    private final int to;
+    private final int k;
+    private final int chunkSize;
+
+    ScoringTask(RangeScorer scorer, int from, int to, int k, int chunkSize) {
+        this.scorer = scorer;
+        this.from = from;
+        this.to = to;
+        this.k = k;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    @Override
+    protected TopKSelector compute() {
+        if (to - from <= chunkSize) {
+            TopKSelector topK = new TopKSelector(k);
+            scorer.score(from, to, topK);
+            return topK;
+        }
+        int middle = (from + to) >>> 1;
+        ScoringTask left = new ScoringTask(scorer, from, middle, k, chunkSize);
+        ScoringTask right = new ScoringTask(scorer, middle, to, k, chunkSize);
+        left.fork();
+        TopKSelector rightTopK = right.compute();
+        return left.join().merge(rightTopK);
+    }
+}
@@ -0,0 +1,74 @@
+package com.collabia.bookrec.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timing and volume counters of one {@link RecommendationPipeline} stage, summed over all requests.
+ * Each request is recorded once per stage with its wall time, however many threads or passes it used.
+ */
+public class StageMetrics {
+
+    private final String name;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder items = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final LongAdder timeouts = new LongAdder();
+
+    public StageMetrics(String name) {
+        this.name = name;
+    }
+
+    void record(long nanos, long itemCount) {
+        calls.increment();
+        items.add(itemCount);
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    void recordTimeout() {
+        timeouts.increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * Returns the number of candidates the stage produced or processed.
+     */
+    public long getItems() {
+        return items.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public long getMeanNanos() {
+        long count = getCalls();
+        return count == 0 ? 0 : getTotalNanos() / count;
+    }
+
+    /**
+     * Returns how often the stage ran out of time.
+     */
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public String toString() {
+        return name + "{calls=" + getCalls() + ", items=" + getItems() + ", meanMicros=" + getMeanNanos() / 1_000
+                + ", maxMicros=" + getMaxNanos() / 1_000 + ", timeouts=" + getTimeouts() + "}";
+    }
+}
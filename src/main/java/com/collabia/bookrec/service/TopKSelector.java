@@ -0,0 +1,173 @@
+package com.collabia.bookrec.service;
+
+/**
+ * Bounded selection of the K best (score, ordinal) pairs.
+ * <p>
+ * Keeps a binary min-heap over two primitive arrays, so offering a candidate is
+ * O(log K) and allocates nothing. The root is the worst entry kept so far. A pair
+ * ranks higher when its score is higher, or when scores are equal and its
+ * ordinal is lower. That matches a stable descending sort over the catalog, so
+ * the result does not depend on the order in which candidates are offered.
+ * <p>
+ * Selectors are not thread-safe. Concurrent scoring fills one selector per
+ * thread and combines them with {@link #merge(TopKSelector)}.
+ */
+public class TopKSelector {
+
+    private int k;
+    private double[] scores;
+    private int[] ordinals;
+    private int size;
+
+    /**
+     * @param k the number of entries to keep; values below zero keep nothing
+     */
+    public TopKSelector(int k) {
+        this.k = Math.max(0, k);
+        int capacity = Math.min(this.k, 1024);
+        this.scores = new double[capacity];
+        this.ordinals = new int[capacity];
+    }
+
+    /**
+     * Offers a candidate. It is kept if fewer than K entries are held or it ranks above the current worst.
+     */
+    public void offer(double score, int ordinal) {
+        if (size < k) {
+            if (size == scores.length) {
+                grow();
+            }
+            scores[size] = score;
+            ordinals[size] = ordinal;
+            siftUp(size++);
+        } else if (k > 0 && ranksAbove(score, ordinal, scores[0], ordinals[0])) {
+            scores[0] = score;
+            ordinals[0] = ordinal;
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * Offers every entry held by another selector, leaving the other selector unchanged.
+     *
+     * @return this selector
+     */
+    public TopKSelector merge(TopKSelector other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.scores[i], other.ordinals[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Empties the selector and sets a new K, keeping the allocated arrays.
+     */
+    public void reset(int k) {
+        this.k = Math.max(0, k);
+        this.size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns K, the maximum number of entries kept.
+     */
+    public int capacity() {
+        return k;
+    }
+
+    public boolean isFull() {
+        return size >= k;
+    }
+
+    /**
+     * Returns the lowest score currently kept, or negative infinity while the selector is not full.
+     */
+    public double threshold() {
+        return isFull() && size > 0 ? scores[0] : Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Returns the kept ordinals ranked best first. The selector itself is not modified.
+     */
+    public int[] toSortedOrdinals() {
+        double[] heapScores = new double[size];
+        int[] heapOrdinals = new int[size];
+        System.arraycopy(scores, 0, heapScores, 0, size);
+        System.arraycopy(ordinals, 0, heapOrdinals, 0, size);
+
+        // Heap sort: repeatedly move the worst entry to the end of the shrinking heap
+        int[] sorted = new int[size];
+        for (int end = size - 1; end >= 0; end--) {
+            sorted[end] = heapOrdinals[0];
+            heapScores[0] = heapScores[end];
+            heapOrdinals[0] = heapOrdinals[end];
+            siftDown(heapScores, heapOrdinals, 0, end);
+        }
+        return sorted;
+    }
+
+    private void grow() {
+        int capacity = (int) Math.min((long) k, Math.max(1L, scores.length * 2L));
+        double[] newScores = new double[capacity];
+        int[] newOrdinals = new int[capacity];
+        System.arraycopy(scores, 0, newScores, 0, size);
+        System.arraycopy(ordinals, 0, newOrdinals, 0, size);
+        scores = newScores;
+        ordinals = newOrdinals;
+    }
+
+    private void siftUp(int index) {
+        double score = scores[index];
+        int ordinal = ordinals[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!ranksAbove(scores[parent], ordinals[parent], score, ordinal)) {
+                break;
+            }
+            scores[index] = scores[parent];
+            ordinals[index] = ordinals[parent];
+            index = parent;
+        }
+        scores[index] = score;
+        ordinals[index] = ordinal;
+    }
+
+    private void siftDown(int index, int heapSize) {
+        siftDown(scores, ordinals, index, heapSize);
+    }
+
+    private static void siftDown(double[] scores, int[] ordinals, int index, int heapSize) {
+        if (heapSize == 0) {
+            return;
+        }
+        double score = scores[index];
+        int ordinal = ordinals[index];
+        int half = heapSize >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < heapSize && ranksAbove(scores[child], ordinals[child], scores[right], ordinals[right])) {
+                child = right;
+            }
+            if (!ranksAbove(score, ordinal, scores[child], ordinals[child])) {
+                break;
+            }
+            scores[index] = scores[child];
+            ordinals[index] = ordinals[child];
+            index = child;
+        }
+        scores[index] = score;
+        ordinals[index] = ordinal;
+    }
+
+    /**
+     * Returns true if (scoreA, ordinalA) ranks strictly above (scoreB, ordinalB).
+     */
+    static boolean ranksAbove(double scoreA, int ordinalA, double scoreB, int ordinalB) {
+        int cmp = Double.compare(scoreA, scoreB);
+        return cmp > 0 || (cmp == 0 && ordinalA < ordinalB);
+    }
+}
@@ -0,0 +1,179 @@
+package com.collabia.bookrec.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+import com.collabia.bookrec.model.User;
+import com.collabia.bookrec.utils.CompressedBitmap;
+import com.collabia.bookrec.utils.IdRegistry;
+
+/**
+ * The books a user has read, liked and hidden, as {@link CompressedBitmap}s over
+ * {@link IdRegistry#forBooks() registry} book ids.
+ * <p>
+ * The bitmaps are cached per user, so a request no longer resolves every id of the user's
+ * lists again. Books are marked through {@link #markRead(User, String)},
+ * {@link #markLiked(User, String)} and {@link #markHidden(User, String)}, which update the
+ * user's list and the cached bitmap together. A lookup only compares each list's identity and
+ * size with what the bitmap was built from: a list that grew gets its new tail added, and a
+ * list that was replaced or shrank rebuilds its set. Lists must therefore not be edited in
+ * place other than by appending.
+ * <p>
+ * Read and hidden books are never recommended; {@link #removeExcluded(CompressedBitmap)}
+ * drops them from a set of candidates a bitmap word at a time.
+ */
+public final class UserBookSets {
+
+    private static final int DEFAULT_MAX_USERS = 10_000;
+
+    private static final Map<Integer, UserBookSets> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, UserBookSets> eldest) {
+            return size() > DEFAULT_MAX_USERS;
+        }
+    };
+
+    private final Tracked read = new Tracked();
+    private final Tracked liked = new Tracked();
+    private final Tracked hidden = new Tracked();
+
+    private UserBookSets() {
+    }
+
+    /**
+     * Returns the sets of the user, in sync with the user's current lists. Users without an
+     * id get sets built for this call only.
+     */
+    public static UserBookSets of(User user) {
+        UserBookSets sets;
+        if (user.getId() == null) {
+            sets = new UserBookSets();
+        } else {
+            int userId = IdRegistry.forUsers().register(user.getId());
+            synchronized (CACHE) {
+                sets = CACHE.computeIfAbsent(userId, id -> new UserBookSets());
+            }
+        }
+        synchronized (sets) {
+            sets.read.sync(user.getReadBooks());
+            sets.liked.sync(user.getLikedBooks());
+            sets.hidden.sync(user.getHiddenBooks());
+        }
+        return sets;
+    }
+
+    /**
+     * Marks a book as read: appends it to the user's list unless it is already there and adds it to the cached set.
+     *
+     * @return true if the book was not read before
+     */
+    public static boolean markRead(User user, String bookId) {
+        UserBookSets sets = of(user);
+        synchronized (sets) {
+            return sets.read.mark(user.getReadBooks(), bookId);
+        }
+    }
+
+    /**
+     * Marks a book as liked: appends it to the user's list unless it is already there and adds it to the cached set.
+     *
+     * @return true if the book was not liked before
+     */
+    public static boolean markLiked(User user, String bookId) {
+        UserBookSets sets = of(user);
+        synchronized (sets) {
+            return sets.liked.mark(user.getLikedBooks(), bookId);
+        }
+    }
+
+    /**
+     * Hides a book from the user's recommendations: appends it to the user's list unless it is
+     * already there and adds it to the cached set.
+     *
+     * @return true if the book was not hidden before
+     */
+    public static boolean markHidden(User user, String bookId) {
+        UserBookSets sets = of(user);
+        synchronized (sets) {
+            return sets.hidden.mark(user.getHiddenBooks(), bookId);
+        }
+    }
+
+    /**
+     * Removes the read and hidden books from the candidates, a word at a time where both are dense.
+     *
+     * @param candidates registry book ids; modified in place
+     * @return the candidates
+     */
+    public synchronized CompressedBitmap removeExcluded(CompressedBitmap candidates) {
+        return candidates.andNot(read.bits).andNot(hidden.bits);
+    }
+
+    /**
+     * Calls the consumer with the registry id of every read book, in ascending order.
+     */
+    public synchronized void forEachRead(IntConsumer consumer) {
+        read.bits.forEach(consumer);
+    }
+
+    public synchronized void forEachLiked(IntConsumer consumer) {
+        liked.bits.forEach(consumer);
+    }
+
+    public synchronized void forEachHidden(IntConsumer consumer) {
+        hidden.bits.forEach(consumer);
+    }
+
+    public synchronized boolean isRead(String bookId) {
+        return read.bits.contains(IdRegistry.forBooks().find(bookId));
+    }
+
+    /**
+     * A bitmap and the list it was built from.
+     */
+    private static final class Tracked {
+        private CompressedBitmap bits = new CompressedBitmap();
+        private List<String> source;
+        private int size;
+
+        private void sync(List<String> ids) {
+            int currentSize = ids == null ? 0 : ids.size();
+            if (ids == source && currentSize == size) {
+                return;
+            }
+            if (ids != null && ids == source && currentSize > size) {
+                // Appended to since the last sync
+                for (int i = size; i < currentSize; i++) {
+                    add(ids.get(i));
+                }
+            } else {
+                bits = new CompressedBitmap();
+                for (int i = 0; i < currentSize; i++) {
+                    add(ids.get(i));
+                }
+            }
+            source = ids;
+            size = currentSize;
+        }
+
+        private boolean mark(List<String> ids, String bookId) {
+            if (ids == null || bookId == null) {
+                return false;
+            }
+            if (!bits.add(IdRegistry.forBooks().register(bookId))) {
+                return false;
+            }
+            ids.add(bookId);
+            size = ids.size();
+            return true;
+        }
+
+        private void add(String bookId) {
+            if (bookId != null) {
+                bits.add(IdRegistry.forBooks().register(bookId));
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.collabia.bookrec.service;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ContentRanker} scores computed with the incubating Vector API, several candidates
+ * per instruction.
+ * <p>
+ * Each vector covers consecutive candidates of the batch. The shared genre words are
+ * popcounted lane-wise, the author bonus is blended in from the author-match mask and the
+ * rating term is added last. JDK 17 has no lane-wise bit count, so the popcount is the
+ * shift-and-mask (SWAR) one. The rating term is a multiply and an add rather than a fused
+ * multiply-add, which would round differently: the scores match the scalar ranker's bit for
+ * bit, so the two rank identically.
+ * <p>
+ * Once the selector is full, lanes scoring below its threshold are skipped without being
+ * offered. The class is only compiled by the {@code vector-api} Maven profile and needs
+ * {@code --add-modules jdk.incubator.vector}; use {@link ContentRanker#create()}, which falls
+ * back to the scalar ranker without either.
+ */
+public class VectorContentRanker implements CandidateRanker {
+
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+    private final ContentRanker scalar = new ContentRanker();
+
+    public VectorContentRanker() {
+        if (LONGS.length() != DOUBLES.length()) {
+            throw new IllegalStateException("Long and double vectors differ in length");
+        }
+    }
+
+    @Override
+    public String getName() {
+        return scalar.getName();
+    }
+
+    @Override
+    public void rank(CandidateFeatures features, TopKSelector topK) {
+        int lanes = DOUBLES.length();
+        int size = features.size();
+        int capacity = features.capacity();
+        int words = features.getMaskWords();
+        long[] sharedGenres = features.getSharedGenres();
+        boolean[] authorMatches = features.getAuthorMatches();
+        double[] ratings = features.getRatings();
+
+        int i = 0;
+        for (; i <= size - lanes; i += lanes) {
+            LongVector overlap = LongVector.zero(LONGS);
+            for (int w = 0; w < words; w++) {
+                overlap = overlap.add(bitCount(LongVector.fromArray(LONGS, sharedGenres, w * capacity + i)));
+            }
+            VectorMask<Double> authorMatch = VectorMask.fromArray(DOUBLES, authorMatches, i);
+            DoubleVector score = ((DoubleVector) overlap.convert(VectorOperators.L2D, 0))
+                    .add(DoubleVector.zero(DOUBLES).blend(1.0, authorMatch))
+                    .add(DoubleVector.fromArray(DOUBLES, ratings, i).div(5.0).mul(0.3));
+
+            // NaN ranks above every score in the selector, so it is always offered
+            VectorMask<Double> offered = score.compare(VectorOperators.GE, topK.threshold())
+                    .or(score.test(VectorOperators.IS_NAN));
+            if (!offered.anyTrue()) {
+                continue;
+            }
+            for (int lane = 0; lane < lanes; lane++) {
+                if (offered.laneIsSet(lane)) {
+                    topK.offer(score.lane(lane), features.getOrdinal(i + lane));
+                }
+            }
+        }
+        // The tail that does not fill a vector
+        for (; i < size; i++) {
+            double score = features.getGenreOverlap(i) + (authorMatches[i] ? 1 : 0) + (ratings[i] / 5.0 * 0.3);
+            topK.offer(score, features.getOrdinal(i));
+        }
+    }
+
+    /**
+     * Counts the set bits of every lane: pairs, then nibbles, then bytes summed by a multiply.
+     */
+    private static LongVector bitCount(LongVector v) {
+        v = v.sub(v.lanewise(VectorOperators.LSHR, 1).and(0x5555555555555555L));
+        v = v.and(0x3333333333333333L).add(v.lanewise(VectorOperators.LSHR, 2).and(0x3333333333333333L));
+        v = v.add(v.lanewise(VectorOperators.LSHR, 4)).and(0x0F0F0F0F0F0F0F0FL);
+        return v.mul(0x0101010101010101L).lanewise(VectorOperators.LSHR, 56);
+    }
+}
@@ -0,0 +1,251 @@
+package com.collabia.bookrec.utils;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative {@code int}s in the style of a roaring bitmap.
+ * <p>
+ * Values are split by their high 16 bits into chunks of 65,536. A chunk holding few values
+ * stores them as a sorted {@code char[]}; once it holds more than {@value #ARRAY_LIMIT} it
+ * switches to a 1,024-word bitmap. A user's handful of read books thus costs a few bytes
+ * each, while a dense set never exceeds one bit per value. Set operations between bitmap
+ * chunks work a {@code long} word at a time.
+ * <p>
+ * Not thread-safe; guard it externally.
+ */
+public class CompressedBitmap {
+
+    private static final int ARRAY_LIMIT = 4_096;
+    private static final int BITMAP_WORDS = 1_024;
+
+    private char[] keys = new char[0];
+    private Object[] chunks = new Object[0];
+    private int[] cardinalities = new int[0];
+    private int chunkCount;
+
+    public CompressedBitmap() {
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @return true if the value was not in the set
+     * @throws IllegalArgumentException if the value is negative
+     */
+    public boolean add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Value must not be negative: " + value);
+        }
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        int index = indexOf(key);
+        if (index < 0) {
+            index = -index - 1;
+            insertChunk(index, key, new char[4]);
+        }
+        Object chunk = chunks[index];
+        if (chunk instanceof long[]) {
+            long[] words = (long[]) chunk;
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) != 0) {
+                return false;
+            }
+            words[low >>> 6] |= bit;
+            cardinalities[index]++;
+            return true;
+        }
+        char[] values = (char[]) chunk;
+        int cardinality = cardinalities[index];
+        int position = Arrays.binarySearch(values, 0, cardinality, low);
+        if (position >= 0) {
+            return false;
+        }
+        position = -position - 1;
+        if (cardinality == ARRAY_LIMIT) {
+            long[] words = toWords(values, cardinality);
+            words[low >>> 6] |= 1L << low;
+            chunks[index] = words;
+        } else {
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, cardinality * 2));
+                chunks[index] = values;
+            }
+            System.arraycopy(values, position, values, position + 1, cardinality - position);
+            values[position] = low;
+        }
+        cardinalities[index]++;
+        return true;
+    }
+
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = indexOf((char) (value >>> 16));
+        if (index < 0) {
+            return false;
+        }
+        char low = (char) value;
+        Object chunk = chunks[index];
+        if (chunk instanceof long[]) {
+            return (((long[]) chunk)[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) chunk, 0, cardinalities[index], low) >= 0;
+    }
+
+    public boolean isEmpty() {
+        return chunkCount == 0;
+    }
+
+    /**
+     * Calls the consumer with every value, in ascending order.
+     */
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < chunkCount; i++) {
+            int base = keys[i] << 16;
+            Object chunk = chunks[i];
+            if (chunk instanceof long[]) {
+                long[] words = (long[]) chunk;
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        consumer.accept(base | (w << 6) | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                char[] values = (char[]) chunk;
+                for (int j = 0; j < cardinalities[i]; j++) {
+                    consumer.accept(base | values[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every value that is also in {@code other}. Chunks are matched by key and
+     * bitmap chunks are cleared a word at a time, so the cost depends on the chunks the two
+     * sets share, not on the number of values.
+     *
+     * @return this bitmap
+     */
+    public CompressedBitmap andNot(CompressedBitmap other) {
+        int i = 0;
+        int j = 0;
+        while (i < chunkCount && j < other.chunkCount) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                andNotChunk(i, other.chunks[j], other.cardinalities[j]);
+                if (cardinalities[i] == 0) {
+                    removeChunk(i);
+                } else {
+                    compact(i);
+                    i++;
+                }
+                j++;
+            }
+        }
+        return this;
+    }
+
+    private void andNotChunk(int index, Object other, int otherCardinality) {
+        Object chunk = chunks[index];
+        if (chunk instanceof long[] && other instanceof long[]) {
+            long[] words = (long[]) chunk;
+            long[] otherWords = (long[]) other;
+            int cardinality = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                words[w] &= ~otherWords[w];
+                cardinality += Long.bitCount(words[w]);
+            }
+            cardinalities[index] = cardinality;
+        } else if (chunk instanceof long[]) {
+            long[] words = (long[]) chunk;
+            char[] otherValues = (char[]) other;
+            for (int k = 0; k < otherCardinality; k++) {
+                char low = otherValues[k];
+                long bit = 1L << low;
+                if ((words[low >>> 6] & bit) != 0) {
+                    words[low >>> 6] &= ~bit;
+                    cardinalities[index]--;
+                }
+            }
+        } else {
+            char[] values = (char[]) chunk;
+            int kept = 0;
+            for (int k = 0; k < cardinalities[index]; k++) {
+                char low = values[k];
+                boolean excluded = other instanceof long[]
+                        ? (((long[]) other)[low >>> 6] & (1L << low)) != 0
+                        : Arrays.binarySearch((char[]) other, 0, otherCardinality, low) >= 0;
+                if (!excluded) {
+                    values[kept++] = low;
+                }
+            }
+            cardinalities[index] = kept;
+        }
+    }
+
+    /**
+     * Turns a bitmap chunk that became sparse back into an array, and drops empty chunks.
+     */
+    private void compact(int index) {
+        if (cardinalities[index] == 0) {
+            removeChunk(index);
+            return;
+        }
+        if (chunks[index] instanceof long[] && cardinalities[index] <= ARRAY_LIMIT / 2) {
+            long[] words = (long[]) chunks[index];
+            char[] values = new char[cardinalities[index]];
+            int k = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    values[k++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            chunks[index] = values;
+        }
+    }
+
+    private static long[] toWords(char[] values, int cardinality) {
+        long[] words = new long[BITMAP_WORDS];
+        for (int k = 0; k < cardinality; k++) {
+            words[values[k] >>> 6] |= 1L << values[k];
+        }
+        return words;
+    }
+
+    private int indexOf(char key) {
+        return Arrays.binarySearch(keys, 0, chunkCount, key);
+    }
+
+    private void insertChunk(int index, char key, Object chunk) {
+        if (chunkCount == keys.length) {
+            int capacity = Math.max(4, chunkCount * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            chunks = Arrays.copyOf(chunks, capacity);
+            cardinalities = Arrays.copyOf(cardinalities, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, chunkCount - index);
+        System.arraycopy(chunks, index, chunks, index + 1, chunkCount - index);
+        System.arraycopy(cardinalities, index, cardinalities, index + 1, chunkCount - index);
+        keys[index] = key;
+        chunks[index] = chunk;
+        cardinalities[index] = 0;
+        chunkCount++;
+    }
+
+    private void removeChunk(int index) {
+        System.arraycopy(keys, index + 1, keys, index, chunkCount - index - 1);
+        System.arraycopy(chunks, index + 1, chunks, index, chunkCount - index - 1);
+        System.arraycopy(cardinalities, index + 1, cardinalities, index, chunkCount - index - 1);
+        chunkCount--;
+        chunks[chunkCount] = null;
+    }
+}
@@ -0,0 +1,307 @@
+package com.collabia.bookrec.utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.types.ObjectId;
+
+/**
+ * Bidirectional mapping between document ids and dense {@code int} ids.
+ * <p>
+ * The first id registered gets 0, the next 1, and so on; an int id never changes or gets
+ * reused, so it can index plain arrays for as long as the JVM runs. ObjectIds, whether given
+ * as {@link ObjectId} or as their 24 character hex string, are stored as a {@code long} and an
+ * {@code int} in an open-addressing table whose slots hold the key next to the int id. A
+ * lookup parses the hex digits, mixes the two numbers into a slot index and probes that table,
+ * without hashing a string or allocating one. Other ids, such as the short ids used by tests,
+ * go through a side map.
+ * <p>
+ * Lookups do not lock. Registration is serialized and publishes each new entry before the
+ * slot pointing at it, so a concurrent reader either misses the id or sees it complete.
+ */
+public class IdRegistry {
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int INITIAL_CAPACITY = 1 << 9;
+    private static final int HEX_LENGTH = 24;
+    private static final long NOT_HEX = Long.MIN_VALUE;
+    private static final byte[] HEX_DIGITS = new byte[128];
+
+    static {
+        Arrays.fill(HEX_DIGITS, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX_DIGITS['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_DIGITS['a' + i] = (byte) (10 + i);
+            HEX_DIGITS['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private static final IdRegistry BOOKS = new IdRegistry();
+    private static final IdRegistry USERS = new IdRegistry();
+
+    private final Map<String, Integer> otherIds = new ConcurrentHashMap<>();
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+    private volatile int size;
+
+    /**
+     * Returns the registry of book ids shared by the JVM.
+     */
+    public static IdRegistry forBooks() {
+        return BOOKS;
+    }
+
+    /**
+     * Returns the registry of user ids shared by the JVM.
+     */
+    public static IdRegistry forUsers() {
+        return USERS;
+    }
+
+    /**
+     * Returns the int id of the given id, or -1 if it was never registered or is {@code null}.
+     */
+    public int find(String id) {
+        if (id == null) {
+            return -1;
+        }
+        long high = highHex(id);
+        long low = lowHex(id);
+        if (high == NOT_HEX || low == NOT_HEX) {
+            Integer intId = otherIds.get(id);
+            return intId == null ? -1 : intId;
+        }
+        return find(table, high, (int) low);
+    }
+
+    public int find(ObjectId id) {
+        if (id == null) {
+            return -1;
+        }
+        byte[] bytes = id.toByteArray();
+        return find(table, high(bytes), low(bytes));
+    }
+
+    /**
+     * Returns the int id of the given id, assigning the next one if it is new.
+     *
+     * @throws IllegalArgumentException if the id is {@code null}
+     */
+    public int register(String id) {
+        if (id == null) {
+            throw new IllegalArgumentException("id must not be null");
+        }
+        long high = highHex(id);
+        long low = lowHex(id);
+        if (high == NOT_HEX || low == NOT_HEX) {
+            Integer intId = otherIds.get(id);
+            return intId != null ? intId : registerOther(id);
+        }
+        int intId = find(table, high, (int) low);
+        return intId >= 0 ? intId : registerObjectId(high, (int) low);
+    }
+
+    public int register(ObjectId id) {
+        if (id == null) {
+            throw new IllegalArgumentException("id must not be null");
+        }
+        byte[] bytes = id.toByteArray();
+        long high = high(bytes);
+        int low = low(bytes);
+        int intId = find(table, high, low);
+        return intId >= 0 ? intId : registerObjectId(high, low);
+    }
+
+    /**
+     * Returns the id registered under the int id, as the hex string for ObjectIds.
+     *
+     * @throws IllegalArgumentException if the int id was never assigned
+     */
+    public String idOf(int intId) {
+        if (intId < 0 || intId >= size) {
+            throw new IllegalArgumentException("Unknown id: " + intId);
+        }
+        Table current = table;
+        String other = current.others[intId];
+        if (other != null) {
+            return other;
+        }
+        return toHex(current.highs[intId], current.lows[intId]);
+    }
+
+    /**
+     * Returns the number of ids registered, which is one more than the largest int id.
+     */
+    public int size() {
+        return size;
+    }
+
+    private synchronized int registerObjectId(long high, int low) {
+        int intId = find(table, high, low);
+        if (intId >= 0) {
+            return intId;
+        }
+        Table current = ensureCapacity();
+        intId = size;
+        current.highs[intId] = high;
+        current.lows[intId] = low;
+        insert(current, high, low, intId);
+        size = intId + 1;
+        return intId;
+    }
+
+    private synchronized int registerOther(String id) {
+        Integer existing = otherIds.get(id);
+        if (existing != null) {
+            return existing;
+        }
+        Table current = ensureCapacity();
+        int intId = size;
+        current.others[intId] = id;
+        size = intId + 1;
+        otherIds.put(id, intId);
+        return intId;
+    }
+
+    private Table ensureCapacity() {
+        Table current = table;
+        // The id arrays hold half as many entries as there are slots, so the slots stay at most half full
+        if (size < current.highs.length) {
+            return current;
+        }
+        Table grown = new Table(current.highs.length * 2);
+        System.arraycopy(current.highs, 0, grown.highs, 0, size);
+        System.arraycopy(current.lows, 0, grown.lows, 0, size);
+        System.arraycopy(current.others, 0, grown.others, 0, size);
+        for (int intId = 0; intId < size; intId++) {
+            if (grown.others[intId] == null) {
+                insert(grown, grown.highs[intId], grown.lows[intId], intId);
+            }
+        }
+        table = grown;
+        return grown;
+    }
+
+    private static void insert(Table table, long high, int low, int intId) {
+        long[] slots = table.slots;
+        int mask = (slots.length >>> 1) - 1;
+        int slot = hash(high, low) & mask;
+        while ((long) SLOTS.getAcquire(slots, 2 * slot + 1) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        // The second word packs the low bits with the int id plus one, so 0 means empty;
+        // it is written last so readers that see it also see the first word
+        slots[2 * slot] = high;
+        SLOTS.setRelease(slots, 2 * slot + 1, ((long) low << 32) | (intId + 1L));
+    }
+
+    private static int find(Table table, long high, int low) {
+        long[] slots = table.slots;
+        int mask = (slots.length >>> 1) - 1;
+        int slot = hash(high, low) & mask;
+        while (true) {
+            long entry = (long) SLOTS.getAcquire(slots, 2 * slot + 1);
+            if (entry == 0) {
+                return -1;
+            }
+            if ((int) (entry >>> 32) == low && slots[2 * slot] == high) {
+                return (int) entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int hash(long high, int low) {
+        long h = (high ^ (low * 0x9E3779B97F4A7C15L)) * 0xD6E8FEB86659FD93L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Parses the first 16 hex digits of a 24 digit id, or returns {@link #NOT_HEX}.
+     */
+    private static long highHex(String id) {
+        if (id.length() != HEX_LENGTH) {
+            return NOT_HEX;
+        }
+        long first = hexWord(id, 0);
+        long second = hexWord(id, 8);
+        return first < 0 || second < 0 ? NOT_HEX : (first << 32) | second;
+    }
+
+    /**
+     * Parses the last 8 hex digits of a 24 digit id, or returns {@link #NOT_HEX}.
+     */
+    private static long lowHex(String id) {
+        if (id.length() != HEX_LENGTH) {
+            return NOT_HEX;
+        }
+        long word = hexWord(id, 16);
+        return word < 0 ? NOT_HEX : word;
+    }
+
+    /**
+     * Parses 8 hex digits into an unsigned 32 bit value, or returns a negative value if one is not a digit.
+     */
+    private static long hexWord(String id, int from) {
+        long value = 0;
+        int invalid = 0;
+        for (int i = from; i < from + 8; i++) {
+            char c = id.charAt(i);
+            int digit = c < HEX_DIGITS.length ? HEX_DIGITS[c] : -1;
+            invalid |= digit;
+            value = (value << 4) | (digit & 0xF);
+        }
+        return invalid < 0 ? -1 : value;
+    }
+
+    private static long high(byte[] bytes) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static int low(byte[] bytes) {
+        int value = 0;
+        for (int i = 8; i < 12; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static String toHex(long high, int low) {
+        char[] chars = new char[HEX_LENGTH];
+        for (int i = 15; i >= 0; i--) {
+            chars[i] = Character.forDigit((int) (high & 0xF), 16);
+            high >>>= 4;
+        }
+        for (int i = HEX_LENGTH - 1; i >= 16; i--) {
+            chars[i] = Character.forDigit(low & 0xF, 16);
+            low >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * One generation of the arrays; replaced as a whole when it fills up.
+     */
+    private static final class Table {
+        private final long[] slots;
+        private final long[] highs;
+        private final int[] lows;
+        private final String[] others;
+
+        private Table(int capacity) {
+            // Two words per slot and twice as many slots as ids
+            this.slots = new long[4 * capacity];
+            this.highs = new long[capacity];
+            this.lows = new int[capacity];
+            this.others = new String[capacity];
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.collabia.bookrec.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread-safe pool of canonical instances, so equal values loaded many times share one object.
+ * Entries are never evicted; use it for small vocabularies such as genres and authors.
+ *
+ * @param <T> the value type; must be immutable with consistent {@code equals} and {@code hashCode}
+ */
+public class Interner<T> {
+
+    private final ConcurrentMap<T, T> pool = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the canonical instance equal to the value, registering the value if it is the first.
+     */
+    public T intern(T value) {
+        if (value == null) {
+            return null;
+        }
+        T existing = pool.putIfAbsent(value, value);
+        return existing == null ? value : existing;
+    }
+
+    public int size() {
+        return pool.size();
+    }
+}
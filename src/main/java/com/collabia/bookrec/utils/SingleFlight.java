@@ -0,0 +1,112 @@
+package com.collabia.bookrec.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical requests into one execution.
+ * <p>
+ * The first caller for a key runs the loader; callers arriving while it is in flight
+ * wait for the same {@link CompletableFuture} instead of repeating the work, and receive
+ * its value or exception. Nothing is cached: once a flight lands, the next call for the key
+ * starts a new one. The counters show how many calls a stampede saved.
+ *
+ * @param <K> the request key
+ * @param <V> the result type; shared between all callers of a flight, so treat it as read-only
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Runs the loader on the calling thread, or waits for the flight already running for the key.
+     *
+     * @throws RuntimeException the exception thrown by the loader of the flight
+     */
+    public V execute(K key, Supplier<V> loader) {
+        calls.increment();
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.increment();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            V value = loader.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Starts the loader on the executor, or joins the flight already running for the key.
+     */
+    public CompletableFuture<V> submit(K key, Supplier<V> loader, Executor executor) {
+        calls.increment();
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.increment();
+            return existing;
+        }
+        CompletableFuture.supplyAsync(loader, executor).whenComplete((value, error) -> {
+            inFlight.remove(key, flight);
+            if (error != null) {
+                flight.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+            } else {
+                flight.complete(value);
+            }
+        });
+        return flight;
+    }
+
+    /**
+     * Returns the number of requests made.
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * Returns the number of requests that ran their loader.
+     */
+    public long getExecutions() {
+        return getCalls() - getCoalesced();
+    }
+
+    /**
+     * Returns the number of requests that joined a flight already in progress.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Returns the number of flights currently in progress.
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
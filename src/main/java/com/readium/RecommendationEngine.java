@@ -1,24 +1,183 @@
 package com.readium;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
 
 public class RecommendationEngine {
-    
+
     public List<Book> getRecommendations(User user, List<Book> books) {
-        return books.stream()
-            .filter(book -> !user.getReadBooks().contains(book.getId()))
-            .sorted(Comparator
-                .comparingInt((Book book) -> -countGenreMatches(book, user))
-                .thenComparingDouble((Book book) -> -book.getRating()))
-            .collect(Collectors.toList());
+        return getRecommendations(user, books, books.size());
+    }
+
+    /**
+     * Returns the best {@code limit} unread books: most favorite genres first, then highest
+     * rating, then their order in {@code books}.
+     * <p>
+     * The read books are hashed once and every book's genre matches and rating are computed
+     * once into primitive arrays. Ratings are replaced by their dense rank, so the two sort
+     * keys fold into one exact {@code long}, and a heap of {@code limit} books keeps the best.
+     */
+    public List<Book> getRecommendations(User user, List<Book> books, int limit) {
+        Set<String> readBooks = user.getReadBooks() == null ? Set.of() : new HashSet<>(user.getReadBooks());
+        // Favorite genres become bits of a mask; genres outside it never match
+        Map<String, Integer> favoriteBits = new HashMap<>();
+        if (user.getFavoriteGenres() != null) {
+            for (String genre : user.getFavoriteGenres()) {
+                if (genre != null) {
+                    favoriteBits.putIfAbsent(genre, favoriteBits.size());
+                }
+            }
+        }
+        long[] genreMask = new long[(favoriteBits.size() + 63) >>> 6];
+
+        int[] ordinals = new int[books.size()];
+        int[] matches = new int[books.size()];
+        long[] ratingKeys = new long[books.size()];
+        int unread = 0;
+        for (int ordinal = 0; ordinal < books.size(); ordinal++) {
+            Book book = books.get(ordinal);
+            if (readBooks.contains(book.getId())) {
+                continue;
+            }
+            Arrays.fill(genreMask, 0L);
+            if (book.getGenres() != null) {
+                for (String genre : book.getGenres()) {
+                    Integer bit = genre == null ? null : favoriteBits.get(genre);
+                    if (bit != null) {
+                        genreMask[bit >>> 6] |= 1L << bit;
+                    }
+                }
+            }
+            ordinals[unread] = ordinal;
+            matches[unread] = bitCount(genreMask);
+            ratingKeys[unread] = sortableBits(-book.getRating());
+            unread++;
+        }
+
+        // Rank 0 is the best rating; equal ratings share a rank, as Double.compare sees them
+        long[] distinctKeys = Arrays.copyOf(ratingKeys, unread);
+        Arrays.sort(distinctKeys);
+        int distinct = 0;
+        for (int i = 0; i < unread; i++) {
+            if (distinct == 0 || distinctKeys[i] != distinctKeys[distinct - 1]) {
+                distinctKeys[distinct++] = distinctKeys[i];
+            }
+        }
+
+        BestBooks best = new BestBooks(Math.max(0, Math.min(limit, unread)));
+        for (int i = 0; i < unread; i++) {
+            int ratingRank = Arrays.binarySearch(distinctKeys, 0, distinct, ratingKeys[i]);
+            best.offer((long) matches[i] * distinct + (distinct - 1 - ratingRank), ordinals[i]);
+        }
+
+        int[] selected = best.toSortedOrdinals();
+        List<Book> recommendations = new ArrayList<>(selected.length);
+        for (int ordinal : selected) {
+            recommendations.add(books.get(ordinal));
+        }
+        return recommendations;
     }
-    
-    private int countGenreMatches(Book book, User user) {
-        return (int) book.getGenres().stream()
-            .filter(genre -> user.getFavoriteGenres().contains(genre))
-            .count();
+
+    private static int bitCount(long[] mask) {
+        int count = 0;
+        for (long word : mask) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Maps a double to a long whose signed order is the order of {@link Double#compare}.
+     */
+    private static long sortableBits(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * Keeps the {@code capacity} best books in a binary min-heap whose root is the worst kept
+     * book: the lowest key, or of equal keys the latest in the list.
+     */
+    private static final class BestBooks {
+        private final long[] keys;
+        private final int[] ordinals;
+        private int size;
+
+        private BestBooks(int capacity) {
+            this.keys = new long[capacity];
+            this.ordinals = new int[capacity];
+        }
+
+        private void offer(long key, int ordinal) {
+            if (size < keys.length) {
+                keys[size] = key;
+                ordinals[size] = ordinal;
+                siftUp(size++);
+            } else if (size > 0 && isBetter(key, ordinal, keys[0], ordinals[0])) {
+                keys[0] = key;
+                ordinals[0] = ordinal;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * Empties the heap into the kept ordinals, best first.
+         */
+        private int[] toSortedOrdinals() {
+            int[] sorted = new int[size];
+            while (size > 0) {
+                sorted[size - 1] = ordinals[0];
+                size--;
+                keys[0] = keys[size];
+                ordinals[0] = ordinals[size];
+                siftDown(0);
+            }
+            return sorted;
+        }
+
+        private static boolean isBetter(long key, int ordinal, long otherKey, int otherOrdinal) {
+            return key > otherKey || (key == otherKey && ordinal < otherOrdinal);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!isBetter(keys[parent], ordinals[parent], keys[i], ordinals[i])) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int worst = i;
+                for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+                    if (isBetter(keys[worst], ordinals[worst], keys[child], ordinals[child])) {
+                        worst = child;
+                    }
+                }
+                if (worst == i) {
+                    return;
+                }
+                swap(i, worst);
+                i = worst;
+            }
+        }
+
+        private void swap(int a, int b) {
+            long key = keys[a];
+            keys[a] = keys[b];
+            keys[b] = key;
+            int ordinal = ordinals[a];
+            ordinals[a] = ordinals[b];
+            ordinals[b] = ordinal;
+        }
     }
 }
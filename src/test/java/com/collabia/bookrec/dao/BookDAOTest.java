@@ -0,0 +1,87 @@
+package com.collabia.bookrec.dao;
+
+import org.junit.jupiter.api.Test;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonObjectId;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import com.mongodb.MongoClientSettings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookDAOTest {
+
+    @Test
+    void testTopScoredPipelineFiltersReadAndHiddenBooksFirst() {
+        ObjectId read = new ObjectId();
+        ObjectId hidden = new ObjectId();
+
+        List<BsonDocument> stages = render(BookDAO.topScoredPipeline(Arrays.asList(read.toHexString(), "not-hex"),
+                Arrays.asList(hidden.toHexString()), Arrays.asList("Fantasy"), Arrays.asList("Author X"), 5));
+
+        assertEquals(Arrays.asList("$match", "$addFields", "$sort", "$limit", "$project"), operators(stages));
+        BsonDocument excluded = stages.get(0).getDocument("$match").getDocument("_id");
+        assertEquals(new BsonArray(Arrays.asList(new BsonObjectId(read), new BsonObjectId(hidden))),
+                excluded.getArray("$nin"));
+        // Best score first, ties in _id order like the catalog
+        BsonDocument sort = stages.get(2).getDocument("$sort");
+        assertEquals(Arrays.asList("_score", "_id"), new ArrayList<>(sort.keySet()));
+        assertEquals(-1, sort.getNumber("_score").intValue());
+        assertEquals(1, sort.getNumber("_id").intValue());
+        assertEquals(new BsonInt32(5), stages.get(3).get("$limit"));
+        assertEquals(0, stages.get(4).getDocument("$project").getNumber("_score").intValue());
+    }
+
+    @Test
+    void testTopScoredPipelineWithoutReadBooksScoresEverything() {
+        List<BsonDocument> stages = render(BookDAO.topScoredPipeline(new ArrayList<>(), null,
+                new ArrayList<>(), new ArrayList<>(), 3));
+
+        assertEquals(Arrays.asList("$addFields", "$sort", "$limit", "$project"), operators(stages));
+    }
+
+    @Test
+    void testTopScoredPipelineTakesUserValuesLiterally() {
+        List<BsonDocument> stages = render(BookDAO.topScoredPipeline(new ArrayList<>(), new ArrayList<>(),
+                Arrays.asList("$genres"), Arrays.asList("$author"), 3));
+
+        String score = stages.get(0).getDocument("$addFields").toJson();
+        assertTrue(score.contains("{\"$literal\": [\"$genres\"]}"), score);
+        assertTrue(score.contains("{\"$literal\": [\"$author\"]}"), score);
+    }
+
+    @Test
+    void testFindTopScoredWithoutLimitQueriesNothing() {
+        // No collection behind it: any query would fail
+        BookDAO bookDAO = new BookDAO(null) {
+        };
+
+        assertTrue(bookDAO.findTopScored(Arrays.asList(new ObjectId().toHexString()), new ArrayList<>(),
+                Arrays.asList("Fantasy"), 0).isEmpty());
+    }
+
+    private static List<BsonDocument> render(List<Bson> pipeline) {
+        List<BsonDocument> stages = new ArrayList<>();
+        for (Bson stage : pipeline) {
+            stages.add(stage.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry()));
+        }
+        return stages;
+    }
+
+    private static List<String> operators(List<BsonDocument> stages) {
+        List<String> operators = new ArrayList<>();
+        for (BsonDocument stage : stages) {
+            operators.add(stage.getFirstKey());
+        }
+        return operators;
+    }
+}
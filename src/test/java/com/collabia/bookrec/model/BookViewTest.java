@@ -0,0 +1,98 @@
+package com.collabia.bookrec.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookViewTest {
+
+    @Test
+    void testViewKeepsEveryValueOfTheBook() {
+        Book book = new Book("v1", "One", "Author X", new ArrayList<>(Arrays.asList("Fantasy", null)), 4.5);
+        book.setAverageRating(3.9);
+        book.setCoverPath("/covers/v1.png");
+        book.setCoverImageUrl("https://covers.example.org/v1.jpg");
+        book.setDescription("A journey across the world, told twice. ".repeat(20) + "Épilogue ✓");
+        book.setUpdatedAt(new Date(1_700_000_000_123L));
+
+        Book copy = BookView.of(book).toBook();
+
+        assertEquals(book.getId(), copy.getId());
+        assertEquals(book.getTitle(), copy.getTitle());
+        assertEquals(book.getAuthor(), copy.getAuthor());
+        assertEquals(book.getGenres(), copy.getGenres());
+        assertEquals(book.getRating(), copy.getRating());
+        assertEquals(book.getAverageRating(), copy.getAverageRating());
+        assertEquals(book.getCoverPath(), copy.getCoverPath());
+        assertEquals(book.getCoverImageUrl(), copy.getCoverImageUrl());
+        assertEquals(book.getDescription(), copy.getDescription());
+        assertEquals(book.getUpdatedAt(), copy.getUpdatedAt());
+    }
+
+    @Test
+    void testLegacyFieldsAreUsedOnlyWhenTheNewOnesAreMissing() {
+        Book legacy = new Book();
+        legacy.setGenre("Horror");
+        legacy.setImageUrl("https://covers.example.org/legacy.jpg");
+
+        BookView view = BookView.of(legacy);
+
+        assertEquals(Arrays.asList("Horror"), view.genres());
+        assertEquals("https://covers.example.org/legacy.jpg", view.coverImageUrl());
+        assertEquals(BookView.NO_TIMESTAMP, view.updatedAt());
+        assertNull(view.descriptionText());
+        assertNull(view.toBook().getUpdatedAt());
+
+        legacy.setGenres(Arrays.asList("Poetry"));
+        legacy.setCoverImageUrl("https://covers.example.org/new.jpg");
+        assertEquals(Arrays.asList("Poetry"), BookView.of(legacy).genres());
+        assertEquals("https://covers.example.org/new.jpg", BookView.of(legacy).coverImageUrl());
+    }
+
+    @Test
+    void testNamesAndGenreListsAreShared() {
+        BookView first = BookView.of(new Book("v1", "One", new String("Author X"),
+                Arrays.asList(new String("Fantasy"), new String("Horror")), 4.0));
+        BookView second = BookView.of(new Book("v2", "Two", new String("Author X"),
+                Arrays.asList(new String("Fantasy"), new String("Horror")), 3.0));
+
+        assertSame(first.author(), second.author());
+        assertSame(first.genres(), second.genres());
+        assertThrows(UnsupportedOperationException.class, () -> first.genres().add("Poetry"));
+    }
+
+    @Test
+    void testInternNamesReplacesNamesInPlace() {
+        List<String> names = new ArrayList<>(Arrays.asList(new String("Science Fiction"), null));
+        List<String> fixed = List.of(new String("Science Fiction"));
+
+        BookView.internNames(names);
+        BookView.internNames(fixed);
+
+        assertSame(BookView.internName("Science Fiction"), names.get(0));
+        assertNull(names.get(1));
+        assertEquals(Arrays.asList("Science Fiction"), fixed);
+    }
+
+    @Test
+    void testLongDescriptionsAreStoredSmaller() {
+        String description = "the story of a young family and their first journey across the city ".repeat(10);
+
+        Book book = new Book("v1", "One", "Author", null, 3.0);
+        book.setDescription(description);
+
+        BookView view = BookView.of(book);
+
+        assertEquals(description, view.descriptionText());
+        assertTrue(view.description().storedLength() < description.length());
+    }
+}
@@ -0,0 +1,171 @@
+package com.collabia.bookrec.service;
+
+import org.junit.jupiter.api.Test;
+
+import com.collabia.bookrec.dao.BookDAO;
+import com.collabia.bookrec.model.Book;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookCatalogTest {
+
+    private static final Instant START = Instant.parse("2024-03-01T10:00:00Z");
+
+    @Test
+    void testAddingBooksKeepsTheirGenreLists() {
+        List<String> genres = new ArrayList<>(Arrays.asList(new String("Fantasy"), null, new String("Horror")));
+        List<String> fixedGenres = List.of(new String("Fantasy"));
+        Book book = new Book("c1", "One", new String("Author X"), genres, 4.0);
+        Book fixed = new Book("c2", "Two", "Author Y", fixedGenres, 3.0);
+        Book other = new Book("c3", "Three", "Author X", new ArrayList<>(Arrays.asList("Fantasy")), 3.0);
+
+        new BookCatalog(Arrays.asList(book, fixed, other));
+
+        // Same lists, still modifiable, nulls kept, equal names shared
+        assertSame(genres, book.getGenres());
+        assertSame(fixedGenres, fixed.getGenres());
+        assertEquals(Arrays.asList("Fantasy", null, "Horror"), book.getGenres());
+        assertSame(book.getGenres().get(0), other.getGenres().get(0));
+        assertSame(book.getAuthor(), other.getAuthor());
+        book.getGenres().add("Poetry");
+    }
+
+    @Test
+    void testRefreshBeforeLoadingLoadsEverything() {
+        StoredBooks stored = new StoredBooks();
+        stored.put(book("r1", "One", 0));
+        stored.put(book("r2", "Two", 5));
+        BookCatalog catalog = new BookCatalog();
+
+        assertEquals(0, catalog.refreshChanges(stored));
+
+        assertTrue(catalog.isLoaded());
+        assertEquals(Arrays.asList("One", "Two"), titles(catalog));
+        assertEquals(START.plusSeconds(5), catalog.getWatermark());
+        assertNull(stored.lastSince);
+    }
+
+    @Test
+    void testRefreshAppendsAndReplacesChangedBooks() {
+        StoredBooks stored = new StoredBooks();
+        stored.put(book("r1", "One", 0));
+        stored.put(book("r2", "Two", 60));
+        stored.put(book("r3", "Three", 120));
+        BookCatalog catalog = new BookCatalog();
+        catalog.ensureLoaded(stored);
+        long version = catalog.getVersion();
+
+        stored.put(book("r2", "Two, revised", 130));
+        stored.put(book("r4", "Four", 140));
+
+        assertEquals(2, catalog.refreshChanges(stored));
+
+        // The query reaches back the overlap before the newest stamp seen
+        assertEquals(START.plusSeconds(120).minus(BookCatalog.REFRESH_OVERLAP), stored.lastSince);
+        assertEquals(Arrays.asList("One", "Two, revised", "Three", "Four"), titles(catalog));
+        assertEquals(1, catalog.ordinalOf("r2"));
+        assertEquals(START.plusSeconds(140), catalog.getWatermark());
+        assertTrue(catalog.getVersion() > version);
+    }
+
+    @Test
+    void testRefreshSkipsChangesAlreadyApplied() {
+        StoredBooks stored = new StoredBooks();
+        stored.put(book("r1", "One", 0));
+        BookCatalog catalog = new BookCatalog();
+        catalog.ensureLoaded(stored);
+        stored.put(book("r2", "Two", 10));
+        assertEquals(1, catalog.refreshChanges(stored));
+        long version = catalog.getVersion();
+
+        // Both books are inside the overlap and come back unchanged
+        assertEquals(0, catalog.refreshChanges(stored));
+        assertEquals(version, catalog.getVersion());
+
+        // A write that became visible late, stamped before the watermark, is still picked up
+        stored.put(book("r3", "Three", 5));
+        assertEquals(1, catalog.refreshChanges(stored));
+        assertEquals(Arrays.asList("One", "Two", "Three"), titles(catalog));
+        assertEquals(START.plusSeconds(10), catalog.getWatermark());
+    }
+
+    private static Book book(String id, String title, long seconds) {
+        Book book = new Book(id, title, "Author", Arrays.asList("Fantasy"), 3.0);
+        book.setUpdatedAt(Date.from(START.plusSeconds(seconds)));
+        return book;
+    }
+
+    private static List<String> titles(BookCatalog catalog) {
+        List<String> titles = new ArrayList<>();
+        for (Book book : catalog.getBooks()) {
+            titles.add(book.getTitle());
+        }
+        return titles;
+    }
+
+    /**
+     * Serves books from memory the way the {@code books} collection does, in insertion order.
+     */
+    private static final class StoredBooks extends BookDAO {
+        final List<Book> changes = new ArrayList<>();
+        Instant lastSince;
+
+        StoredBooks() {
+            super(null);
+        }
+
+        void put(Book book) {
+            changes.add(book);
+        }
+
+        @Override
+        public List<Book> findAll() {
+            return latest(Instant.EPOCH);
+        }
+
+        @Override
+        public List<Book> findChangedSince(Instant since) {
+            lastSince = since;
+            return latest(since);
+        }
+
+        /**
+         * Returns the latest version of every book stamped at or after {@code since}, in first-insert order.
+         */
+        private List<Book> latest(Instant since) {
+            List<String> ids = new ArrayList<>();
+            List<Book> books = new ArrayList<>();
+            for (Book book : changes) {
+                int position = ids.indexOf(book.getId());
+                if (position < 0) {
+                    ids.add(book.getId());
+                    books.add(book);
+                } else {
+                    books.set(position, book);
+                }
+            }
+            books.removeIf(book -> book.getUpdatedAt().toInstant().isBefore(since));
+            return copies(books);
+        }
+
+        private static List<Book> copies(List<Book> books) {
+            List<Book> copies = new ArrayList<>();
+            for (Book book : books) {
+                Book copy = new Book(book.getId(), book.getTitle(), book.getAuthor(),
+                        new ArrayList<>(book.getGenres()), book.getRating());
+                copy.setUpdatedAt(book.getUpdatedAt());
+                copies.add(copy);
+            }
+            return copies;
+        }
+    }
+}
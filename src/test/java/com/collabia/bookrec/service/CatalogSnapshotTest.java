@@ -0,0 +1,238 @@
+package com.collabia.bookrec.service;
+
+import org.junit.jupiter.api.Test;
+
+import com.collabia.bookrec.model.Book;
+import com.collabia.bookrec.utils.IdRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogSnapshotTest {
+
+    @Test
+    void testColumnsMatchTheBooks() {
+        Random random = new Random(3);
+        List<Book> books = new ArrayList<>();
+        // Several chunks, the last one partial
+        for (int i = 0; i < 2_500; i++) {
+            books.add(randomBook(random, i));
+        }
+
+        CatalogSnapshot snapshot = CatalogSnapshot.of(books);
+
+        assertEquals(books.size(), snapshot.size());
+        for (int ordinal = 0; ordinal < books.size(); ordinal++) {
+            Book book = books.get(ordinal);
+            assertSame(book, snapshot.getBook(ordinal));
+            assertEquals(book.getRating(), snapshot.getRating(ordinal));
+            assertEquals(book.getAuthor(), snapshot.getAuthorName(snapshot.getAuthorId(ordinal)));
+            Set<String> genres = book.getGenres() == null ? new HashSet<>() : new HashSet<>(book.getGenres());
+            genres.remove(null);
+            for (int bit = 0; bit < snapshot.getGenreCount(); bit++) {
+                long word = snapshot.getGenreMaskWord(ordinal, bit >>> 6);
+                assertEquals(genres.contains(snapshot.getGenreDictionary().genreAt(bit)), (word & (1L << bit)) != 0);
+            }
+        }
+        // The first book with an id wins it
+        assertEquals(books.indexOf(snapshot.findById("dup0")), snapshot.ordinalOf("dup0"));
+        assertEquals(-1, snapshot.ordinalOf("missing"));
+
+        // Highest rating first, ties in catalog order
+        List<Integer> expected = new ArrayList<>();
+        for (int ordinal = 0; ordinal < books.size(); ordinal++) {
+            expected.add(ordinal);
+        }
+        expected.sort(Comparator.comparingDouble((Integer ordinal) -> -books.get(ordinal).getRating())
+                .thenComparingInt(ordinal -> ordinal));
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), snapshot.getPopularityOrder());
+    }
+
+    @Test
+    void testAppendedSnapshotsMatchFullBuilds() {
+        Random random = new Random(42);
+        List<Book> books = new ArrayList<>();
+        CatalogSnapshot snapshot = CatalogSnapshot.of(books, 0);
+        List<CatalogSnapshot> history = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        for (int batch = 0; batch < 60; batch++) {
+            List<Book> appended = new ArrayList<>();
+            int count = 1 + random.nextInt(batch % 10 == 0 ? 400 : 20);
+            for (int i = 0; i < count; i++) {
+                appended.add(randomBook(random, books.size() + appended.size()));
+            }
+            if (batch % 7 == 3) {
+                // Popularity order known before the append, so the next one merges into it
+                snapshot.getPopularityOrder();
+            }
+            books.addAll(appended);
+            snapshot = snapshot.withAppended(appended, batch + 1);
+            history.add(snapshot);
+            sizes.add(books.size());
+            assertSameAs(CatalogSnapshot.of(books, batch + 1), snapshot);
+        }
+
+        // Older snapshots still show only their own books
+        for (int i = 0; i < history.size(); i++) {
+            assertSameAs(CatalogSnapshot.of(books.subList(0, sizes.get(i))), history.get(i));
+        }
+    }
+
+    @Test
+    void testChangedSnapshotsMatchFullBuilds() {
+        Random random = new Random(7);
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            books.add(randomBook(random, i));
+        }
+        CatalogSnapshot snapshot = CatalogSnapshot.of(books, 0);
+        CatalogSnapshot first = snapshot;
+        List<Book> firstBooks = new ArrayList<>(books);
+        for (int batch = 0; batch < 40; batch++) {
+            if (batch % 5 == 0) {
+                snapshot.getPopularityOrder();
+            }
+            int[] ordinals = new int[random.nextInt(batch % 9 == 0 ? 1200 : 8)];
+            List<Book> replacements = new ArrayList<>();
+            for (int i = 0; i < ordinals.length; i++) {
+                // Distinct ordinals, as the catalog passes them
+                do {
+                    ordinals[i] = random.nextInt(books.size());
+                } while (contains(ordinals, i, ordinals[i]));
+                Book replacement = randomBook(random, books.size());
+                replacement.setId(books.get(ordinals[i]).getId());
+                replacements.add(replacement);
+                books.set(ordinals[i], replacement);
+            }
+            List<Book> appended = new ArrayList<>();
+            for (int i = random.nextInt(5); i > 0; i--) {
+                appended.add(randomBook(random, books.size() + appended.size()));
+            }
+            books.addAll(appended);
+
+            snapshot = snapshot.withChanges(ordinals, replacements, appended, batch + 1);
+
+            assertSameAs(CatalogSnapshot.of(books), snapshot);
+        }
+        assertSameAs(CatalogSnapshot.of(firstBooks), first);
+    }
+
+    @Test
+    void testSecondDerivationDoesNotChangeTheFirst() {
+        CatalogSnapshot base = CatalogSnapshot.of(Arrays.asList(
+                new Book("a1", "One", "Author X", Arrays.asList("Fantasy"), 4.0)), 1);
+        List<Book> first = Arrays.asList(new Book("a2", "Two", "Author Y", Arrays.asList("Horror"), 3.0));
+        List<Book> second = Arrays.asList(new Book("a3", "Three", "Author Z", Arrays.asList("Poetry"), 5.0));
+
+        CatalogSnapshot left = base.withAppended(first, 2);
+        CatalogSnapshot right = base.withAppended(second, 2);
+
+        assertEquals("Two", left.getBook(1).getTitle());
+        assertEquals("Three", right.getBook(1).getTitle());
+        assertEquals(-1, left.getGenreId("Poetry"));
+        assertEquals(-1, right.getAuthorId("Author Y"));
+        assertEquals(1, left.getGenreIndex().size("Horror"));
+        assertEquals(0, left.getGenreIndex().size("Poetry"));
+        assertEquals(1, base.size());
+    }
+
+    @Test
+    void testGenresBeyondTheMaskWidthRebuild() {
+        List<Book> books = new ArrayList<>();
+        books.add(new Book("g0", "Zero", "Author", Arrays.asList("G0"), 3.0));
+        CatalogSnapshot snapshot = CatalogSnapshot.of(books, 1);
+        List<Book> appended = new ArrayList<>();
+        for (int i = 1; i < 100; i++) {
+            appended.add(new Book("g" + i, "Book " + i, "Author", Arrays.asList("G" + i, "G0"), i % 5));
+        }
+        books.addAll(appended);
+
+        CatalogSnapshot next = snapshot.withAppended(appended, 2);
+
+        assertEquals(2, next.getMaskWords());
+        assertSameAs(CatalogSnapshot.of(books), next);
+    }
+
+    @Test
+    void testIdLookupCoversOnlyTheSnapshotsBooks() {
+        for (int i = 0; i < 5000; i++) {
+            IdRegistry.forBooks().register(String.format("%024x", 0x5eed0000L + i));
+        }
+        List<Book> books = new ArrayList<>();
+        CatalogSnapshot snapshot = CatalogSnapshot.of(books);
+        for (int i = 0; i < 3000; i += 2) {
+            Book book = new Book(String.format("%024x", 0x5eed0000L + i), "Book " + i, "Author", null, 3.0);
+            books.add(book);
+            snapshot = snapshot.withAppended(Arrays.asList(book), i);
+        }
+
+        for (int i = 0; i < 5000; i++) {
+            String id = String.format("%024x", 0x5eed0000L + i);
+            assertEquals(i < 3000 && i % 2 == 0 ? i / 2 : -1, snapshot.ordinalOf(id));
+        }
+        assertEquals(-1, snapshot.ordinalOf("not-a-book"));
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Book randomBook(Random random, int number) {
+        // Repeated ids and null fields exercise the first-wins id map and the null author id
+        String id = random.nextInt(20) == 0 ? "dup" + random.nextInt(5) : "b" + number;
+        String author = random.nextInt(15) == 0 ? null : "Author " + random.nextInt(300);
+        List<String> genres = new ArrayList<>();
+        int genreCount = random.nextInt(4);
+        for (int g = 0; g < genreCount; g++) {
+            genres.add(random.nextInt(30) == 0 ? null : "Genre " + random.nextInt(90));
+        }
+        double rating = random.nextInt(11) / 2.0;
+        return new Book(id, "Title " + number, author, random.nextInt(20) == 0 ? null : genres, rating);
+    }
+
+    private static void assertSameAs(CatalogSnapshot expected, CatalogSnapshot actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getBooks(), actual.getBooks());
+        assertArrayEquals(expected.getPopularityOrder(), actual.getPopularityOrder());
+        for (int ordinal = 0; ordinal < expected.size(); ordinal++) {
+            Book book = expected.getBook(ordinal);
+            assertEquals(expected.ordinalOf(book.getId()), actual.ordinalOf(book.getId()));
+            assertEquals(expected.getRating(ordinal), actual.getRating(ordinal));
+            assertEquals(expected.getAuthorName(expected.getAuthorId(ordinal)),
+                    actual.getAuthorName(actual.getAuthorId(ordinal)));
+            for (int bit = 0; bit < expected.getGenreCount(); bit++) {
+                String genre = expected.getGenreDictionary().genreAt(bit);
+                long expectedBit = expected.getGenreMaskWord(ordinal, bit >>> 6) & (1L << bit);
+                int actualBit = actual.getGenreId(genre);
+                long actualMaskBit = actual.getGenreMaskWord(ordinal, actualBit >>> 6) & (1L << actualBit);
+                assertEquals(expectedBit != 0, actualMaskBit != 0);
+            }
+        }
+        // A changed snapshot may still know genres and authors no book has any more
+        for (int bit = 0; bit < actual.getGenreCount(); bit++) {
+            String genre = actual.getGenreDictionary().genreAt(bit);
+            assertArrayEquals(expected.getGenreIndex().get(genre), actual.getGenreIndex().get(genre));
+        }
+        for (int author = 0; author < actual.getAuthorCount(); author++) {
+            String name = actual.getAuthorName(author);
+            assertArrayEquals(expected.getAuthorIndex().get(name), actual.getAuthorIndex().get(name));
+        }
+        assertTrue(actual.getGenreCount() >= expected.getGenreCount());
+        assertTrue(actual.getAuthorCount() >= expected.getAuthorCount());
+    }
+}
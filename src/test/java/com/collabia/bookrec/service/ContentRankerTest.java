@@ -0,0 +1,84 @@
+package com.collabia.bookrec.service;
+
+import org.junit.jupiter.api.Test;
+
+import com.collabia.bookrec.model.Book;
+import com.collabia.bookrec.model.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Checks that {@link ContentRanker#create()} ranks like the scalar {@link ContentRanker}. With
+ * {@code --add-modules jdk.incubator.vector} and the {@code vector-api} profile that compares
+ * the {@link VectorContentRanker}; otherwise both sides are scalar.
+ */
+class ContentRankerTest {
+
+    @Test
+    void testCreatedRankerMatchesScalar() {
+        Random random = new Random(42);
+        // More than 64 genres needs a second mask word
+        for (int genreCount : new int[] {8, 40, 100}) {
+            CatalogSnapshot snapshot = randomSnapshot(random, 5_000, genreCount);
+            for (int round = 0; round < 10; round++) {
+                User user = randomUser(random, snapshot, genreCount);
+                RecommendationContext context = RecommendationPipeline.createFullScan()
+                        .generate(user, 10, snapshot, RecommendationPipeline.noDeadline());
+                // Every candidate kept, so any score difference changes the order
+                int candidates = context.getCandidateCount();
+                for (int limit : new int[] {1, 10, candidates}) {
+                    assertArrayEquals(rank(new ContentRanker(), context, limit, new Random(round)),
+                            rank(ContentRanker.create(), context, limit, new Random(round)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Ranks the candidates in batches of random sizes, so batches end off the vector length.
+     */
+    private static int[] rank(CandidateRanker ranker, RecommendationContext context, int limit, Random sizes) {
+        TopKSelector topK = new TopKSelector(Math.max(1, limit));
+        int candidates = context.getCandidateCount();
+        for (int start = 0; start < candidates; ) {
+            int end = Math.min(candidates, start + 1 + sizes.nextInt(300));
+            CandidateFeatures features = new CandidateFeatures(end - start);
+            features.fetch(context, start, end);
+            ranker.rank(features, topK);
+            start = end;
+        }
+        return topK.toSortedOrdinals();
+    }
+
+    private static CatalogSnapshot randomSnapshot(Random random, int size, int genreCount) {
+        List<Book> books = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            List<String> genres = new ArrayList<>();
+            for (int g = random.nextInt(5); g > 0; g--) {
+                genres.add("Genre " + random.nextInt(genreCount));
+            }
+            books.add(new Book(String.format("%024x", 0xc0e0000L + i), "Title " + i,
+                    "Author " + random.nextInt(size / 5), genres, random.nextInt(11) / 2.0));
+        }
+        return CatalogSnapshot.of(books);
+    }
+
+    private static User randomUser(Random random, CatalogSnapshot snapshot, int genreCount) {
+        User user = new User();
+        List<String> genres = new ArrayList<>();
+        for (int g = random.nextInt(genreCount / 2 + 1); g > 0; g--) {
+            genres.add("Genre " + random.nextInt(genreCount));
+        }
+        user.setFavoriteGenres(genres);
+        List<String> readBooks = new ArrayList<>();
+        for (int r = random.nextInt(40); r > 0; r--) {
+            readBooks.add(snapshot.getBook(random.nextInt(snapshot.size())).getId());
+        }
+        user.setReadBooks(readBooks);
+        return user;
+    }
+}
@@ -0,0 +1,72 @@
+package com.collabia.bookrec.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GenreDictionaryTest {
+
+    @Test
+    void testBitsAreAssignedInOrder() {
+        GenreDictionary dictionary = new GenreDictionary(Arrays.asList("Fantasy", "Horror", "Fantasy", null));
+
+        assertEquals(2, dictionary.size());
+        assertEquals(0, dictionary.bitOf("Fantasy"));
+        assertEquals(1, dictionary.add("Horror"));
+        assertEquals(2, dictionary.add("Poetry"));
+        assertEquals(-1, dictionary.add(null));
+        assertEquals(-1, dictionary.bitOf("Romance"));
+        assertEquals("Poetry", dictionary.genreAt(2));
+        // Genres listed twice and unknown genres add nothing to a mask
+        assertArrayEquals(new long[] {0b101}, dictionary.encode(Arrays.asList("Fantasy", "Poetry", "Poetry", "Romance")));
+    }
+
+    @Test
+    void testCopyDoesNotChangeTheOriginal() {
+        GenreDictionary dictionary = new GenreDictionary(Arrays.asList("Fantasy"));
+
+        GenreDictionary copy = dictionary.copy();
+        copy.add("Horror");
+
+        assertEquals(0, copy.bitOf("Fantasy"));
+        assertEquals(1, dictionary.size());
+        assertEquals(-1, dictionary.bitOf("Horror"));
+    }
+
+    @Test
+    void testOverlapCountsSharedGenresAcrossWords() {
+        Random random = new Random(5);
+        GenreDictionary dictionary = new GenreDictionary();
+        for (int i = 0; i < 150; i++) {
+            dictionary.add("Genre " + i);
+        }
+        assertEquals(3, dictionary.words());
+
+        for (int round = 0; round < 200; round++) {
+            List<String> left = randomGenres(random);
+            List<String> right = randomGenres(random);
+            Set<String> shared = new HashSet<>(left);
+            shared.retainAll(right);
+            // Genres the dictionary does not know are not encoded
+            shared.removeIf(genre -> dictionary.bitOf(genre) < 0);
+
+            assertEquals(shared.size(), GenreDictionary.overlap(dictionary.encode(left), dictionary.encode(right)));
+        }
+    }
+
+    private static List<String> randomGenres(Random random) {
+        List<String> genres = new ArrayList<>();
+        for (int g = random.nextInt(20); g > 0; g--) {
+            genres.add("Genre " + random.nextInt(160));
+        }
+        return genres;
+    }
+}
@@ -0,0 +1,224 @@
+package com.collabia.bookrec.service;
+
+import org.junit.jupiter.api.Test;
+
+import org.bson.types.ObjectId;
+
+import com.collabia.bookrec.model.Book;
+import com.collabia.bookrec.model.Rating;
+import com.collabia.bookrec.model.User;
+import com.collabia.bookrec.utils.IdRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ItemBasedRecommenderTest {
+
+    private static final int BOOKS = 60;
+    private static final int USERS = 80;
+    private static final int NEIGHBORS = 8;
+
+    @Test
+    void testNeighborsMatchBruteForceSimilarity() {
+        List<Rating> ratings = randomRatings(new Random(42));
+        ItemNeighborIndex index = new ItemSimilarityJob(null, null, NEIGHBORS).computeNeighbors(ratings);
+        Map<String, Map<String, Double>> similarities = bruteForceSimilarities(ratings);
+
+        for (String book : similarities.keySet()) {
+            int[] neighbors = index.getNeighbors(IdRegistry.forBooks().find(book));
+            float[] neighborSimilarities = index.getSimilarities(IdRegistry.forBooks().find(book));
+            List<Double> positive = similarities.get(book).entrySet().stream()
+                    .filter(entry -> !entry.getKey().equals(book) && entry.getValue() > 1e-9)
+                    .map(Map.Entry::getValue).sorted((a, b) -> Double.compare(b, a)).collect(Collectors.toList());
+
+            assertEquals(Math.min(NEIGHBORS, positive.size()), neighbors.length, book);
+            for (int n = 0; n < neighbors.length; n++) {
+                String neighbor = IdRegistry.forBooks().idOf(neighbors[n]);
+                assertEquals(similarities.get(book).get(neighbor), neighborSimilarities[n], 1e-5, book + " " + neighbor);
+                // Most similar first, and nothing left out scores higher
+                assertEquals(positive.get(n), neighborSimilarities[n], 1e-5, book);
+            }
+        }
+    }
+
+    @Test
+    void testRecommendationsMatchBruteForceScores() {
+        Random random = new Random(7);
+        List<Rating> ratings = randomRatings(random);
+        ItemNeighborIndex index = new ItemSimilarityJob(null, null, NEIGHBORS).computeNeighbors(ratings);
+        BookCatalog catalog = new BookCatalog(books());
+        ItemBasedRecommender recommender = new ItemBasedRecommender(index, catalog, null);
+
+        for (int u = 0; u < 20; u++) {
+            User user = new User();
+            user.setId(new ObjectId());
+            List<Rating> userRatings = new ArrayList<>();
+            for (int r = 0; r < 6; r++) {
+                userRatings.add(new Rating("me", "cf" + random.nextInt(BOOKS), 1 + random.nextInt(5)));
+            }
+            user.getReadBooks().add("cf" + random.nextInt(BOOKS));
+            UserBookSets.markHidden(user, "cf" + random.nextInt(BOOKS));
+
+            List<String> expected = bruteForceRecommendations(index, catalog, user, userRatings, 10);
+
+            assertEquals(expected, ids(recommender.recommend(user, userRatings, 10)));
+        }
+    }
+
+    @Test
+    void testRatedReadHiddenAndMissingBooksAreExcluded() {
+        // cf-a, cf-b, cf-c, cf-d and cf-gone were all rated highly by the readers of cf-x
+        List<Rating> ratings = new ArrayList<>();
+        for (int u = 0; u < 4; u++) {
+            String reader = "ex-reader" + u;
+            ratings.add(new Rating(reader, "cf-x", 5));
+            for (String book : Arrays.asList("cf-a", "cf-b", "cf-c", "cf-d", "cf-gone")) {
+                ratings.add(new Rating(reader, book, 5));
+            }
+            ratings.add(new Rating(reader, "cf-low", 1));
+        }
+        ItemNeighborIndex index = new ItemSimilarityJob(null, null, NEIGHBORS).computeNeighbors(ratings);
+        BookCatalog catalog = new BookCatalog(Arrays.asList(book("cf-x"), book("cf-a"), book("cf-b"),
+                book("cf-c"), book("cf-d"), book("cf-low")));
+        ItemBasedRecommender recommender = new ItemBasedRecommender(index, catalog, null);
+        User user = new User();
+        user.setId(new ObjectId());
+        user.getReadBooks().add("cf-b");
+        UserBookSets.markHidden(user, "cf-c");
+
+        List<Book> recommendations = recommender.recommend(user,
+                Arrays.asList(new Rating("me", "cf-x", 5), new Rating("me", "cf-a", 2)), 10);
+
+        // cf-a rated, cf-b read, cf-c hidden, cf-gone not in the catalog
+        assertEquals(Arrays.asList("cf-d"), ids(recommendations));
+        // Ratings below the minimum bring no neighbors
+        assertTrue(recommender.recommend(user, Arrays.asList(new Rating("me", "cf-x", 3)), 10).isEmpty());
+    }
+
+    private static List<Rating> randomRatings(Random random) {
+        List<Rating> ratings = new ArrayList<>();
+        for (int u = 0; u < USERS; u++) {
+            int count = 2 + random.nextInt(10);
+            for (int r = 0; r < count; r++) {
+                // A few popular books make dense rows; repeats exercise the averaging
+                int book = random.nextInt(4) == 0 ? random.nextInt(5) : random.nextInt(BOOKS);
+                ratings.add(new Rating("cf-user" + u, "cf" + book, 1 + random.nextInt(5)));
+            }
+        }
+        return ratings;
+    }
+
+    /**
+     * Adjusted cosine straight from the definition: ratings averaged per user and book, centered
+     * on the user's mean, dot products over common raters divided by the books' full norms.
+     */
+    private static Map<String, Map<String, Double>> bruteForceSimilarities(List<Rating> ratings) {
+        Map<String, Map<String, List<Integer>>> byUser = new HashMap<>();
+        for (Rating rating : ratings) {
+            byUser.computeIfAbsent(rating.getUserId(), user -> new HashMap<>())
+                    .computeIfAbsent(rating.getBookId(), book -> new ArrayList<>()).add(rating.getRating());
+        }
+        Map<String, Map<String, Double>> centered = new HashMap<>();
+        for (Map.Entry<String, Map<String, List<Integer>>> user : byUser.entrySet()) {
+            Map<String, Double> averages = new HashMap<>();
+            for (Map.Entry<String, List<Integer>> book : user.getValue().entrySet()) {
+                averages.put(book.getKey(), book.getValue().stream().mapToInt(Integer::intValue).average().getAsDouble());
+            }
+            double mean = averages.values().stream().mapToDouble(Double::doubleValue).average().getAsDouble();
+            Map<String, Double> row = new HashMap<>();
+            averages.forEach((book, average) -> row.put(book, average - mean));
+            centered.put(user.getKey(), row);
+        }
+        Set<String> books = new HashSet<>();
+        centered.values().forEach(row -> books.addAll(row.keySet()));
+        Map<String, Double> norms = new HashMap<>();
+        for (String book : books) {
+            double sum = 0;
+            for (Map<String, Double> row : centered.values()) {
+                sum += row.getOrDefault(book, 0.0) * row.getOrDefault(book, 0.0);
+            }
+            norms.put(book, Math.sqrt(sum));
+        }
+        Map<String, Map<String, Double>> similarities = new HashMap<>();
+        for (String book : books) {
+            Map<String, Double> row = new HashMap<>();
+            for (String other : books) {
+                double dot = 0;
+                for (Map<String, Double> ratingsOfUser : centered.values()) {
+                    if (ratingsOfUser.containsKey(book) && ratingsOfUser.containsKey(other)) {
+                        dot += ratingsOfUser.get(book) * ratingsOfUser.get(other);
+                    }
+                }
+                double norm = norms.get(book) * norms.get(other);
+                row.put(other, norm == 0 ? 0 : dot / norm);
+            }
+            similarities.put(book, row);
+        }
+        return similarities;
+    }
+
+    /**
+     * Scores every catalog book against every neighbor list of the highly rated books, then
+     * drops the excluded ones and sorts.
+     */
+    private static List<String> bruteForceRecommendations(ItemNeighborIndex index, BookCatalog catalog, User user,
+                                                          List<Rating> userRatings, int limit) {
+        CatalogSnapshot snapshot = catalog.getSnapshot();
+        Set<String> excluded = new HashSet<>(user.getReadBooks());
+        excluded.addAll(user.getHiddenBooks());
+        for (Rating rating : userRatings) {
+            excluded.add(rating.getBookId());
+        }
+        double[] scores = new double[snapshot.size()];
+        boolean[] scored = new boolean[snapshot.size()];
+        for (Rating rating : userRatings) {
+            if (rating.getRating() < ItemBasedRecommender.DEFAULT_MIN_RATING) {
+                continue;
+            }
+            int[] neighbors = index.getNeighbors(IdRegistry.forBooks().find(rating.getBookId()));
+            float[] similarities = index.getSimilarities(IdRegistry.forBooks().find(rating.getBookId()));
+            for (int ordinal = 0; ordinal < snapshot.size(); ordinal++) {
+                for (int n = 0; n < neighbors.length; n++) {
+                    if (IdRegistry.forBooks().idOf(neighbors[n]).equals(snapshot.getBook(ordinal).getId())) {
+                        scores[ordinal] += similarities[n];
+                        scored[ordinal] = true;
+                    }
+                }
+            }
+        }
+        List<Integer> ordinals = new ArrayList<>();
+        for (int ordinal = 0; ordinal < snapshot.size(); ordinal++) {
+            if (scored[ordinal] && !excluded.contains(snapshot.getBook(ordinal).getId())) {
+                ordinals.add(ordinal);
+            }
+        }
+        ordinals.sort((a, b) -> scores[a] != scores[b] ? Double.compare(scores[b], scores[a]) : Integer.compare(a, b));
+        return ordinals.stream().limit(limit).map(ordinal -> snapshot.getBook(ordinal).getId()).collect(Collectors.toList());
+    }
+
+    private static List<Book> books() {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < BOOKS; i++) {
+            books.add(book("cf" + i));
+        }
+        return books;
+    }
+
+    private static Book book(String id) {
+        return new Book(id, "Title " + id, "Author", Arrays.asList("Fiction"), 3.0);
+    }
+
+    private static List<String> ids(List<Book> books) {
+        return books.stream().map(Book::getId).collect(Collectors.toList());
+    }
+}
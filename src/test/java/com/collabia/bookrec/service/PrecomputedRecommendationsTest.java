@@ -0,0 +1,106 @@
+package com.collabia.bookrec.service;
+
+import org.junit.jupiter.api.Test;
+
+import org.bson.types.ObjectId;
+
+import com.collabia.bookrec.dao.RecommendationDAO;
+import com.collabia.bookrec.model.Book;
+import com.collabia.bookrec.model.PrecomputedRecommendation;
+import com.collabia.bookrec.model.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrecomputedRecommendationsTest {
+
+    private final BookCatalog catalog = new BookCatalog(Arrays.asList(
+            new Book("p1", "Book A", "Author X", Arrays.asList("Fantasy"), 4.5),
+            new Book("p2", "Book B", "Author Y", Arrays.asList("Horror"), 4.0),
+            new Book("p3", "Book C", "Author Z", Arrays.asList("Poetry"), 3.5)));
+
+    @Test
+    void testFreshListIsServedFromTheCatalog() {
+        User user = user();
+        PrecomputedRecommendations precomputed = precomputed(stored(user, PrecomputedRecommendations.FORMAT_VERSION,
+                new Date(), Arrays.asList("p3", "gone", "p1", "p2")));
+
+        Optional<List<Book>> books = precomputed.find(user, 3);
+
+        // Limited before resolving; a book no longer in the catalog is dropped
+        assertEquals(Arrays.asList("Book C", "Book A"), titles(books.get()));
+    }
+
+    @Test
+    void testStaleListsAreNotServed() {
+        User user = user();
+        Date now = new Date();
+        Date old = new Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2));
+
+        assertTrue(precomputed(stored(user, PrecomputedRecommendations.FORMAT_VERSION - 1, now, ids()))
+                .find(user, 3).isEmpty());
+        assertTrue(precomputed(stored(user, PrecomputedRecommendations.FORMAT_VERSION, old, ids()))
+                .find(user, 3).isEmpty());
+        assertTrue(precomputed(null).find(user, 3).isEmpty());
+        assertTrue(precomputed(stored(user, PrecomputedRecommendations.FORMAT_VERSION, now, ids()))
+                .find(new User(), 3).isEmpty());
+    }
+
+    @Test
+    void testProfileChangesMakeTheListStale() {
+        User user = user();
+        PrecomputedRecommendations precomputed = precomputed(stored(user, PrecomputedRecommendations.FORMAT_VERSION,
+                new Date(), ids()));
+        assertTrue(precomputed.find(user, 3).isPresent());
+
+        user.getHiddenBooks().add("p1");
+        assertTrue(precomputed.find(user, 3).isEmpty());
+        user.getHiddenBooks().clear();
+        user.getLikedBooks().add("p2");
+        assertTrue(precomputed.find(user, 3).isEmpty());
+        user.getLikedBooks().clear();
+        user.getReadBooks().add("p3");
+        assertTrue(precomputed.find(user, 3).isEmpty());
+        user.getReadBooks().clear();
+        user.getFavoriteGenres().add("Horror");
+        assertTrue(precomputed.find(user, 3).isEmpty());
+    }
+
+    private PrecomputedRecommendations precomputed(PrecomputedRecommendation stored) {
+        RecommendationDAO recommendationDAO = new RecommendationDAO() {
+            @Override
+            public Optional<PrecomputedRecommendation> findByUserId(String userId) {
+                return stored != null && stored.getUserId().equals(userId) ? Optional.of(stored) : Optional.empty();
+            }
+        };
+        return new PrecomputedRecommendations(recommendationDAO, null, catalog, TimeUnit.HOURS.toMillis(1));
+    }
+
+    private static PrecomputedRecommendation stored(User user, int version, Date computedAt, List<String> bookIds) {
+        return new PrecomputedRecommendation(user.getId().toHexString(), bookIds, version,
+                RecommendationCache.fingerprint(user), computedAt);
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setId(new ObjectId());
+        user.setFavoriteGenres(new ArrayList<>(Arrays.asList("Fantasy")));
+        return user;
+    }
+
+    private static List<String> ids() {
+        return Arrays.asList("p1", "p2", "p3");
+    }
+
+    private static List<String> titles(List<Book> books) {
+        return books.stream().map(Book::getTitle).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,106 @@
+package com.collabia.bookrec.service;
+
+import org.junit.jupiter.api.Test;
+
+import org.bson.types.ObjectId;
+
+import com.collabia.bookrec.model.Book;
+import com.collabia.bookrec.model.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RecommendationCacheTest {
+
+    private static final List<Book> BOOKS = new ArrayList<>();
+
+    static {
+        for (int i = 0; i < 120; i++) {
+            BOOKS.add(new Book("b" + i, "Book " + i, "Author", Arrays.asList("Fantasy"), 3.0));
+        }
+    }
+
+    @Test
+    void testListsOfDifferentLengthsDoNotEvictEachOther() {
+        RecommendationCache cache = new RecommendationCache();
+        User user = user();
+        List<Book> dashboard = books(12);
+        List<Book> paging = books(120);
+
+        cache.put(user, 12, 1, dashboard);
+        cache.put(user, 120, 1, paging);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(dashboard, cache.get(user, 12, 1));
+            assertEquals(paging, cache.get(user, 120, 1));
+        }
+        assertEquals(6, cache.getHits());
+        assertEquals(2, cache.size());
+        // Not served from a list of another length
+        assertNull(cache.get(user, 10, 1));
+    }
+
+    @Test
+    void testEntriesFollowTheProfileAndCatalog() {
+        RecommendationCache cache = new RecommendationCache();
+        User user = user();
+        cache.put(user, 5, 1, books(5));
+
+        assertNull(cache.get(user, 5, 2));
+        user.getHiddenBooks().add("b0");
+        assertNull(cache.get(user, 5, 1));
+        user.getHiddenBooks().clear();
+        assertEquals(books(5), cache.get(user, 5, 1));
+
+        cache.invalidate(user.getId().toHexString());
+        assertNull(cache.get(user, 5, 1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testLeastRecentlyUsedUsersAndLengthsAreEvicted() {
+        RecommendationCache cache = new RecommendationCache(2, 1, TimeUnit.MINUTES);
+        User first = user();
+        User second = user();
+        User third = user();
+        for (int limit = 1; limit <= 6; limit++) {
+            cache.put(first, limit, 1, books(limit));
+        }
+        cache.put(second, 3, 1, books(3));
+        cache.get(first, 6, 1);
+        cache.put(third, 3, 1, books(3));
+
+        // Four lengths per user, the most recent ones; the second user was least recently used
+        assertNull(cache.get(first, 2, 1));
+        assertEquals(books(3), cache.get(first, 3, 1));
+        assertNull(cache.get(second, 3, 1));
+        assertEquals(books(3), cache.get(third, 3, 1));
+        assertEquals(5, cache.size());
+    }
+
+    @Test
+    void testExpiredEntriesMiss() {
+        RecommendationCache cache = new RecommendationCache(10, 0, TimeUnit.MILLISECONDS);
+        User user = user();
+        cache.put(user, 5, 1, books(5));
+
+        assertNull(cache.get(user, 5, 1));
+        assertEquals(0, cache.size());
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setId(new ObjectId());
+        user.setFavoriteGenres(new ArrayList<>(Arrays.asList("Fantasy")));
+        return user;
+    }
+
+    private static List<Book> books(int count) {
+        return new ArrayList<>(BOOKS.subList(0, count));
+    }
+}
@@ -0,0 +1,520 @@
+package com.collabia.bookrec.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.bson.types.ObjectId;
+
+import com.collabia.bookrec.dao.BookDAO;
+import com.collabia.bookrec.dao.RatingDAO;
+import com.collabia.bookrec.model.Book;
+import com.collabia.bookrec.model.Rating;
+import com.collabia.bookrec.model.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecommendationEngineTest {
+
+    private BookCatalog catalog;
+    private RecommendationEngine recommendationEngine;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        // Mock books
+        catalog = new BookCatalog(Arrays.asList(
+            new Book("1", "Book A", "Author X", Arrays.asList("Fantasy", "Adventure"), 4.5),
+            new Book("2", "Book B", "Author Y", Arrays.asList("Science Fiction"), 4.0),
+            new Book("3", "Book C", "Author X", Arrays.asList("Fantasy"), 3.5),
+            new Book("4", "Book D", "Author Z", Arrays.asList("Romance"), 4.8),
+            new Book("5", "Book E", "Author Y", Arrays.asList("Science Fiction", "Adventure"), 4.2),
+            new Book("6", "Book F", "Author X", Arrays.asList("Horror"), 2.0),
+            new Book("7", "Book G", "Author W", Arrays.asList("Poetry"), 3.0)
+        ));
+        recommendationEngine = new RecommendationEngine(null, catalog);
+
+        // Mock user
+        user = new User();
+        user.setFavoriteGenres(new ArrayList<>(Arrays.asList("Fantasy", "Science Fiction")));
+        user.setReadBooks(new ArrayList<>(Arrays.asList("1")));
+    }
+
+    @Test
+    void testRecommendForUserRanksIndexedCandidatesFirst() {
+        List<Book> recommendations = recommendationEngine.recommendForUser(user, 3);
+
+        // Book C: Fantasy + Author X, Book E and Book B: one genre each
+        assertEquals(Arrays.asList("Book C", "Book E", "Book B"), titles(recommendations));
+    }
+
+    @Test
+    void testRecommendForUserFillsWithPopularBooks() {
+        List<Book> recommendations = recommendationEngine.recommendForUser(user, 10);
+
+        // Book F only matches by author; Book D and Book G come from the popularity fallback
+        assertEquals(Arrays.asList("Book C", "Book E", "Book B", "Book F", "Book D", "Book G"), titles(recommendations));
+    }
+
+    @Test
+    void testInsertedBookIsIndexed() {
+        catalog.add(new Book("8", "Book H", "Author V", Arrays.asList("Fantasy", "Science Fiction"), 5.0));
+
+        List<Book> recommendations = recommendationEngine.recommendForUser(user, 1);
+
+        assertEquals("Book H", recommendations.get(0).getTitle());
+    }
+
+    @Test
+    void testCachedRecommendationsFollowProfileChanges() {
+        RecommendationCache cache = new RecommendationCache();
+        RecommendationEngine cachingEngine = new RecommendationEngine(null, catalog, cache);
+        user.setId(new ObjectId());
+
+        assertEquals(Arrays.asList("Book C", "Book E"), titles(cachingEngine.recommendForUser(user, 2)));
+        assertEquals(Arrays.asList("Book C", "Book E"), titles(cachingEngine.recommendForUser(user, 2)));
+        assertEquals(1, cache.getHits());
+
+        user.getReadBooks().add("3");
+
+        assertEquals(Arrays.asList("Book E", "Book B"), titles(cachingEngine.recommendForUser(user, 2)));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void testGetRecommendationsReturnsBestLimitInOrder() {
+        List<Book> books = catalog.getBooks();
+
+        List<Book> all = recommendationEngine.getRecommendations(user, books);
+        List<Book> top = recommendationEngine.getRecommendations(user, books, 2);
+
+        assertEquals(6, all.size());
+        // Book E and Book B tie with Book C on genre bonus; rating decides
+        assertEquals(Arrays.asList("Book E", "Book B", "Book C", "Book D", "Book G", "Book F"), titles(all));
+        assertEquals(all.subList(0, 2), top);
+    }
+
+    @Test
+    void testColdStartUserGetsBestRatedOfFavoriteGenres() {
+        catalog.getBooks().forEach(book -> book.setAverageRating(book.getRating()));
+        recommendationEngine.setColdStartLists(new ColdStartLists(catalog, 10));
+        user.setReadBooks(new ArrayList<>());
+
+        List<Book> recommendations = recommendationEngine.recommendForUser(user, 5);
+
+        // Fantasy and Science Fiction merged by average rating, then the best rated book overall
+        assertEquals(Arrays.asList("Book A", "Book E", "Book B", "Book C", "Book D"), titles(recommendations));
+    }
+
+    @Test
+    void testColdStartUserDoesNotGetHiddenBooks() throws Exception {
+        catalog.getBooks().forEach(book -> book.setAverageRating(book.getRating()));
+        recommendationEngine.setColdStartLists(new ColdStartLists(catalog, 10));
+        user.setReadBooks(new ArrayList<>());
+        // The best rated Fantasy book and the best rated book overall
+        user.setHiddenBooks(new ArrayList<>(Arrays.asList("1", "4")));
+
+        List<String> expected = Arrays.asList("Book E", "Book B", "Book C", "Book G", "Book F");
+        assertEquals(expected, titles(recommendationEngine.recommendForUser(user, 5)));
+        assertEquals(expected, titles(recommendationEngine.recommendForUser(user, 5, 10, TimeUnit.SECONDS).getBooks()));
+        assertEquals(Arrays.asList(expected), RecommendationStreamTest.collect(
+                recommendationEngine.streamRecommendations(user, 5)).get(10, TimeUnit.SECONDS).stream()
+                .map(this::titles).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testPagesFollowOneRanking() {
+        RecommendationPage first = recommendationEngine.recommendForUser(user, null, 4);
+        RecommendationPage second = recommendationEngine.recommendForUser(user, first.getNextCursor(), 4);
+
+        assertEquals(Arrays.asList("Book C", "Book E", "Book B", "Book F"), titles(first.getBooks()));
+        assertEquals(Arrays.asList("Book D", "Book G"), titles(second.getBooks()));
+        assertEquals(null, second.getNextCursor());
+    }
+
+    @Test
+    void testBudgetedRecommendations() throws Exception {
+        RecommendationResult complete = recommendationEngine.recommendForUser(user, 3, 10, TimeUnit.SECONDS);
+        RecommendationResult partial = new RecommendationEngine(null, catalog).recommendForUser(user, 3, 0, TimeUnit.SECONDS);
+
+        assertEquals(false, complete.isPartial());
+        assertEquals(Arrays.asList("Book C", "Book E", "Book B"), titles(complete.getBooks()));
+        // No time to generate candidates: the popularity fallback answers alone
+        assertEquals(true, partial.isPartial());
+        assertEquals(Arrays.asList("Book D", "Book E", "Book B"), titles(partial.getBooks()));
+        // The cut-short request finishes in the background with the complete ranking
+        assertEquals(titles(complete.getBooks()), titles(partial.getCompletion().get(10, TimeUnit.SECONDS)));
+        assertEquals(1, recommendationEngine.getBudgetedRequests());
+        assertEquals(0, recommendationEngine.getBudgetsExceeded());
+    }
+
+    @Test
+    void testBudgetCutDuringRankingFinishesInBackground() throws Exception {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            books.add(new Book(String.valueOf(i), "Book " + i, "Author " + i % 50, Arrays.asList("Fantasy"), i % 7));
+        }
+        RecommendationEngine engine = new RecommendationEngine(null, new BookCatalog(books));
+        List<Book> expected = engine.recommendForUser(user, 5);
+        // A ranker slow enough that only the first batch is ranked within the budget
+        ContentRanker contentRanker = new ContentRanker();
+        engine.getPipeline().setRanker(new CandidateRanker() {
+            @Override
+            public String getName() {
+                return contentRanker.getName();
+            }
+
+            @Override
+            public void rank(CandidateFeatures features, TopKSelector topK) {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                contentRanker.rank(features, topK);
+            }
+        }, 0, TimeUnit.NANOSECONDS);
+
+        RecommendationResult partial = engine.recommendForUser(user, 5, 10, TimeUnit.MILLISECONDS);
+
+        assertEquals(true, partial.isPartial());
+        assertEquals(titles(expected), titles(partial.getCompletion().get(10, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    void testPipelineRecordsStageMetrics() {
+        recommendationEngine.recommendForUser(user, 3);
+
+        List<String> stages = recommendationEngine.getPipeline().getMetrics().stream()
+                .map(StageMetrics::getName).collect(Collectors.toList());
+        assertEquals(Arrays.asList("genre-index", "author-index", "similar-to-liked", "popularity",
+                "feature-fetch", "content-ranker"), stages);
+        // Fantasy and Science Fiction hits, Book F by Author X, then Book D and Book G as the only others
+        assertEquals(Arrays.asList(4L, 1L, 0L, 2L), recommendationEngine.getPipeline().getMetrics().subList(0, 4).stream()
+                .map(StageMetrics::getItems).collect(Collectors.toList()));
+        // One record per stage for the request; every candidate but the read Book A is ranked
+        for (StageMetrics metrics : recommendationEngine.getPipeline().getMetrics()) {
+            assertEquals(1, metrics.getCalls(), metrics.getName());
+        }
+        assertEquals(6, recommendationEngine.getPipeline().getMetrics().get(5).getItems());
+    }
+
+    @Test
+    void testInsertSwapsInNewSnapshot() {
+        CatalogSnapshot before = catalog.getSnapshot();
+
+        catalog.add(new Book("8", "Book H", "Author V", Arrays.asList("Fantasy"), 5.0));
+
+        assertEquals(7, before.size());
+        assertEquals(-1, before.ordinalOf("8"));
+        assertEquals(8, catalog.getSnapshot().size());
+        assertEquals(before.getVersion() + 1, catalog.getVersion());
+    }
+
+    @Test
+    void testMarkedBookIsExcluded() {
+        user.setId(new ObjectId());
+        assertEquals(Arrays.asList("Book C", "Book E"), titles(recommendationEngine.recommendForUser(user, 2)));
+
+        UserBookSets.markRead(user, "3");
+
+        assertEquals(Arrays.asList("1", "3"), user.getReadBooks());
+        assertEquals(true, UserBookSets.of(user).isRead("3"));
+        assertEquals(Arrays.asList("Book E", "Book B"), titles(recommendationEngine.recommendForUser(user, 2)));
+    }
+
+    @Test
+    void testHiddenBookIsExcludedEverywhere() {
+        user.setId(new ObjectId());
+
+        UserBookSets.markHidden(user, "3");
+
+        assertEquals(Arrays.asList("3"), user.getHiddenBooks());
+        // Hidden like read, but Book F still gets the author bonus from Book A only
+        assertEquals(Arrays.asList("Book E", "Book B", "Book F"), titles(recommendationEngine.recommendForUser(user, 3)));
+        assertEquals(Arrays.asList("Book E", "Book B", "Book F"),
+                titles(recommendationEngine.recommendForUsers(Arrays.asList(user), 3).get(user.getId().toHexString())));
+        assertEquals(Arrays.asList("Book E", "Book B"),
+                titles(recommendationEngine.getRecommendations(user, catalog.getBooks(), 2)));
+
+        // A replaced list rebuilds the set
+        user.setHiddenBooks(new ArrayList<>());
+        assertEquals(Arrays.asList("Book C"), titles(recommendationEngine.recommendForUser(user, 1)));
+    }
+
+    @Test
+    void testPlannedRecommendationsMatchEveryStrategy() {
+        RecommendationPlanner planner = new RecommendationPlanner(recommendationEngine.getParallelThreshold());
+        recommendationEngine.setPlanner(planner);
+        RecommendationEngine fullScan = new RecommendationEngine(null, catalog);
+        fullScan.setPipeline(RecommendationPipeline.createFullScan());
+
+        assertEquals(Arrays.asList("Book C", "Book E", "Book B"), titles(recommendationEngine.recommendForUser(user, 3)));
+        assertEquals(Arrays.asList("Book C", "Book E", "Book B"), titles(fullScan.recommendForUser(user, 3)));
+        // Seven books: scanning them all is estimated cheaper than walking the indexes
+        assertEquals(RecommendationStrategy.FULL_SCAN, planner.plan(catalog.getSnapshot(), user, 3, false, false).getStrategy());
+        assertEquals(1, planner.getExecutions(RecommendationStrategy.FULL_SCAN));
+    }
+
+    @Test
+    void testBudgetedRecommendationsGoThroughThePlanner() {
+        RecommendationPlanner planner = new RecommendationPlanner(recommendationEngine.getParallelThreshold());
+        recommendationEngine.setPlanner(planner);
+
+        RecommendationResult result = recommendationEngine.recommendForUser(user, 3, 10, TimeUnit.SECONDS);
+
+        assertEquals(false, result.isPartial());
+        assertEquals(Arrays.asList("Book C", "Book E", "Book B"), titles(result.getBooks()));
+        assertEquals(1, planner.getExecutions(RecommendationStrategy.FULL_SCAN));
+        assertEquals(0, planner.getExecutions(RecommendationStrategy.INDEXED));
+    }
+
+    @Test
+    void testItemBasedRecommendationsFollowSimilarRatings() {
+        // Readers who rated Book A highly also rated Book C highly, and Book D and Book E low
+        List<Rating> ratings = Arrays.asList(
+            new Rating("u1", "1", 5), new Rating("u1", "3", 5), new Rating("u1", "4", 1),
+            new Rating("u2", "1", 4), new Rating("u2", "3", 5), new Rating("u2", "5", 1),
+            new Rating("u3", "1", 5), new Rating("u3", "3", 4), new Rating("u3", "4", 2),
+            new Rating("u4", "2", 5), new Rating("u4", "5", 5), new Rating("u4", "1", 1));
+        ItemNeighborIndex neighbors = new ItemSimilarityJob(null, null, 10).computeNeighbors(ratings);
+        ItemBasedRecommender recommender = new ItemBasedRecommender(neighbors, catalog, null);
+
+        List<Book> recommendations = recommender.recommend(user, Arrays.asList(new Rating("me", "1", 5)), 3);
+
+        assertEquals(Arrays.asList("Book C"), titles(recommendations));
+    }
+
+    @Test
+    void testItemBasedRecommendationsAreBlendedIn() {
+        // Readers of Book A rated Book D highly too, which has nothing in common with the user's genres
+        List<Rating> ratings = Arrays.asList(
+            new Rating("u1", "1", 5), new Rating("u1", "4", 5), new Rating("u1", "6", 1),
+            new Rating("u2", "1", 4), new Rating("u2", "4", 5), new Rating("u2", "7", 1));
+        ItemNeighborIndex neighbors = new ItemSimilarityJob(null, null, 10).computeNeighbors(ratings);
+        user.setId(new ObjectId());
+        List<Rating> userRatings = Arrays.asList(new Rating(user.getId().toHexString(), "1", 5));
+        RatingDAO ratingDAO = new RatingDAO() {
+            @Override
+            public List<Rating> findByUserId(String userId) {
+                return userRatings;
+            }
+        };
+        recommendationEngine.setItemBasedRecommender(new ItemBasedRecommender(neighbors, catalog, ratingDAO));
+
+        // One of four places, the second, goes to collaborative filtering
+        assertEquals(Arrays.asList("Book C", "Book D", "Book E", "Book B"),
+                titles(recommendationEngine.recommendForUser(user, 4)));
+        assertEquals(Arrays.asList("Book C", "Book D", "Book E", "Book B"),
+                titles(recommendationEngine.recommendForUser(user, 4, 10, TimeUnit.SECONDS).getBooks()));
+        // A limit not cached yet; without a share the content ranking is left as it is
+        recommendationEngine.setItemBasedShare(0);
+        assertEquals(Arrays.asList("Book C", "Book E", "Book B", "Book F", "Book D"),
+                titles(recommendationEngine.recommendForUser(user, 5)));
+    }
+
+    @Test
+    void testSlowRatingsLeaveABudgetedResultPartial() throws Exception {
+        List<Rating> ratings = Arrays.asList(
+            new Rating("u1", "1", 5), new Rating("u1", "4", 5), new Rating("u1", "6", 1),
+            new Rating("u2", "1", 4), new Rating("u2", "4", 5), new Rating("u2", "7", 1));
+        ItemNeighborIndex neighbors = new ItemSimilarityJob(null, null, 10).computeNeighbors(ratings);
+        user.setId(new ObjectId());
+        List<Rating> userRatings = Arrays.asList(new Rating(user.getId().toHexString(), "1", 5));
+        CountDownLatch released = new CountDownLatch(1);
+        RatingDAO ratingDAO = new RatingDAO() {
+            @Override
+            public List<Rating> findByUserId(String userId) {
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return userRatings;
+            }
+        };
+        recommendationEngine.setItemBasedRecommender(new ItemBasedRecommender(neighbors, catalog, ratingDAO));
+
+        // The ratings arrive after the budget: the content ranking answers
+        RecommendationResult result = recommendationEngine.recommendForUser(user, 4, 50, TimeUnit.MILLISECONDS);
+        assertEquals(true, result.isPartial());
+        assertEquals(Arrays.asList("Book C", "Book E", "Book B", "Book F"), titles(result.getBooks()));
+        assertEquals(1, recommendationEngine.getBudgetsExceeded());
+
+        released.countDown();
+        assertEquals(Arrays.asList("Book C", "Book D", "Book E", "Book B"),
+                titles(result.getCompletion().get(10, TimeUnit.SECONDS)));
+        // The blended list is cached for the next request
+        assertEquals(Arrays.asList("Book C", "Book D", "Book E", "Book B"),
+                titles(recommendationEngine.recommendForUser(user, 4, 0, TimeUnit.SECONDS).getBooks()));
+    }
+
+    @Test
+    void testParallelSelectionMatchesSequential() {
+        Random random = new Random(11);
+        BookCatalog largeCatalog = randomCatalog(random, 20_000);
+        // Full scans, so every request has enough candidates to be split into chunks
+        RecommendationEngine sequential = new RecommendationEngine(null, largeCatalog);
+        sequential.setPipeline(RecommendationPipeline.createFullScan());
+        sequential.setParallelThreshold(Integer.MAX_VALUE);
+        RecommendationEngine parallel = new RecommendationEngine(null, largeCatalog);
+        parallel.setPipeline(RecommendationPipeline.createFullScan());
+        parallel.setParallelThreshold(1);
+
+        for (int i = 0; i < 20; i++) {
+            User reader = randomUser(random, largeCatalog);
+            int limit = 1 + random.nextInt(60);
+            assertEquals(ids(sequential.recommendForUser(reader, limit)), ids(parallel.recommendForUser(reader, limit)));
+            assertEquals(ids(sequential.getRecommendations(reader, largeCatalog.getBooks(), limit)),
+                    ids(parallel.getRecommendations(reader, largeCatalog.getBooks(), limit)));
+        }
+    }
+
+    @Test
+    void testBatchRecommendationsMatchSingleUserRecommendations() {
+        Random random = new Random(23);
+        BookCatalog largeCatalog = randomCatalog(random, 3_000);
+        List<User> users = new ArrayList<>();
+        // Several blocks of users, the last one partial
+        for (int i = 0; i < 21; i++) {
+            users.add(randomUser(random, largeCatalog));
+        }
+        users.add(new User());
+
+        Map<String, List<Book>> batch = new RecommendationEngine(null, largeCatalog).recommendForUsers(users, 15);
+
+        RecommendationEngine single = new RecommendationEngine(null, largeCatalog);
+        assertEquals(21, batch.size());
+        for (User reader : users.subList(0, 21)) {
+            assertEquals(ids(single.recommendForUser(reader, 15)), ids(batch.get(reader.getId().toHexString())));
+        }
+    }
+
+    @Test
+    void testBatchDoesNotCacheListsThatAreBlendedLater() {
+        List<Rating> ratings = Arrays.asList(
+            new Rating("u1", "1", 5), new Rating("u1", "4", 5), new Rating("u1", "6", 1),
+            new Rating("u2", "1", 4), new Rating("u2", "4", 5), new Rating("u2", "7", 1));
+        ItemNeighborIndex neighbors = new ItemSimilarityJob(null, null, 10).computeNeighbors(ratings);
+        user.setId(new ObjectId());
+        List<Rating> userRatings = Arrays.asList(new Rating(user.getId().toHexString(), "1", 5));
+        RatingDAO ratingDAO = new RatingDAO() {
+            @Override
+            public List<Rating> findByUserId(String userId) {
+                return userRatings;
+            }
+        };
+        RecommendationCache cache = new RecommendationCache();
+        RecommendationEngine engine = new RecommendationEngine(null, catalog, cache);
+        engine.setItemBasedRecommender(new ItemBasedRecommender(neighbors, catalog, ratingDAO));
+
+        // The batch ranks by content only and leaves the blending to single-user requests
+        Map<String, List<Book>> batch = engine.recommendForUsers(Arrays.asList(user), 4);
+        assertEquals(Arrays.asList("Book C", "Book E", "Book B", "Book F"), titles(batch.get(user.getId().toHexString())));
+        assertEquals(null, cache.get(user, 4, catalog.getSnapshot().getVersion()));
+        assertEquals(Arrays.asList("Book C", "Book D", "Book E", "Book B"), titles(engine.recommendForUser(user, 4)));
+
+        // Without collaborative filtering the batch lists are what single-user requests return
+        engine.setItemBasedRecommender(null);
+        User other = new User();
+        other.setId(new ObjectId());
+        other.setFavoriteGenres(new ArrayList<>(Arrays.asList("Fantasy")));
+        other.setReadBooks(new ArrayList<>());
+        engine.recommendForUsers(Arrays.asList(other), 4);
+        assertEquals(titles(engine.recommendForUser(other, 4)),
+                titles(cache.get(other, 4, catalog.getSnapshot().getVersion())));
+    }
+
+    @Test
+    void testStreamedRecommendationsEndWithTheFinalRanking() throws Exception {
+        Random random = new Random(31);
+        BookCatalog largeCatalog = randomCatalog(random, 10_000);
+        RecommendationEngine streaming = new RecommendationEngine(null, largeCatalog);
+        streaming.setPipeline(RecommendationPipeline.createFullScan());
+        RecommendationEngine direct = new RecommendationEngine(null, largeCatalog);
+        direct.setPipeline(RecommendationPipeline.createFullScan());
+        User reader = randomUser(random, largeCatalog);
+
+        List<List<Book>> lists = RecommendationStreamTest.collect(streaming.streamRecommendations(reader, 10))
+                .get(10, TimeUnit.SECONDS);
+
+        // A provisional ranking of the first candidates, then the final one
+        assertEquals(2, lists.size());
+        assertEquals(10, lists.get(0).size());
+        assertEquals(ids(direct.recommendForUser(reader, 10)), ids(lists.get(1)));
+        // Served from the cache the second time, as the only item
+        assertEquals(Arrays.asList(lists.get(1)), RecommendationStreamTest.collect(
+                streaming.streamRecommendations(reader, 10)).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testAggregationPushdownScoresInTheDatabase() {
+        List<Object> queries = new ArrayList<>();
+        List<Book> scored = Arrays.asList(new Book("9", "Book I", "Author V", Arrays.asList("Fantasy"), 5.0));
+        BookDAO bookDAO = new BookDAO(null) {
+            @Override
+            public List<Book> findTopScored(List<String> readBookIds, List<String> hiddenBookIds,
+                                            List<String> favoriteGenres, int limit) {
+                queries.add(Arrays.asList(readBookIds, hiddenBookIds, favoriteGenres, limit));
+                return scored;
+            }
+        };
+        RecommendationEngine engine = new RecommendationEngine(bookDAO, catalog);
+        user.setHiddenBooks(new ArrayList<>(Arrays.asList("3")));
+
+        assertEquals(Arrays.asList("Book E", "Book B"), titles(engine.recommendForUser(user, 2)));
+        assertTrue(queries.isEmpty());
+        engine.setAggregationPushdown(true);
+
+        assertEquals(scored, engine.recommendForUser(user, 2));
+        assertEquals(Arrays.asList(Arrays.asList(user.getReadBooks(), user.getHiddenBooks(), user.getFavoriteGenres(), 2)),
+                queries);
+    }
+
+    private List<String> titles(List<Book> books) {
+        return books.stream().map(Book::getTitle).collect(Collectors.toList());
+    }
+
+    private List<String> ids(List<Book> books) {
+        return books.stream().map(Book::getId).collect(Collectors.toList());
+    }
+
+    private static BookCatalog randomCatalog(Random random, int size) {
+        // Few genres, authors and ratings, so candidate lists are long and scores tie often
+        List<Book> books = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            List<String> genres = new ArrayList<>();
+            for (int g = random.nextInt(4); g > 0; g--) {
+                genres.add("Genre " + random.nextInt(12));
+            }
+            books.add(new Book(String.format("%024x", 0xe1e0000L + i), "Title " + i,
+                    "Author " + random.nextInt(size / 10), genres, random.nextInt(11) / 2.0));
+        }
+        return new BookCatalog(books);
+    }
+
+    private static User randomUser(Random random, BookCatalog catalog) {
+        User reader = new User();
+        reader.setId(new ObjectId());
+        List<String> genres = new ArrayList<>();
+        for (int g = random.nextInt(4); g > 0; g--) {
+            genres.add("Genre " + random.nextInt(14));
+        }
+        reader.setFavoriteGenres(genres);
+        List<String> readBooks = new ArrayList<>();
+        for (int r = random.nextInt(30); r > 0; r--) {
+            readBooks.add(catalog.get(random.nextInt(catalog.size())).getId());
+        }
+        reader.setReadBooks(readBooks);
+        return reader;
+    }
+}
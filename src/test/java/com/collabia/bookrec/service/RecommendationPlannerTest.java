@@ -0,0 +1,113 @@
+package com.collabia.bookrec.service;
+
+import org.junit.jupiter.api.Test;
+
+import com.collabia.bookrec.model.Book;
+import com.collabia.bookrec.model.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecommendationPlannerTest {
+
+    @Test
+    void testMeasuredTimesCorrectTheEstimates() {
+        CatalogSnapshot snapshot = catalog(7);
+        RecommendationPlanner planner = new RecommendationPlanner(1, Integer.MAX_VALUE);
+        User user = user();
+
+        RecommendationPlanner.Plan plan = planner.plan(snapshot, user, 3, false, false);
+        assertEquals(RecommendationStrategy.FULL_SCAN, plan.getStrategy());
+        double estimate = plan.getEstimateNanos(RecommendationStrategy.FULL_SCAN);
+
+        // The full scan keeps taking a hundred times its estimate
+        for (int i = 0; i < 30; i++) {
+            planner.record(plan, RecommendationStrategy.FULL_SCAN, (long) (estimate * 100), true);
+        }
+
+        assertTrue(planner.getCostCorrection(RecommendationStrategy.FULL_SCAN) > 50);
+        assertEquals(1.0, planner.getCostCorrection(RecommendationStrategy.INDEXED));
+        assertEquals(RecommendationStrategy.INDEXED, planner.plan(snapshot, user, 3, false, false).getStrategy());
+        assertEquals(30, planner.getExecutions(RecommendationStrategy.FULL_SCAN));
+    }
+
+    @Test
+    void testCorrectionIsBounded() {
+        CatalogSnapshot snapshot = catalog(7);
+        RecommendationPlanner planner = new RecommendationPlanner(1, Integer.MAX_VALUE);
+        RecommendationPlanner.Plan plan = planner.plan(snapshot, user(), 3, false, false);
+
+        for (int i = 0; i < 200; i++) {
+            planner.record(plan, RecommendationStrategy.INDEXED, Long.MAX_VALUE / 2, true);
+            planner.record(plan, RecommendationStrategy.FULL_SCAN, 0, true);
+        }
+
+        assertEquals(100.0, planner.getCostCorrection(RecommendationStrategy.INDEXED), 1e-9);
+        assertEquals(0.01, planner.getCostCorrection(RecommendationStrategy.FULL_SCAN), 1e-9);
+    }
+
+    @Test
+    void testFastFreshListsMakePrecomputedTheChoice() {
+        CatalogSnapshot snapshot = catalog(20_000);
+        RecommendationPlanner planner = new RecommendationPlanner(1, Integer.MAX_VALUE);
+        User user = user();
+
+        // One round trip is estimated dearer than scanning 20,000 books while half the lookups miss
+        RecommendationPlanner.Plan plan = planner.plan(snapshot, user, 10, false, true);
+        assertEquals(RecommendationStrategy.PRECOMPUTED, plan.getStrategies().get(2));
+
+        // Lookups keep answering in a few microseconds
+        for (int i = 0; i < 60; i++) {
+            planner.record(plan, RecommendationStrategy.PRECOMPUTED, 5_000, true);
+        }
+
+        assertEquals(1.0, planner.getPrecomputedHitRate());
+        assertEquals(RecommendationStrategy.PRECOMPUTED, planner.plan(snapshot, user, 10, false, true).getStrategy());
+        // Without lists to look up the in-memory strategies remain
+        assertEquals(Arrays.asList(RecommendationStrategy.FULL_SCAN, RecommendationStrategy.INDEXED),
+                planner.plan(snapshot, user, 10, false, false).getStrategies());
+    }
+
+    @Test
+    void testWithoutCatalogOnlyTheDatabaseCanAnswer() {
+        RecommendationPlanner planner = new RecommendationPlanner(1, Integer.MAX_VALUE);
+
+        assertEquals(Arrays.asList(RecommendationStrategy.AGGREGATION),
+                planner.plan(null, user(), 10, true, false).getStrategies());
+        assertEquals(Arrays.asList(RecommendationStrategy.AGGREGATION, RecommendationStrategy.PRECOMPUTED),
+                planner.plan(null, user(), 10, true, true).getStrategies());
+    }
+
+    @Test
+    void testSharedPlannerKeepsWhatItLearned() {
+        RecommendationPlanner planner = RecommendationPlanner.getInstance();
+        RecommendationPlanner.Plan plan = planner.plan(catalog(7), user(), 3, false, false);
+        long executions = planner.getExecutions(RecommendationStrategy.FULL_SCAN);
+
+        RecommendationPlanner.getInstance().record(plan, RecommendationStrategy.FULL_SCAN, 1_000, true);
+
+        assertSame(planner, RecommendationPlanner.getInstance());
+        assertEquals(executions + 1, planner.getExecutions(RecommendationStrategy.FULL_SCAN));
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setFavoriteGenres(new ArrayList<>(Arrays.asList("Fantasy")));
+        user.setReadBooks(new ArrayList<>(Arrays.asList("p0")));
+        return user;
+    }
+
+    private static CatalogSnapshot catalog(int size) {
+        // Every book is a favorite-genre hit, so the indexed strategy ranks them all
+        List<Book> books = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            books.add(new Book("p" + i, "Book " + i, "Author " + (i % 50), Arrays.asList("Fantasy"), i % 5));
+        }
+        return CatalogSnapshot.of(books);
+    }
+}
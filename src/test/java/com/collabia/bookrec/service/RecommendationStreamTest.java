@@ -0,0 +1,92 @@
+package com.collabia.bookrec.service;
+
+import org.junit.jupiter.api.Test;
+
+import com.collabia.bookrec.model.Book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecommendationStreamTest {
+
+    /**
+     * Collects every list a subscription receives; completes exceptionally if the stream fails.
+     */
+    static CompletableFuture<List<List<Book>>> collect(Flow.Publisher<List<Book>> publisher) {
+        CompletableFuture<List<List<Book>>> result = new CompletableFuture<>();
+        List<List<Book>> items = new ArrayList<>();
+        publisher.subscribe(new Flow.Subscriber<List<Book>>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(List<Book> books) {
+                items.add(books);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(items);
+            }
+        });
+        return result;
+    }
+
+    @Test
+    void testEverySubscriptionGetsTheListsInOrder() throws Exception {
+        List<Book> provisional = Arrays.asList(new Book("s1", "One", "Author", null, 3.0));
+        List<Book> last = Arrays.asList(new Book("s2", "Two", "Author", null, 4.0));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            int[] runs = new int[1];
+            RecommendationStream stream = new RecommendationStream(executor, publisher -> {
+                runs[0]++;
+                publisher.submit(provisional);
+                publisher.submit(last);
+            });
+
+            assertEquals(Arrays.asList(provisional, last), collect(stream).get(10, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList(provisional, last), collect(stream).get(10, TimeUnit.SECONDS));
+            assertEquals(2, runs[0]);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFailureReachesTheSubscriber() throws Exception {
+        IllegalStateException failure = new IllegalStateException("scoring failed");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            RecommendationStream stream = new RecommendationStream(executor, publisher -> {
+                throw failure;
+            });
+
+            CompletableFuture<List<List<Book>>> result = collect(stream);
+
+            Exception error = assertThrows(Exception.class, () -> result.get(10, TimeUnit.SECONDS));
+            assertSame(failure, error.getCause());
+            assertTrue(result.isCompletedExceptionally());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.collabia.bookrec.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedBitmapTest {
+
+    @Test
+    void testArrayChunkTurnsIntoBitmapAndBack() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        BitSet expected = new BitSet();
+        // One chunk: 4,096 values fit the array, the next one switches to words
+        for (int value = 0; value <= 4_096; value++) {
+            assertTrue(bitmap.add(value * 3));
+            expected.set(value * 3);
+        }
+        assertEquals(false, bitmap.add(3));
+        assertSameAs(expected, bitmap);
+
+        // Removing all but a few turns the chunk back into an array
+        CompressedBitmap removed = new CompressedBitmap();
+        for (int value = 10; value <= 4_096; value++) {
+            removed.add(value * 3);
+            expected.clear(value * 3);
+        }
+        bitmap.andNot(removed);
+        assertSameAs(expected, bitmap);
+        assertTrue(bitmap.add(5));
+        expected.set(5);
+        assertSameAs(expected, bitmap);
+    }
+
+    @Test
+    void testAndNotEmptiesAndDropsChunks() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        CompressedBitmap other = new CompressedBitmap();
+        for (int value : new int[] {1, 70_000, 140_000}) {
+            bitmap.add(value);
+            other.add(value);
+        }
+        bitmap.add(70_001);
+
+        bitmap.andNot(other);
+
+        BitSet expected = new BitSet();
+        expected.set(70_001);
+        assertSameAs(expected, bitmap);
+        bitmap.andNot(bitmap);
+        assertTrue(bitmap.isEmpty());
+    }
+
+    @Test
+    void testRandomSetsMatchBitSet() {
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            CompressedBitmap left = new CompressedBitmap();
+            CompressedBitmap right = new CompressedBitmap();
+            BitSet expectedLeft = new BitSet();
+            BitSet expectedRight = new BitSet();
+            // Dense and sparse chunks on both sides, so every pair of chunk kinds meets
+            for (int chunk = 0; chunk < 4; chunk++) {
+                fill(random, chunk, left, expectedLeft);
+                fill(random, chunk, right, expectedRight);
+            }
+            assertSameAs(expectedLeft, left);
+
+            left.andNot(right);
+            expectedLeft.andNot(expectedRight);
+
+            assertSameAs(expectedLeft, left);
+        }
+    }
+
+    @Test
+    void testNegativeValues() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(-1));
+        assertEquals(false, bitmap.contains(-1));
+    }
+
+    private static void fill(Random random, int chunk, CompressedBitmap bitmap, BitSet expected) {
+        int count = random.nextBoolean() ? random.nextInt(100) : 4_000 + random.nextInt(20_000);
+        for (int i = 0; i < count; i++) {
+            int value = (chunk << 16) | random.nextInt(1 << 16);
+            assertEquals(!expected.get(value), bitmap.add(value));
+            expected.set(value);
+        }
+    }
+
+    private static void assertSameAs(BitSet expected, CompressedBitmap bitmap) {
+        List<Integer> values = new ArrayList<>();
+        bitmap.forEach(values::add);
+        List<Integer> expectedValues = new ArrayList<>();
+        expected.stream().forEach(expectedValues::add);
+        assertEquals(expectedValues, values);
+        for (int value = 0; value < expected.length() + 10; value += 7) {
+            assertEquals(expected.get(value), bitmap.contains(value));
+        }
+        assertEquals(expected.isEmpty(), bitmap.isEmpty());
+    }
+}
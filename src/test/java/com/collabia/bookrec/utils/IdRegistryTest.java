@@ -0,0 +1,112 @@
+package com.collabia.bookrec.utils;
+
+import org.junit.jupiter.api.Test;
+
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IdRegistryTest {
+
+    @Test
+    void testIdsAreDenseAndStable() {
+        IdRegistry registry = new IdRegistry();
+        ObjectId first = new ObjectId();
+        ObjectId second = new ObjectId();
+
+        assertEquals(0, registry.register(first));
+        assertEquals(1, registry.register(second.toHexString()));
+        assertEquals(2, registry.register("book-7"));
+        assertEquals(0, registry.register(first.toHexString()));
+        assertEquals(1, registry.register(second));
+
+        assertEquals(3, registry.size());
+        assertEquals(first.toHexString(), registry.idOf(0));
+        assertEquals("book-7", registry.idOf(2));
+        assertThrows(IllegalArgumentException.class, () -> registry.idOf(3));
+        assertThrows(IllegalArgumentException.class, () -> registry.register((String) null));
+    }
+
+    @Test
+    void testHexIdsMatchWhateverTheirCase() {
+        IdRegistry registry = new IdRegistry();
+        String hex = "65a1b2c3d4e5f60718293a4b";
+
+        int intId = registry.register(hex.toUpperCase());
+
+        assertEquals(intId, registry.find(hex));
+        assertEquals(intId, registry.find(new ObjectId(hex)));
+        assertEquals(hex, registry.idOf(intId));
+    }
+
+    @Test
+    void testOtherIdsAreKeptApartFromObjectIds() {
+        IdRegistry registry = new IdRegistry();
+        // 24 characters but not hex, and hex but not 24 characters
+        String notHex = "65a1b2c3d4e5f60718293a4g";
+        String shortHex = "65a1b2c3d4e5f60718293a4";
+
+        int notHexId = registry.register(notHex);
+        int shortHexId = registry.register(shortHex);
+
+        assertEquals(notHexId, registry.find(notHex));
+        assertEquals(shortHexId, registry.find(shortHex));
+        assertEquals(notHex, registry.idOf(notHexId));
+        assertEquals(-1, registry.find("65a1b2c3d4e5f60718293a4f"));
+        assertEquals(-1, registry.find("unknown"));
+        assertEquals(-1, registry.find((String) null));
+        assertEquals(-1, registry.find((ObjectId) null));
+    }
+
+    @Test
+    void testTableGrowsPastItsInitialCapacity() {
+        IdRegistry registry = new IdRegistry();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            String id = i % 10 == 0 ? "other-" + i : String.format("%024x", 0xabcL * i);
+            ids.add(id);
+            assertEquals(i, registry.register(id));
+        }
+
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i, registry.find(ids.get(i)));
+            assertEquals(ids.get(i), registry.idOf(i));
+        }
+    }
+
+    @Test
+    void testConcurrentRegistrationAssignsOneIdPerKey() throws Exception {
+        IdRegistry registry = new IdRegistry();
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<int[]>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(threads.submit(() -> {
+                    int[] intIds = new int[2_000];
+                    for (int i = 0; i < intIds.length; i++) {
+                        intIds[i] = registry.register(String.format("%024x", i));
+                    }
+                    return intIds;
+                }));
+            }
+            int[] expected = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<int[]> result : results) {
+                int[] intIds = result.get(10, TimeUnit.SECONDS);
+                for (int i = 0; i < intIds.length; i++) {
+                    assertEquals(expected[i], intIds[i]);
+                }
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+        assertEquals(2_000, registry.size());
+    }
+}
@@ -0,0 +1,111 @@
+package com.collabia.bookrec.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    @Test
+    void testConcurrentCallsShareOneExecution() throws Exception {
+        SingleFlight<String, List<String>> flights = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> value = new ArrayList<>();
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            Future<List<String>> first = callers.submit(() -> flights.execute("key", () -> {
+                loads.incrementAndGet();
+                started.countDown();
+                await(release);
+                return value;
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            List<Future<List<String>>> joined = new ArrayList<>();
+            for (int i = 0; i < 7; i++) {
+                joined.add(callers.submit(() -> flights.execute("key", () -> {
+                    loads.incrementAndGet();
+                    return new ArrayList<>();
+                })));
+            }
+            // Every caller has joined the flight before it lands
+            while (flights.getCoalesced() < 7) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+
+            assertSame(value, first.get(10, TimeUnit.SECONDS));
+            for (Future<List<String>> caller : joined) {
+                assertSame(value, caller.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(8, flights.getCalls());
+        assertEquals(1, flights.getExecutions());
+        assertEquals(0, flights.getInFlight());
+    }
+
+    @Test
+    void testLandedFlightIsNotCached() {
+        SingleFlight<String, Integer> flights = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(1, flights.execute("key", loads::incrementAndGet));
+        assertEquals(2, flights.execute("key", loads::incrementAndGet));
+        assertEquals(3, flights.execute("other", loads::incrementAndGet));
+
+        assertEquals(0, flights.getCoalesced());
+    }
+
+    @Test
+    void testFailureReachesEveryCallerAndReleasesTheKey() throws Exception {
+        SingleFlight<String, Integer> flights = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<Integer> first = flights.submit("key", () -> {
+                await(release);
+                throw new IllegalStateException("load failed");
+            }, executor);
+            CompletableFuture<Integer> second = flights.submit("key", () -> 42, executor);
+            assertSame(first, second);
+            release.countDown();
+
+            Exception error = assertThrows(Exception.class, () -> second.get(10, TimeUnit.SECONDS));
+            assertTrue(error.getCause() instanceof IllegalStateException);
+            // The failed flight is gone, so the next call loads again
+            assertEquals(42, flights.submit("key", () -> 42, executor).get(10, TimeUnit.SECONDS));
+            assertThrows(IllegalArgumentException.class, () -> flights.execute("key", () -> {
+                throw new IllegalArgumentException("load failed");
+            }));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, flights.getInFlight());
+        assertEquals(1, flights.getCoalesced());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -5,7 +5,12 @@ import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -63,4 +68,77 @@ class RecommendationEngineTest {
         assertEquals("Book E", recommendations.get(0).getTitle());
         assertEquals("Book D", recommendations.get(1).getTitle());
     }
+
+    @Test
+    void testLimitKeepsTheBestBooksInOrder() {
+        assertEquals(Arrays.asList("Book E", "Book B"), titles(recommendationEngine.getRecommendations(user, books, 2)));
+        assertTrue(recommendationEngine.getRecommendations(user, books, 0).isEmpty());
+        assertEquals(3, recommendationEngine.getRecommendations(user, books, 10).size());
+    }
+
+    @Test
+    void testEqualKeysKeepTheListOrder() {
+        List<Book> ties = Arrays.asList(
+            new Book("1", "Book A", "Author X", Arrays.asList("Romance"), 4.0),
+            new Book("2", "Book B", "Author Y", Arrays.asList("Fantasy", "Fantasy"), 4.0),
+            new Book("3", "Book C", "Author Z", Arrays.asList("Fantasy"), 4.0),
+            new Book("4", "Book D", "Author X", Arrays.asList("Romance"), 4.0)
+        );
+        User reader = new User();
+        reader.setFavoriteGenres(Arrays.asList("Fantasy", "Fantasy"));
+        reader.setReadBooks(new ArrayList<>());
+
+        // A genre listed twice counts once, so both Fantasy books tie
+        assertEquals(Arrays.asList("Book B", "Book C", "Book A", "Book D"),
+                titles(recommendationEngine.getRecommendations(reader, ties)));
+        assertEquals(Arrays.asList("Book B", "Book C", "Book A"),
+                titles(recommendationEngine.getRecommendations(reader, ties, 3)));
+    }
+
+    @Test
+    void testMatchesTheComparatorSortOnRandomCatalogs() {
+        Random random = new Random(23);
+        List<String> genres = Arrays.asList("Fantasy", "Science Fiction", "Romance", "Mystery", "Horror", "History");
+        for (int round = 0; round < 50; round++) {
+            List<Book> catalog = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                List<String> bookGenres = new ArrayList<>();
+                for (int g = random.nextInt(4); g > 0; g--) {
+                    bookGenres.add(genres.get(random.nextInt(genres.size())));
+                }
+                catalog.add(new Book(String.valueOf(i), "Book " + i, "Author " + random.nextInt(20), bookGenres,
+                        random.nextInt(11) / 2.0));
+            }
+            User reader = new User();
+            reader.setFavoriteGenres(new ArrayList<>(genres.subList(0, random.nextInt(genres.size()))));
+            List<String> read = new ArrayList<>();
+            for (int i = random.nextInt(50); i > 0; i--) {
+                read.add(String.valueOf(random.nextInt(catalog.size())));
+            }
+            reader.setReadBooks(read);
+
+            List<Book> expected = comparatorSort(reader, catalog);
+            assertEquals(titles(expected), titles(recommendationEngine.getRecommendations(reader, catalog)));
+            int limit = random.nextInt(30);
+            assertEquals(titles(expected.subList(0, Math.min(limit, expected.size()))),
+                    titles(recommendationEngine.getRecommendations(reader, catalog, limit)));
+        }
+    }
+
+    /**
+     * The ranking as a stable sort by favorite genres matched, then by rating.
+     */
+    private static List<Book> comparatorSort(User user, List<Book> books) {
+        Set<String> favorites = new HashSet<>(user.getFavoriteGenres());
+        return books.stream()
+            .filter(book -> !user.getReadBooks().contains(book.getId()))
+            .sorted(Comparator
+                .comparingLong((Book book) -> -book.getGenres().stream().distinct().filter(favorites::contains).count())
+                .thenComparingDouble((Book book) -> -book.getRating()))
+            .collect(Collectors.toList());
+    }
+
+    private static List<String> titles(List<Book> books) {
+        return books.stream().map(Book::getTitle).collect(Collectors.toList());
+    }
 }